@@ -0,0 +1,39 @@
+// Benchmark adapter for BTree
+
+import java.nio.file.Path;
+
+/**
+ * A concurrent BTree of minimum degree 16 for the JMH benchmarks.
+ */
+public class BTreeTarget implements bench.Target {
+
+    private BTree tree;
+
+    @Override
+    public void open(Path dir, int keyCount, int valueSize) throws Exception {
+        tree = new BTree(16, dir.resolve("btree_wal.log").toString(), true);
+        for (int key = 0; key < keyCount; key++) {
+            tree.insert(key);
+        }
+    }
+
+    @Override
+    public void write(int key) throws Exception {
+        tree.insert(key);
+    }
+
+    @Override
+    public Object read(int key) {
+        return tree.search(key);
+    }
+
+    @Override
+    public void delete(int key) throws Exception {
+        tree.delete(key);
+    }
+
+    @Override
+    public void close() throws Exception {
+        tree.close();
+    }
+}
@@ -0,0 +1,23 @@
+// Key and value strings shared by the string-keyed adapters
+
+/**
+ * Fixed-width string keys, so their byte order matches the int order, and one value of the
+ * requested size.
+ */
+final class Keys {
+
+    private Keys() {
+    }
+
+    static String[] names(int keyCount) {
+        String[] names = new String[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            names[i] = String.format("user%010d", i);
+        }
+        return names;
+    }
+
+    static String value(int valueSize) {
+        return "v".repeat(Math.max(1, valueSize));
+    }
+}
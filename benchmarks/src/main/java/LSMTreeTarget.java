@@ -0,0 +1,50 @@
+// Benchmark adapter for LSMTree
+
+import java.nio.file.Path;
+
+/**
+ * An LSMTree with 10,000-entry MemTables and the default table options for the JMH benchmarks.
+ */
+public class LSMTreeTarget implements bench.Target {
+
+    private static final int MEMTABLE_SIZE = 10_000;
+
+    private LSMTree tree;
+    private String[] keys;
+    private String value;
+
+    @Override
+    public void open(Path dir, int keyCount, int valueSize) throws Exception {
+        keys = Keys.names(keyCount);
+        value = Keys.value(valueSize);
+        tree = new LSMTree(MEMTABLE_SIZE, dir.resolve("wal.log").toString(), dir.resolve("sstables").toString());
+        for (String key : keys) {
+            tree.put(key, value);
+        }
+    }
+
+    @Override
+    public void write(int key) throws Exception {
+        tree.put(keys[key], value);
+    }
+
+    @Override
+    public Object read(int key) throws Exception {
+        return tree.search(keys[key]);
+    }
+
+    @Override
+    public void delete(int key) throws Exception {
+        tree.delete(keys[key]);
+    }
+
+    @Override
+    public void maintain() throws Exception {
+        tree.compact();
+    }
+
+    @Override
+    public void close() throws Exception {
+        tree.close();
+    }
+}
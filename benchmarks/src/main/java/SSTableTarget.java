@@ -0,0 +1,60 @@
+// Benchmark adapter for SSTable
+
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * One immutable SSTable holding every key once, written with the LSMTree's default table
+ * options, for the JMH benchmarks.
+ */
+public class SSTableTarget implements bench.Target {
+
+    private SSTable table;
+    private String[] keys;
+
+    @Override
+    public void open(Path dir, int keyCount, int valueSize) throws Exception {
+        keys = Keys.names(keyCount);
+        String value = Keys.value(valueSize);
+        Iterator<SSTable.Entry> entries = new Iterator<SSTable.Entry>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < keys.length;
+            }
+
+            @Override
+            public SSTable.Entry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return new SSTable.Entry(keys[next], ++next, value);
+            }
+        };
+        table = SSTable.create(entries, dir.toString(),
+                new SSTableOptions().setBlockCache(new BlockCache(8L << 20)));
+        table.ref();
+    }
+
+    @Override
+    public void write(int key) {
+        throw new UnsupportedOperationException("SSTables are immutable");
+    }
+
+    @Override
+    public Object read(int key) throws Exception {
+        return table.lookup(keys[key], Long.MAX_VALUE);
+    }
+
+    @Override
+    public void delete(int key) {
+        throw new UnsupportedOperationException("SSTables are immutable");
+    }
+
+    @Override
+    public void close() throws Exception {
+        table.unref(); // Closes the file
+    }
+}
@@ -0,0 +1,48 @@
+// Benchmark adapter for WriteAheadLog
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A WriteAheadLog receiving sequenced PUT records for the JMH benchmarks. Starts empty;
+ * {@link #maintain()} clears the log.
+ */
+public class WALTarget implements bench.Target {
+
+    private WriteAheadLog wal;
+    private String[] keys;
+    private String value;
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Override
+    public void open(Path dir, int keyCount, int valueSize) throws Exception {
+        keys = Keys.names(keyCount);
+        value = Keys.value(valueSize);
+        wal = new WriteAheadLog(dir.resolve("wal.log").toString());
+    }
+
+    @Override
+    public void write(int key) throws Exception {
+        wal.logPut(sequence.incrementAndGet(), keys[key], value);
+    }
+
+    @Override
+    public Object read(int key) {
+        throw new UnsupportedOperationException("The WAL is append-only");
+    }
+
+    @Override
+    public void delete(int key) throws Exception {
+        wal.logDelete(sequence.incrementAndGet(), keys[key]);
+    }
+
+    @Override
+    public void maintain() throws Exception {
+        wal.clear();
+    }
+
+    @Override
+    public void close() throws Exception {
+        wal.close();
+    }
+}
@@ -0,0 +1,76 @@
+// JMH benchmarks of BTree insert, search and delete
+
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * BTree operations on a concurrent (latch crabbing) tree with its WAL in a temp directory.
+ * The tree stores int keys only, so {@code valueSize} has no effect. Inserts of a key already
+ * present add a duplicate, as {@link Target#write} does on this tree.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BTreeBenchmark {
+
+    public static class Engine extends EngineState {
+        @Override
+        protected String targetClass() {
+            return "BTreeTarget";
+        }
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            start();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            stop();
+        }
+    }
+
+    /**
+     * A fresh tree per iteration, so every delete removes a present key.
+     */
+    public static class Deletes extends Engine {
+        @Override
+        @Setup(Level.Iteration)
+        public void setup() throws Exception {
+            restart();
+        }
+    }
+
+    @Benchmark
+    public void insert(Engine engine, KeyCursor cursor) throws Exception {
+        engine.target.write(cursor.next(engine.sequence));
+    }
+
+    @Benchmark
+    public Object search(Engine engine, KeyCursor cursor) throws Exception {
+        return engine.target.read(cursor.next(engine.sequence));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2, batchSize = Batches.DELETES)
+    @Measurement(iterations = 5, batchSize = Batches.DELETES)
+    public void delete(Deletes engine) throws Exception {
+        engine.target.delete(engine.nextConsumed());
+    }
+}
@@ -0,0 +1,16 @@
+// Batch sizes of the single-shot benchmarks
+
+package bench;
+
+/**
+ * Operations per measured batch for benchmarks that cannot run in a steady state, such as
+ * deletes, which consume the preloaded keys. Reported times are per batch. Must not exceed
+ * {@code keyCount}, or later deletes of a batch find the key already gone.
+ */
+final class Batches {
+
+    static final int DELETES = 10_000;
+
+    private Batches() {
+    }
+}
@@ -0,0 +1,112 @@
+// Engine, parameters and key stream shared by one benchmark
+
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Holds one engine in a fresh temporary directory, holding every key of
+ * {@code [0, keyCount)}, and a pregenerated key sequence so drawing keys costs one array read
+ * in the measured loop. Subclasses name the adapter and call {@link #start()} / {@link #stop()}
+ * from their own setup and teardown.
+ */
+@State(Scope.Benchmark)
+public abstract class EngineState {
+
+    // Length of the pregenerated key sequence, threads walk it from different offsets
+    static final int SEQUENCE_LENGTH = 1 << 20;
+
+    @Param({"100000"})
+    public int keyCount;
+
+    @Param({"100"})
+    public int valueSize;
+
+    @Param({KeyGenerator.UNIFORM, KeyGenerator.ZIPFIAN})
+    public String distribution;
+
+    public Target target;
+    public int[] sequence;
+    public Path dir;
+
+    // Next position for benchmarks that consume each key once (deletes)
+    final AtomicInteger consumed = new AtomicInteger();
+    int[] shuffled;
+
+    /**
+     * @return The adapter class in the unnamed package.
+     */
+    protected abstract String targetClass();
+
+    /**
+     * Creates and preloads the engine and generates the key sequence.
+     */
+    protected void start() throws Exception {
+        stop();
+        if (sequence == null) {
+            sequence = new KeyGenerator(keyCount, distribution, 42).fill(SEQUENCE_LENGTH);
+        }
+        open();
+    }
+
+    /**
+     * Replaces the engine with a freshly loaded one and shuffles all keys to be consumed once
+     * each, whatever the distribution.
+     */
+    protected void restart() throws Exception {
+        start();
+        shuffled = new int[keyCount];
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < keyCount; i++) {
+            int j = random.nextInt(i + 1);
+            shuffled[i] = shuffled[j];
+            shuffled[j] = i;
+        }
+        consumed.set(0);
+    }
+
+    private void open() throws Exception {
+        dir = Files.createTempDirectory("jmh-" + targetClass());
+        target = Target.create(targetClass());
+        target.open(dir, keyCount, valueSize);
+    }
+
+    /**
+     * @return The next key to consume exactly once, shared by all threads.
+     */
+    int nextConsumed() {
+        return shuffled[consumed.getAndIncrement() % shuffled.length];
+    }
+
+    /**
+     * Closes the engine and deletes its directory.
+     */
+    protected void stop() throws Exception {
+        if (target != null) {
+            target.close();
+            target = null;
+        }
+        if (dir != null) {
+            try (Stream<Path> paths = Files.walk(dir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                    try {
+                        Files.deleteIfExists(path);
+                    } catch (IOException e) {
+                        // Best effort, it is a temp directory
+                    }
+                });
+            }
+            dir = null;
+        }
+    }
+}
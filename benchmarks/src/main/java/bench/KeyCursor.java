@@ -0,0 +1,27 @@
+// Per-thread position in the key sequence
+
+package bench;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Walks an {@link EngineState}'s key sequence from a random offset, so threads do not hit the
+ * same keys in lockstep.
+ */
+@State(Scope.Thread)
+public class KeyCursor {
+
+    private int position = ThreadLocalRandom.current().nextInt(EngineState.SEQUENCE_LENGTH);
+
+    /**
+     * @return The next key of the sequence.
+     */
+    public int next(int[] sequence) {
+        int key = sequence[position];
+        position = (position + 1) & (EngineState.SEQUENCE_LENGTH - 1);
+        return key;
+    }
+}
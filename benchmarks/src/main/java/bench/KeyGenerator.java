@@ -0,0 +1,99 @@
+// Uniform and zipfian key sequences
+
+package bench;
+
+import java.util.SplittableRandom;
+
+/**
+ * Draws keys from {@code [0, keyCount)}, uniformly or from a zipfian distribution (theta 0.99,
+ * the YCSB default) whose popular keys are scattered over the key space by a hash, so the hot
+ * set is not one contiguous range.
+ */
+public final class KeyGenerator {
+
+    public static final String UNIFORM = "uniform";
+    public static final String ZIPFIAN = "zipfian";
+
+    private static final double THETA = 0.99;
+
+    private final int keyCount;
+    private final boolean zipfian;
+    private final SplittableRandom random;
+    // Zipfian constants, from Gray et al., "Quickly Generating Billion-Record Synthetic Databases"
+    private double alpha;
+    private double zetan;
+    private double eta;
+
+    /**
+     * @param keyCount     The size of the key space.
+     * @param distribution {@link #UNIFORM} or {@link #ZIPFIAN}.
+     * @param seed         The random seed, fixed for reproducible runs.
+     */
+    public KeyGenerator(int keyCount, String distribution, long seed) {
+        this.keyCount = keyCount;
+        this.random = new SplittableRandom(seed);
+        if (ZIPFIAN.equals(distribution)) {
+            this.zipfian = true;
+            double zeta2 = zeta(2);
+            this.zetan = zeta(keyCount);
+            this.alpha = 1.0 / (1.0 - THETA);
+            this.eta = (1 - Math.pow(2.0 / keyCount, 1 - THETA)) / (1 - zeta2 / zetan);
+        } else if (UNIFORM.equals(distribution)) {
+            this.zipfian = false;
+        } else {
+            throw new IllegalArgumentException("Unknown distribution: " + distribution);
+        }
+    }
+
+    private static double zeta(long n) {
+        double sum = 0;
+        for (long i = 1; i <= n; i++) {
+            sum += 1 / Math.pow(i, THETA);
+        }
+        return sum;
+    }
+
+    /**
+     * @return The next key.
+     */
+    public int next() {
+        if (!zipfian) {
+            return random.nextInt(keyCount);
+        }
+        double u = random.nextDouble();
+        double uz = u * zetan;
+        long rank;
+        if (uz < 1.0) {
+            rank = 0;
+        } else if (uz < 1.0 + Math.pow(0.5, THETA)) {
+            rank = 1;
+        } else {
+            rank = (long) (keyCount * Math.pow(eta * u - eta + 1, alpha));
+        }
+        return (int) Long.remainderUnsigned(fnv(Math.min(rank, keyCount - 1)), keyCount);
+    }
+
+    /**
+     * Fills an array with keys.
+     *
+     * @param count The number of keys.
+     * @return The keys.
+     */
+    public int[] fill(int count) {
+        int[] keys = new int[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = next();
+        }
+        return keys;
+    }
+
+    // FNV-1a over the 8 bytes of a long
+    private static long fnv(long value) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < 8; i++) {
+            hash ^= (value >>> (i * 8)) & 0xFF;
+            hash *= 0x100000001B3L;
+        }
+        return hash;
+    }
+}
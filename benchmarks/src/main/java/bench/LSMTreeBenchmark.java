@@ -0,0 +1,85 @@
+// JMH benchmarks of LSMTree put, search, delete and compact
+
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * LSMTree operations with the default table options, the preloaded keys spread over several
+ * SSTables and the MemTable.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LSMTreeBenchmark {
+
+    public static class Engine extends EngineState {
+        @Override
+        protected String targetClass() {
+            return "LSMTreeTarget";
+        }
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            start();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            stop();
+        }
+    }
+
+    /**
+     * A fresh tree per iteration: deletes remove present keys and every compaction merges the
+     * same set of freshly flushed tables.
+     */
+    public static class Fresh extends Engine {
+        @Override
+        @Setup(Level.Iteration)
+        public void setup() throws Exception {
+            restart();
+        }
+    }
+
+    @Benchmark
+    public void put(Engine engine, KeyCursor cursor) throws Exception {
+        engine.target.write(cursor.next(engine.sequence));
+    }
+
+    @Benchmark
+    public Object search(Engine engine, KeyCursor cursor) throws Exception {
+        return engine.target.read(cursor.next(engine.sequence));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2, batchSize = Batches.DELETES)
+    @Measurement(iterations = 5, batchSize = Batches.DELETES)
+    public void delete(Fresh engine) throws Exception {
+        engine.target.delete(engine.nextConsumed());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public void compact(Fresh engine) throws Exception {
+        engine.target.maintain();
+    }
+}
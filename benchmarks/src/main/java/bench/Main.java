@@ -0,0 +1,32 @@
+// Runs the JMH benchmarks once per thread count
+
+package bench;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of benchmarks.jar. Takes the usual JMH command line, plus
+ * {@code -Dthreads=1,4,8}: JMH cannot vary the thread count through {@code @Param}, so the
+ * selected benchmarks are run once per listed count. Without the property this is plain JMH.
+ */
+public class Main {
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        String threads = System.getProperty("threads");
+        if (threads == null || commandLine.shouldHelp() || commandLine.shouldList()
+                || commandLine.shouldListWithParams() || commandLine.shouldListProfilers()
+                || commandLine.shouldListResultFormats()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        for (String count : threads.split(",")) {
+            ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine)
+                    .threads(Integer.parseInt(count.trim()));
+            System.out.println("# Thread count sweep: " + count.trim());
+            new Runner(options.build()).run();
+        }
+    }
+}
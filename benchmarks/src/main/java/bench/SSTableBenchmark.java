@@ -0,0 +1,51 @@
+// JMH benchmark of SSTable point lookups
+
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Point lookups in one SSTable holding every key, with the LSMTree's default table options
+ * (4 KB blocks, 8 MB block cache), so both cached and uncached blocks are read depending on
+ * {@code keyCount} and {@code valueSize}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SSTableBenchmark {
+
+    public static class Engine extends EngineState {
+        @Override
+        protected String targetClass() {
+            return "SSTableTarget";
+        }
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            start();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            stop();
+        }
+    }
+
+    @Benchmark
+    public Object lookup(Engine engine, KeyCursor cursor) throws Exception {
+        return engine.target.read(cursor.next(engine.sequence));
+    }
+}
@@ -0,0 +1,57 @@
+// One engine under benchmark, behind an interface the JMH classes can see
+
+package bench;
+
+import java.nio.file.Path;
+
+/**
+ * An engine under benchmark. The engines live in the unnamed package, which JMH benchmarks
+ * (and any named package) cannot reference, so each is wrapped by an adapter in the unnamed
+ * package implementing this interface and loaded by name. Keys are ints in
+ * {@code [0, keyCount)}; adapters map them to their own key format.
+ */
+public interface Target extends AutoCloseable {
+
+    /**
+     * Creates the engine in an empty directory and loads every key of {@code [0, keyCount)}.
+     *
+     * @param dir       The directory for the engine's files.
+     * @param keyCount  The size of the key space.
+     * @param valueSize The size of each value in bytes, for engines that store values.
+     * @throws Exception If the engine cannot be created.
+     */
+    void open(Path dir, int keyCount, int valueSize) throws Exception;
+
+    /**
+     * Inserts or overwrites a key.
+     */
+    void write(int key) throws Exception;
+
+    /**
+     * Looks up a key.
+     *
+     * @return The result, to be consumed by the benchmark.
+     */
+    Object read(int key) throws Exception;
+
+    /**
+     * Deletes a key.
+     */
+    void delete(int key) throws Exception;
+
+    /**
+     * Runs background maintenance to completion (compaction), a no-op for engines without.
+     */
+    default void maintain() throws Exception {
+    }
+
+    /**
+     * Instantiates an adapter of the unnamed package.
+     *
+     * @param className The adapter class.
+     * @return The adapter, not yet opened.
+     */
+    static Target create(String className) throws ReflectiveOperationException {
+        return (Target) Class.forName(className).getDeclaredConstructor().newInstance();
+    }
+}
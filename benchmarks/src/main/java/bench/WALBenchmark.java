@@ -0,0 +1,55 @@
+// JMH benchmark of WriteAheadLog appends
+
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sequenced PUT records appended to a WriteAheadLog, each flushed to the OS as the engines do.
+ * The log is cleared after every iteration.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WALBenchmark {
+
+    public static class Engine extends EngineState {
+        @Override
+        protected String targetClass() {
+            return "WALTarget";
+        }
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            start();
+        }
+
+        @TearDown(Level.Iteration)
+        public void truncate() throws Exception {
+            target.maintain();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            stop();
+        }
+    }
+
+    @Benchmark
+    public void append(Engine engine, KeyCursor cursor) throws Exception {
+        engine.target.write(cursor.next(engine.sequence));
+    }
+}
@@ -1,22 +1,70 @@
 // Whole BTree class
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class BTree {
     BTreeNode root;
     int t;
     WriteAheadLog wal;
+    private final String walPath;
+
+    // Concurrent mode: every node carries a latch and operations crab down the tree
+    final boolean concurrent;
+    // Guards the root reference itself, acts as the "parent" latch of the root
+    private final ReentrantReadWriteLock rootLatch;
+
+    private final Metrics metrics = new Metrics();
+    private final Metrics.Timer insertTimer = metrics.timer("btree.insert");
+    private final Metrics.Timer deleteTimer = metrics.timer("btree.delete");
+    private final Metrics.Counter searches = metrics.counter("btree.searches");
 
     /**
      * @param t max depth
      * @param walPath path of log
      */
     public BTree(int t, String walPath) throws IOException {
+        this(t, walPath, false);
+    }
+
+    /**
+     * @param t max depth
+     * @param walPath path of log
+     * @param concurrent whether the tree is shared across threads (latch crabbing)
+     */
+    public BTree(int t, String walPath, boolean concurrent) throws IOException {
         this.root = null;
         this.t = t;
-        this.wal = new WriteAheadLog(walPath);
+        this.concurrent = concurrent;
+        this.rootLatch = concurrent ? new ReentrantReadWriteLock() : null;
+        this.walPath = walPath;
+        this.wal = new WriteAheadLog(walPath, metrics);
         recover(); //Recover from log
+        metrics.registerMBean("BTree", walPath);
+    }
+
+    /**
+     * @return The registry of the tree's counters and timers, also published over JMX.
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return A dump of the tree's metrics, one per line.
+     */
+    public String getStats() {
+        return metrics.format();
     }
 
     /**
@@ -28,7 +76,21 @@ public class BTree {
         }
     }
 
+    /**
+     * Creates a reusable cursor over this tree. Seeks on it allocate nothing.
+     *
+     * @return a new, unpositioned cursor
+     */
+    public BTreeCursor cursor() {
+        return new BTreeCursor(this);
+    }
+
     public BTreeNode search(int key) {
+        searches.increment();
+        if(concurrent){
+            return searchLatched(key);
+        }
+
         if(root == null){
             return null;
         }
@@ -44,6 +106,20 @@ public class BTree {
      * @throws IOException If an I/O error occurs during logging.
      */
     public void insert(int key) throws IOException {
+        long start = insertTimer.start();
+        try {
+            logAndInsert(key);
+        } finally {
+            insertTimer.stop(start);
+        }
+    }
+
+    private void logAndInsert(int key) throws IOException {
+        if(concurrent) {
+            insertLatched(key); // Logs under the latch
+            return;
+        }
+
         wal.logInsert(String.valueOf(key));
 
         if(root == null) {
@@ -76,6 +152,20 @@ public class BTree {
      * @throws IOException If an I/O error occurs during logging.
      */
     public void delete(int key) throws IOException {
+        long start = deleteTimer.start();
+        try {
+            logAndDelete(key);
+        } finally {
+            deleteTimer.stop(start);
+        }
+    }
+
+    private void logAndDelete(int key) throws IOException {
+        if (concurrent) {
+            deleteLatched(key); // Logs under the latch
+            return;
+        }
+
         wal.logDelete(String.valueOf(key));
 
         if (root == null) {
@@ -118,7 +208,72 @@ public class BTree {
                 int key = Integer.parseInt(parts[1]);
                 applyDelete(key);
             }
+            else if (log.startsWith("BULKLOAD")) {
+                String[] parts = log.split(" ", 3);
+                if (parts.length != 3) continue; // Invalid log entry
+
+                root = readSnapshot(Paths.get(parts[2]), Double.parseDouble(parts[1]));
+            }
+        }
+    }
+
+    /**
+     * Loads an empty B-Tree from keys in ascending order, building it bottom-up.
+     * Instead of one WAL record per key, the keys are written sequentially to a snapshot file
+     * next to the WAL, and a single BULKLOAD record pointing to it is logged.
+     *
+     * @param sortedKeys keys in ascending order
+     * @param fillFactor fraction of each node filled, in (0, 1]; lower leaves room for later inserts
+     * @throws IOException If an I/O error occurs while writing the snapshot or logging.
+     */
+    public void bulkLoad(Iterator<Integer> sortedKeys, double fillFactor) throws IOException {
+        if (concurrent) {
+            rootLatch.writeLock().lock();
+        }
+        try {
+            if (root != null) {
+                throw new IllegalStateException("Bulk load requires an empty tree");
+            }
+
+            BTreeBulkLoader loader = new BTreeBulkLoader(t, fillFactor, concurrent);
+            Path snapshot = Paths.get(walPath + ".bulk." + System.currentTimeMillis());
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(snapshot), 1 << 16))) {
+                while (sortedKeys.hasNext()) {
+                    int key = sortedKeys.next();
+                    loader.add(key);
+                    out.writeInt(key);
+                }
+            }
+
+            wal.logBulkLoad(fillFactor, snapshot.toString());
+            root = loader.finish();
+        } finally {
+            if (concurrent) {
+                rootLatch.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Rebuilds a tree from a bulk load snapshot. Used during recovery.
+     *
+     * @param snapshot path of the snapshot written by bulkLoad
+     * @param fillFactor fill factor used by the original load
+     * @return the root of the rebuilt tree
+     * @throws IOException If an I/O error occurs.
+     */
+    private BTreeNode readSnapshot(Path snapshot, double fillFactor) throws IOException {
+        BTreeBulkLoader loader = new BTreeBulkLoader(t, fillFactor, concurrent);
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(snapshot), 1 << 16))) {
+            while (true) {
+                loader.add(in.readInt());
+            }
+        } catch (EOFException e) {
+            // End of snapshot
         }
+        return loader.finish();
     }
 
     /**
@@ -151,13 +306,13 @@ public class BTree {
      */
     private void applyInsert(int key) {
         if (root == null) {
-            root = new BTreeNode(t, true);
+            root = new BTreeNode(t, true, concurrent);
             root.keys[0] = key;
             root.n = 1;
         }
         else {
             if(root.n == 2 * t - 1){
-                BTreeNode s = new BTreeNode(t, false);
+                BTreeNode s = new BTreeNode(t, false, concurrent);
                 s.children[0] = root;
                 s.splitChild(0, root);
 
@@ -177,6 +332,269 @@ public class BTree {
 
     }
 
+    /**
+     * Searches with read latch crabbing: a child is latched before its parent is released,
+     * so readers only ever hold two shared latches and never block each other.
+     *
+     * @param key the key to search for
+     * @return the node containing the key, or null
+     */
+    private BTreeNode searchLatched(int key) {
+        rootLatch.readLock().lock();
+        BTreeNode node = root;
+        if (node == null) {
+            rootLatch.readLock().unlock();
+            return null;
+        }
+        node.latch.readLock().lock();
+        rootLatch.readLock().unlock();
+
+        while (true) {
+            int i = 0;
+            while (i < node.n && key > node.keys[i]) {
+                i++;
+            }
+
+            if (i < node.n && node.keys[i] == key) {
+                node.latch.readLock().unlock();
+                return node;
+            }
+
+            if (node.isLeaf) {
+                node.latch.readLock().unlock();
+                return null;
+            }
+
+            BTreeNode child = node.children[i];
+            child.latch.readLock().lock();
+            node.latch.readLock().unlock();
+            node = child;
+        }
+    }
+
+    /**
+     * Inserts with write latch crabbing. Full children are split on the way down, so once
+     * the child is latched it can never push a key into its parent and the parent is released.
+     * The insert is logged while the leaf is latched: an operation on the same key crabs
+     * down the same path behind this one, so the log holds them in the order they are applied.
+     *
+     * @param key the key to insert
+     * @throws IOException If an I/O error occurs during logging.
+     */
+    private void insertLatched(int key) throws IOException {
+        rootLatch.writeLock().lock();
+        if (root == null) {
+            try {
+                wal.logInsert(String.valueOf(key));
+            } catch (IOException e) {
+                rootLatch.writeLock().unlock();
+                throw e;
+            }
+            root = new BTreeNode(t, true, true);
+            root.keys[0] = key;
+            root.n = 1;
+            rootLatch.writeLock().unlock();
+            return;
+        }
+
+        BTreeNode node = root;
+        node.latch.writeLock().lock();
+        if (node.n == 2 * t - 1) {
+            // Grow the tree, the new root is unreachable until published
+            BTreeNode s = new BTreeNode(t, false, true);
+            s.latch.writeLock().lock();
+            s.children[0] = node;
+            s.splitChild(0, node);
+            root = s;
+            node.latch.writeLock().unlock();
+            node = s;
+        }
+        rootLatch.writeLock().unlock();
+
+        // Invariant: node is write latched and not full
+        while (!node.isLeaf) {
+            int i = node.n - 1;
+            while (i >= 0 && node.keys[i] > key) {
+                i--;
+            }
+            i++;
+
+            BTreeNode child = node.children[i];
+            child.latch.writeLock().lock();
+            if (child.n == 2 * t - 1) {
+                node.splitChild(i, child);
+                if (node.keys[i] < key) {
+                    BTreeNode right = node.children[i + 1];
+                    right.latch.writeLock().lock();
+                    child.latch.writeLock().unlock();
+                    child = right;
+                }
+            }
+
+            node.latch.writeLock().unlock();
+            node = child;
+        }
+
+        try {
+            wal.logInsert(String.valueOf(key));
+        } catch (IOException e) {
+            node.latch.writeLock().unlock();
+            throw e;
+        }
+        int i = node.n - 1;
+        while (i >= 0 && node.keys[i] > key) {
+            node.keys[i + 1] = node.keys[i];
+            i--;
+        }
+        node.keys[i + 1] = key;
+        node.n++;
+        node.latch.writeLock().unlock();
+    }
+
+    /**
+     * Deletes with write latch crabbing. Mirrors {@link BTreeNode#delete(int)}: children are
+     * topped up to t keys before descending, so the parent is never touched again once released.
+     * Siblings used by fill/merge are latched through the (latched) parent. Replacing an internal
+     * key with its predecessor/successor keeps that node latched until the leaf is reached.
+     * The delete is logged once the key is found, while its node is latched, so operations on
+     * the same key are logged in the order they are applied; deleting a missing key logs nothing.
+     *
+     * @param key the key to delete
+     * @throws IOException If an I/O error occurs during logging.
+     */
+    private void deleteLatched(int key) throws IOException {
+        rootLatch.writeLock().lock();
+        BTreeNode node = root;
+        if (node == null) {
+            rootLatch.writeLock().unlock();
+            System.out.println("The tree is empty.");
+            return;
+        }
+        node.latch.writeLock().lock();
+        boolean atRoot = true;
+        boolean logged = false;
+
+        while (node != null) {
+            BTreeNode next;
+            int idx = node.findKey(key);
+
+            if (idx < node.n && node.keys[idx] == key) {
+                if (!logged) {
+                    try {
+                        wal.logDelete(String.valueOf(key));
+                    } catch (IOException e) {
+                        node.latch.writeLock().unlock();
+                        if (atRoot) {
+                            rootLatch.writeLock().unlock();
+                        }
+                        throw e;
+                    }
+                    logged = true;
+                }
+                if (node.isLeaf) {
+                    node.removeFromLeaf(idx);
+                    next = null;
+                } else {
+                    BTreeNode left = node.children[idx];
+                    BTreeNode right = node.children[idx + 1];
+                    left.latch.writeLock().lock();
+                    right.latch.writeLock().lock();
+
+                    if (left.n >= t) {
+                        right.latch.writeLock().unlock();
+                        node.keys[idx] = extractLatched(left, true);
+                        next = null;
+                    } else if (right.n >= t) {
+                        left.latch.writeLock().unlock();
+                        node.keys[idx] = extractLatched(right, false);
+                        next = null;
+                    } else {
+                        node.merge(idx);
+                        right.latch.writeLock().unlock();
+                        next = left;
+                    }
+                }
+            } else {
+                if (node.isLeaf) {
+                    System.out.println("The key " + key + " does not exist in the tree.");
+                    next = null;
+                } else {
+                    boolean flag = (idx == node.n);
+                    BTreeNode child = node.children[idx];
+                    child.latch.writeLock().lock();
+
+                    if (child.n < t) {
+                        BTreeNode prev = idx != 0 ? node.children[idx - 1] : null;
+                        BTreeNode after = idx != node.n ? node.children[idx + 1] : null;
+                        if (prev != null) prev.latch.writeLock().lock();
+                        if (after != null) after.latch.writeLock().lock();
+
+                        node.fill(idx);
+
+                        next = (flag && idx > node.n) ? node.children[idx - 1] : node.children[idx];
+                        if (prev != null && prev != next) prev.latch.writeLock().unlock();
+                        if (child != next) child.latch.writeLock().unlock();
+                        if (after != null && after != next) after.latch.writeLock().unlock();
+                    } else {
+                        next = child;
+                    }
+                }
+            }
+
+            if (atRoot) {
+                // Shrink the tree when the root ran out of keys
+                if (node.n == 0) {
+                    root = node.isLeaf ? null : node.children[0];
+                }
+                rootLatch.writeLock().unlock();
+                atRoot = false;
+            }
+
+            node.latch.writeLock().unlock();
+            node = next;
+        }
+    }
+
+    /**
+     * Removes and returns the largest (or smallest) key of the subtree rooted at a write latched
+     * node holding at least t keys. The caller keeps the latch on the node whose key is being
+     * replaced, so no writer can enter the subtree behind us and the extracted key is exact.
+     *
+     * @param node write latched subtree root, released by this method
+     * @param max true for the predecessor, false for the successor
+     * @return the extracted key
+     */
+    private int extractLatched(BTreeNode node, boolean max) {
+        while (!node.isLeaf) {
+            int idx = max ? node.n : 0;
+            BTreeNode child = node.children[idx];
+            child.latch.writeLock().lock();
+
+            if (child.n < t) {
+                BTreeNode sibling = max ? node.children[idx - 1] : node.children[idx + 1];
+                sibling.latch.writeLock().lock();
+                node.fill(idx);
+                BTreeNode next = max ? node.children[node.n] : node.children[0];
+                if (sibling != next) sibling.latch.writeLock().unlock();
+                if (child != next) child.latch.writeLock().unlock();
+                child = next;
+            }
+
+            node.latch.writeLock().unlock();
+            node = child;
+        }
+
+        int key;
+        if (max) {
+            key = node.keys[node.n - 1];
+            node.n--;
+        } else {
+            key = node.keys[0];
+            node.removeFromLeaf(0);
+        }
+        node.latch.writeLock().unlock();
+        return key;
+    }
 
     /**
      * Closes the WAL when done.
@@ -184,6 +602,7 @@ public class BTree {
      * @throws IOException If an I/O error occurs.
      */
     public void close() throws IOException {
+        metrics.unregisterMBean();
         if(wal != null) {
             wal.close();
         }
@@ -0,0 +1,127 @@
+// Builds a BTree bottom-up from sorted keys
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds a B-Tree bottom-up from keys in ascending order, without any splits.
+ * Keeps only the rightmost node of every level (the "spine") while streaming.
+ */
+class BTreeBulkLoader {
+
+    private final int t;
+    private final int capacity; // Keys per node before moving on to a fresh one
+    private final boolean latched;
+    private final List<BTreeNode> spine = new ArrayList<>(); // spine.get(0) is the current leaf
+    private boolean empty = true;
+    private int lastKey;
+
+    /**
+     * @param t minimum degree of the tree
+     * @param fillFactor fraction of the 2t-1 slots filled per node, in (0, 1]
+     * @param latched whether nodes carry latches (concurrent trees)
+     */
+    BTreeBulkLoader(int t, double fillFactor, boolean latched) {
+        if (!(fillFactor > 0 && fillFactor <= 1)) {
+            throw new IllegalArgumentException("Fill factor must be in (0, 1]: " + fillFactor);
+        }
+        this.t = t;
+        this.capacity = Math.max(Math.max(t - 1, 1), Math.min(2 * t - 1, (int) Math.ceil(fillFactor * (2 * t - 1))));
+        this.latched = latched;
+    }
+
+    /**
+     * Appends the next key, which must not be smaller than the previous one.
+     *
+     * @param key the key to append
+     */
+    void add(int key) {
+        if (empty) {
+            spine.add(new BTreeNode(t, true, latched));
+            empty = false;
+        } else if (key < lastKey) {
+            throw new IllegalArgumentException("Keys must be sorted: " + key + " after " + lastKey);
+        }
+        lastKey = key;
+
+        BTreeNode leaf = spine.get(0);
+        if (leaf.n < capacity) {
+            leaf.keys[leaf.n++] = key;
+            return;
+        }
+
+        // Leaf is done: the key separates it from a fresh leaf
+        BTreeNode fresh = new BTreeNode(t, true, latched);
+        promote(key, fresh, 1);
+        spine.set(0, fresh);
+    }
+
+    /**
+     * Pushes a separator into level h, with rightChild to its right.
+     */
+    private void promote(int key, BTreeNode rightChild, int h) {
+        if (h == spine.size()) {
+            // New top level, its first child is the node left of the separator
+            BTreeNode top = new BTreeNode(t, false, latched);
+            top.children[0] = spine.get(h - 1);
+            spine.add(top);
+        }
+
+        BTreeNode parent = spine.get(h);
+        if (parent.n < capacity) {
+            parent.keys[parent.n++] = key;
+            parent.children[parent.n] = rightChild;
+            return;
+        }
+
+        BTreeNode fresh = new BTreeNode(t, false, latched);
+        fresh.children[0] = rightChild;
+        promote(key, fresh, h + 1);
+        spine.set(h, fresh);
+    }
+
+    /**
+     * Repairs underfull nodes on the right spine and returns the root.
+     *
+     * @return the root, or null if no key was added
+     */
+    BTreeNode finish() {
+        if (empty) {
+            return null;
+        }
+
+        // Bottom-up, so a merge that shrinks the parent is repaired at the next level.
+        // A parent without keys cannot lend to its only child yet, it gets repaired first.
+        boolean repaired;
+        do {
+            repaired = false;
+            for (int h = 0; h < spine.size() - 1; h++) {
+                BTreeNode parent = spine.get(h + 1);
+                int idx = parent.n;
+                if (idx == 0 || parent.children[idx].n >= t - 1) {
+                    continue;
+                }
+
+                BTreeNode node = parent.children[idx];
+                BTreeNode left = parent.children[idx - 1];
+                while (node.n < t - 1 && left.n > t - 1) {
+                    parent.borrowFromPrev(idx);
+                }
+                if (node.n < t - 1) {
+                    // Left sibling has exactly t-1 keys, both fit in one node
+                    parent.merge(idx - 1);
+                }
+                spine.set(h, parent.children[parent.n]);
+                repaired = true;
+            }
+
+            BTreeNode top = spine.get(spine.size() - 1);
+            if (top.n == 0 && !top.isLeaf) {
+                spine.remove(spine.size() - 1);
+                repaired = true;
+            }
+        } while (repaired);
+
+        return spine.get(spine.size() - 1);
+    }
+}
@@ -0,0 +1,211 @@
+// Reusable in-order cursor over a BTree
+
+import java.util.Arrays;
+
+/**
+ * In-order cursor over the keys of a B-Tree. The path from the root is kept in
+ * preallocated arrays, so seek/next/prev allocate nothing and one cursor can be
+ * reused across any number of lookups.
+ *
+ * A cursor is not latched: modifying the tree invalidates it until the next seek.
+ */
+public class BTreeCursor {
+
+    private final BTree tree;
+    private final BTreeNode subtree; // Fixed root when not bound to a tree
+
+    // path[d] is the node at depth d, pos[d] the key index there (child index for ancestors)
+    private BTreeNode[] path = new BTreeNode[16];
+    private int[] pos = new int[16];
+    private int depth = -1; // -1 when the cursor is not positioned
+
+    /**
+     * @param tree the tree to iterate, its current root is read on every seek
+     */
+    public BTreeCursor(BTree tree) {
+        this.tree = tree;
+        this.subtree = null;
+    }
+
+    /**
+     * @param subtree the node whose subtree is iterated
+     */
+    BTreeCursor(BTreeNode subtree) {
+        this.tree = null;
+        this.subtree = subtree;
+    }
+
+    private BTreeNode root() {
+        return tree != null ? tree.root : subtree;
+    }
+
+    /**
+     * @return True if the cursor is positioned on a key
+     */
+    public boolean isValid() {
+        return depth >= 0;
+    }
+
+    /**
+     * @return the key under the cursor
+     */
+    public int key() {
+        if (depth < 0) {
+            throw new IllegalStateException("Cursor is not positioned");
+        }
+        return path[depth].keys[pos[depth]];
+    }
+
+    /**
+     * Positions the cursor on the first key greater than or equal to the given key.
+     *
+     * @param key the key to seek
+     * @return True if the cursor landed exactly on the key
+     */
+    public boolean seek(int key) {
+        BTreeNode node = root();
+        depth = -1;
+        if (node == null) {
+            return false;
+        }
+
+        while (true) {
+            int i = 0;
+            while (i < node.n && key > node.keys[i]) {
+                i++;
+            }
+            push(node, i);
+
+            if (i < node.n && node.keys[i] == key) {
+                return true;
+            }
+            if (node.isLeaf) {
+                break;
+            }
+            node = node.children[i];
+        }
+
+        // Past the end of the leaf, the successor is the first ancestor with keys left
+        while (depth >= 0 && pos[depth] == path[depth].n) {
+            depth--;
+        }
+        return false;
+    }
+
+    /**
+     * Positions the cursor on the smallest key.
+     *
+     * @return True if the tree is not empty
+     */
+    public boolean seekFirst() {
+        depth = -1;
+        BTreeNode node = root();
+        if (node == null || node.n == 0) {
+            return false;
+        }
+        descendLeftmost(node);
+        return true;
+    }
+
+    /**
+     * Positions the cursor on the largest key.
+     *
+     * @return True if the tree is not empty
+     */
+    public boolean seekLast() {
+        depth = -1;
+        BTreeNode node = root();
+        if (node == null || node.n == 0) {
+            return false;
+        }
+        descendRightmost(node);
+        return true;
+    }
+
+    /**
+     * Moves to the next key in ascending order.
+     *
+     * @return True if the cursor is still positioned on a key
+     */
+    public boolean next() {
+        if (depth < 0) {
+            return false;
+        }
+
+        BTreeNode node = path[depth];
+        if (!node.isLeaf) {
+            pos[depth]++;
+            descendLeftmost(node.children[pos[depth]]);
+            return true;
+        }
+
+        if (pos[depth] + 1 < node.n) {
+            pos[depth]++;
+            return true;
+        }
+
+        depth--;
+        while (depth >= 0 && pos[depth] == path[depth].n) {
+            depth--;
+        }
+        return depth >= 0;
+    }
+
+    /**
+     * Moves to the previous key in ascending order.
+     *
+     * @return True if the cursor is still positioned on a key
+     */
+    public boolean prev() {
+        if (depth < 0) {
+            return false;
+        }
+
+        BTreeNode node = path[depth];
+        if (!node.isLeaf) {
+            descendRightmost(node.children[pos[depth]]);
+            return true;
+        }
+
+        if (pos[depth] > 0) {
+            pos[depth]--;
+            return true;
+        }
+
+        depth--;
+        while (depth >= 0 && pos[depth] == 0) {
+            depth--;
+        }
+        if (depth >= 0) {
+            pos[depth]--;
+        }
+        return depth >= 0;
+    }
+
+    private void descendLeftmost(BTreeNode node) {
+        while (!node.isLeaf) {
+            push(node, 0);
+            node = node.children[0];
+        }
+        push(node, 0);
+    }
+
+    private void descendRightmost(BTreeNode node) {
+        while (!node.isLeaf) {
+            push(node, node.n);
+            node = node.children[node.n];
+        }
+        push(node, node.n - 1);
+    }
+
+    private void push(BTreeNode node, int i) {
+        depth++;
+        if (depth == path.length) {
+            // Only grows when the tree got deeper than any previous seek
+            path = Arrays.copyOf(path, path.length * 2);
+            pos = Arrays.copyOf(pos, pos.length * 2);
+        }
+        path[depth] = node;
+        pos[depth] = i;
+    }
+}
@@ -1,5 +1,7 @@
 // Node class from the BTree
 
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
 /**
  * Implements a Node from a B-Tree
  */
@@ -10,34 +12,37 @@
     int t; // Minimum Degree
     boolean isLeaf;
     int n; // Number of keys
+    final ReentrantReadWriteLock latch; // Only present in concurrent trees
 
     /**
      * @param t: int Minimum degree
      * @param isLeaf: boolean Is the node a leaf
      */
     public BTreeNode(int t, boolean isLeaf){
+        this(t, isLeaf, false);
+    }
+
+    /**
+     * @param t: int Minimum degree
+     * @param isLeaf: boolean Is the node a leaf
+     * @param latched: boolean Whether the node carries a read/write latch for crabbing
+     */
+    public BTreeNode(int t, boolean isLeaf, boolean latched){
         this.t = t;
         this.isLeaf = isLeaf;
         this.keys = new int[2 * t - 1];
         this.children = new BTreeNode[2 * t];
         this.n = 0;
+        this.latch = latched ? new ReentrantReadWriteLock() : null;
     }
 
     /**
      * Helper method to traverse the tree
      */
     public void traverse(){
-        int i;
-        for(i = 0; i < this.n; i++){
-            if(!this.isLeaf){
-                children[i].traverse();
-            }
-            System.out.print(keys[i] + " ");
-        }
-
-        // Subtree of last child
-        if(!this.isLeaf){
-            children[i].traverse();
+        BTreeCursor cursor = new BTreeCursor(this);
+        for(boolean valid = cursor.seekFirst(); valid; valid = cursor.next()){
+            System.out.print(cursor.key() + " ");
         }
     }
 
@@ -47,20 +52,23 @@
      * @return BTreeNode node
      */
     public BTreeNode search(int key){
-        int i = 0;
-        while (i < n && key > keys[i]){
-            i++;
-        }
+        BTreeNode node = this;
+        while (true) {
+            int i = 0;
+            while (i < node.n && key > node.keys[i]){
+                i++;
+            }
 
-        if(i < n && keys[i] == key){
-            return this;
-        }
+            if(i < node.n && node.keys[i] == key){
+                return node;
+            }
 
-        if (isLeaf){
-            return null;
-        }
+            if (node.isLeaf){
+                return null;
+            }
 
-        return children[i].search(key);
+            node = node.children[i];
+        }
     }
 
     /**
@@ -68,33 +76,36 @@
      * @param key to insert
      */
     public void insertNonFull(int key){
-        int i = n - 1;
+        BTreeNode node = this;
 
-        if(isLeaf){
-            while(i >= 0 && keys[i] > key){
-                keys[i + 1] = keys[i];
-                i--;
-            }
-
-            keys[i+1] = key;
-            n = n + 1;
-        }
-        else {
-            while(i >= 0 && keys[i] > key){
+        while(!node.isLeaf){
+            int i = node.n - 1;
+            while(i >= 0 && node.keys[i] > key){
                 i--;
             }
+            i++;
 
-            if( children[i + 1].n == 2 * t - 1){
+            if(node.children[i].n == 2 * t - 1){
                 // i.e. full
-                splitChild(i + 1, children[i + 1]);
+                node.splitChild(i, node.children[i]);
 
-                if(keys[i + 1] > key){
+                // Median moved up, go right if the key is larger
+                if(node.keys[i] < key){
                     i++;
                 }
             }
 
-            children[i + 1].insertNonFull(key);
+            node = node.children[i];
         }
+
+        int i = node.n - 1;
+        while(i >= 0 && node.keys[i] > key){
+            node.keys[i + 1] = node.keys[i];
+            i--;
+        }
+
+        node.keys[i + 1] = key;
+        node.n = node.n + 1;
     }
 
     /**
@@ -102,7 +113,7 @@
      * @param y BTreeNode
      */
     public void splitChild(int i, BTreeNode y){
-        BTreeNode z = new BTreeNode(y.t, y.isLeaf);
+        BTreeNode z = new BTreeNode(y.t, y.isLeaf, y.latch != null);
         z.n = t - 1;
 
         for (int j = 0; j < t - 1; j++) {
@@ -137,34 +148,53 @@
      * @param key the key to be deleted
      */
     public void delete(int key) {
-        int idx = findKey(key);
+        BTreeNode node = this;
 
-        // Case 1: We find the key in this node
-        if(idx < n && keys[idx] == key){
-            if(isLeaf){
-                removeFromLeaf(idx);
+        while (true) {
+            int idx = node.findKey(key);
+
+            // Case 1: We find the key in this node
+            if(idx < node.n && node.keys[idx] == key){
+                if(node.isLeaf){
+                    node.removeFromLeaf(idx);
+                    return;
+                }
+
+                // Replace with predecessor/successor and keep deleting that one,
+                // or merge both children around the key and keep deleting the key
+                if(node.children[idx].n >= t) {
+                    key = node.getPredecessor(idx);
+                    node.keys[idx] = key;
+                    node = node.children[idx];
+                }
+                else if(node.children[idx + 1].n >= t) {
+                    key = node.getSuccessor(idx);
+                    node.keys[idx] = key;
+                    node = node.children[idx + 1];
+                }
+                else {
+                    node.merge(idx);
+                    node = node.children[idx];
+                }
             }
             else {
-                removeFromNonLeaf(idx);
-            }
-        }
-        else {
-            if(isLeaf){
-                // The key is not in the tree
-                System.out.println("The key " + key + " does not exist in the tree.");
-                return;
-            }
+                if(node.isLeaf){
+                    // The key is not in the tree
+                    System.out.println("The key " + key + " does not exist in the tree.");
+                    return;
+                }
 
-            boolean flag = (idx == n);
-            if(children[idx].n < t) {
-                fill(idx);
-            }
+                boolean flag = (idx == node.n);
+                if(node.children[idx].n < t) {
+                    node.fill(idx);
+                }
 
-            // If the last child has been merged, recurse on the (idx-1)th child
-            if (flag && idx > n) {
-                children[idx - 1].delete(key);
-            } else {
-                children[idx].delete(key);
+                // If the last child has been merged, continue on the (idx-1)th child
+                if (flag && idx > node.n) {
+                    node = node.children[idx - 1];
+                } else {
+                    node = node.children[idx];
+                }
             }
         }
     }
@@ -174,7 +204,7 @@
      * @param key the key to find
      * @return the index
      */
-    private int findKey(int key) {
+    int findKey(int key) {
         int idx = 0;
         while(idx < n && keys[idx] < key) {
             ++idx;
@@ -187,7 +217,7 @@
      * Removes the key present in idx-th position in this leaf node
      * @param idx the index of the key to remove
      */
-    private void removeFromLeaf(int idx) {
+    void removeFromLeaf(int idx) {
         // Move all keys from one position to the left
         for(int i = idx + 1; i < n; i++){
             keys[i - 1] = keys[i];
@@ -196,37 +226,12 @@
         n--;
     }
 
-    /**
-     * Removes the key present in idx-th position in this non-leaf node
-     * @param idx the index of the key to remove
-     */
-    private void removeFromNonLeaf(int idx) {
-        int key = keys[idx];
-
-        if(children[idx].n >= t) {
-            int pred = getPredecessor(idx);
-            keys[idx] = pred;
-            children[idx].delete(pred);
-        }
-
-        else if(children[idx + 1].n >= t) {
-            int succ = getSuccessor(idx);
-            keys[idx] = succ;
-            children[idx + 1].delete(succ);
-        }
-
-        else {
-            merge(idx);
-            children[idx].delete(key);
-        }
-    }
-
     /**
      * Gets the predecessor of keys[idx]
      * @param idx the index of the key
      * @return the predecessor key
      */
-    private int getPredecessor(int idx) {
+    int getPredecessor(int idx) {
         BTreeNode current = children[idx];
         while (!current.isLeaf){
             current = current.children[current.n];
@@ -241,7 +246,7 @@
      * @param idx the index of the key
      * @return the successor key
      */
-    private int getSuccessor(int idx){
+    int getSuccessor(int idx){
         BTreeNode current = children[idx + 1];
         while (!current.isLeaf){
             current = current.children[0];
@@ -255,7 +260,7 @@
      * Fills up the child node children[idx] which has less than t-1 keys
      * @param idx the index of the child node
      */
-    private void fill(int idx) {
+    void fill(int idx) {
         if(idx != 0 && children[idx - 1].n >= t){
             borrowFromPrev(idx);
         }
@@ -270,7 +275,7 @@
         }
     }
 
-    private void borrowFromPrev(int idx){
+    void borrowFromPrev(int idx){
         BTreeNode child = children[idx];
         BTreeNode sibling = children[idx - 1];
 
@@ -339,7 +344,7 @@
      * Merges children[idx] with children[idx+1] and moves a key from this node down
      * @param idx the index of the child node
      */
-    private void merge(int idx) {
+    void merge(int idx) {
         BTreeNode child = children[idx];
         BTreeNode sibling = children[idx + 1];
 
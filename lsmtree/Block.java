@@ -0,0 +1,186 @@
+// Decoded SSTable data block
+
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A decompressed SSTable data block. See {@link BlockBuilder} for the layout: point lookups
+ * binary search the restart points, then scan at most one restart interval forward.
+ */
+class Block {
+
+    private final byte[] data;
+    private final int restartsOffset; // End of the entries, start of the restart trailer
+    private final int restartCount;
+
+    /**
+     * @param data The uncompressed block bytes.
+     */
+    Block(byte[] data) {
+        this.data = data;
+        this.restartCount = readInt(data.length - 4);
+        this.restartsOffset = data.length - 4 - 4 * restartCount;
+    }
+
+    /**
+     * @return A cursor positioned before the first entry.
+     */
+    Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Finds the newest version of a key at or below a sequence number.
+     *
+     * @param key      The key.
+     * @param sequence The snapshot sequence number.
+     * @return The result; ABSENT if the block has no visible version.
+     */
+    LookupResult lookup(String key, long sequence) {
+        Cursor cursor = cursor();
+        cursor.seek(key);
+        while (cursor.next()) {
+            int cmp = cursor.key().compareTo(key);
+            if (cmp == 0 && cursor.sequence() <= sequence) {
+                return LookupResult.of(cursor.value(), cursor.sequence());
+            } else if (cmp > 0) {
+                break;
+            }
+        }
+        return LookupResult.ABSENT;
+    }
+
+    private int readInt(int pos) {
+        return ((data[pos] & 0xFF) << 24) | ((data[pos + 1] & 0xFF) << 16)
+                | ((data[pos + 2] & 0xFF) << 8) | (data[pos + 3] & 0xFF);
+    }
+
+    private int restart(int i) {
+        return readInt(restartsOffset + 4 * i);
+    }
+
+    /**
+     * Forward-only cursor over the entries of the block.
+     */
+    class Cursor {
+        private int pos;
+        private byte[] keyBytes = new byte[32];
+        private int keyLength;
+        private String key;
+        private long sequence;
+        private int valueOffset;
+        private int valueLength;
+
+        /**
+         * Positions the cursor at the last restart point whose key sorts strictly before the
+         * given key, so the following calls to {@link #next()} reach every version of it.
+         * A restart point holding the key itself may follow newer versions, hence "strictly".
+         *
+         * @param target The key.
+         */
+        void seek(String target) {
+            int lo = 0;
+            int hi = restartCount - 1;
+            int start = 0;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (restartKey(restart(mid)).compareTo(target) < 0) {
+                    start = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            pos = restartCount == 0 ? restartsOffset : restart(start);
+            keyLength = 0;
+        }
+
+        /**
+         * Advances to the next entry.
+         *
+         * @return False at the end of the block.
+         */
+        boolean next() {
+            if (pos >= restartsOffset) {
+                return false;
+            }
+            int shared = (int) readVarLong();
+            int unshared = (int) readVarLong();
+            if (shared + unshared > keyBytes.length) {
+                keyBytes = Arrays.copyOf(keyBytes, Math.max(keyBytes.length * 2, shared + unshared));
+            }
+            System.arraycopy(data, pos, keyBytes, shared, unshared);
+            pos += unshared;
+            keyLength = shared + unshared;
+            key = null;
+            sequence = readVarLong();
+            valueLength = (int) readVarLong();
+            valueOffset = pos;
+            pos += valueLength;
+            return true;
+        }
+
+        String key() {
+            if (key == null) {
+                key = new String(keyBytes, 0, keyLength, StandardCharsets.UTF_8);
+            }
+            return key;
+        }
+
+        long sequence() {
+            return sequence;
+        }
+
+        String value() {
+            return new String(data, valueOffset, valueLength, StandardCharsets.UTF_8);
+        }
+
+        SSTable.Entry entry() {
+            return new SSTable.Entry(key(), sequence, value());
+        }
+
+        /**
+         * Decodes the full key stored at a restart point, without moving the cursor.
+         */
+        private String restartKey(int offset) {
+            int[] p = {offset};
+            Block.readVarLong(data, p); // Shared prefix, always 0 at a restart point
+            int length = (int) Block.readVarLong(data, p);
+            return new String(data, p[0], length, StandardCharsets.UTF_8);
+        }
+
+        private long readVarLong() {
+            long result = 0;
+            int shift = 0;
+            while (true) {
+                byte b = data[pos++];
+                result |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return result;
+                }
+                shift += 7;
+            }
+        }
+    }
+
+    /**
+     * Reads a varint from an array.
+     *
+     * @param in  The source.
+     * @param pos Single-element holder of the read position, advanced past the varint.
+     * @return The value.
+     */
+    static long readVarLong(byte[] in, int[] pos) {
+        long result = 0;
+        int shift = 0;
+        while (true) {
+            byte b = in[pos[0]++];
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+            shift += 7;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+// Encodes entries into an SSTable data block
+
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Encodes entries into an uncompressed data block. Keys are prefix-compressed against the
+ * previous key; every {@code restartInterval} entries a restart point stores the key in full.
+ * Each entry is
+ * [varint shared prefix length][varint suffix length][key suffix][varint sequence][varint value length][value],
+ * strings in UTF-8. The block ends with the offsets of the restart points (4 bytes each)
+ * followed by their count (4 bytes), so readers can binary search the restart points.
+ */
+class BlockBuilder {
+
+    private final int restartInterval;
+    private byte[] buffer = new byte[4096];
+    private int size;
+    private int count;
+
+    private byte[] lastKey = new byte[0];
+    private int[] restarts = new int[16];
+    private int restartCount;
+    private int sinceRestart;
+
+    /**
+     * @param restartInterval Number of entries between two restart points.
+     */
+    BlockBuilder(int restartInterval) {
+        this.restartInterval = restartInterval;
+    }
+
+    /**
+     * Appends an entry.
+     *
+     * @param entry The entry to append.
+     */
+    void add(SSTable.Entry entry) {
+        byte[] key = entry.key.getBytes(StandardCharsets.UTF_8);
+        byte[] value = entry.value.getBytes(StandardCharsets.UTF_8);
+        ensure(key.length + value.length + 30);
+
+        int shared = 0;
+        if (count == 0 || sinceRestart == restartInterval) {
+            if (restartCount == restarts.length) {
+                restarts = Arrays.copyOf(restarts, restartCount * 2);
+            }
+            restarts[restartCount++] = size;
+            sinceRestart = 0;
+        } else {
+            int max = Math.min(key.length, lastKey.length);
+            while (shared < max && key[shared] == lastKey[shared]) {
+                shared++;
+            }
+        }
+
+        putVarLong(shared);
+        putVarLong(key.length - shared);
+        System.arraycopy(key, shared, buffer, size, key.length - shared);
+        size += key.length - shared;
+        putVarLong(entry.sequence);
+        putVarLong(value.length);
+        System.arraycopy(value, 0, buffer, size, value.length);
+        size += value.length;
+
+        lastKey = key;
+        sinceRestart++;
+        count++;
+    }
+
+    /**
+     * Appends the restart point trailer. No entry may be added afterwards until {@link #reset()}.
+     *
+     * @return The final size of the block, in bytes.
+     */
+    int finish() {
+        ensure(4 * restartCount + 4);
+        for (int i = 0; i < restartCount; i++) {
+            putInt(restarts[i]);
+        }
+        putInt(restartCount);
+        return size;
+    }
+
+    /**
+     * @return The encoded size so far, in bytes.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return The number of entries so far.
+     */
+    int count() {
+        return count;
+    }
+
+    /**
+     * @return The raw buffer, valid up to {@link #size()}.
+     */
+    byte[] buffer() {
+        return buffer;
+    }
+
+    /**
+     * Starts a new block.
+     */
+    void reset() {
+        size = 0;
+        count = 0;
+        restartCount = 0;
+        sinceRestart = 0;
+        lastKey = new byte[0];
+    }
+
+    private void ensure(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+        }
+    }
+
+    private void putInt(int v) {
+        buffer[size++] = (byte) (v >>> 24);
+        buffer[size++] = (byte) (v >>> 16);
+        buffer[size++] = (byte) (v >>> 8);
+        buffer[size++] = (byte) v;
+    }
+
+    private void putVarLong(long v) {
+        while ((v & ~0x7FL) != 0) {
+            buffer[size++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buffer[size++] = (byte) v;
+    }
+
+    /**
+     * Writes a varint into an array.
+     *
+     * @param out The destination.
+     * @param pos The write position.
+     * @param v   The value.
+     * @return The position after the varint.
+     */
+    static int writeVarLong(byte[] out, int pos, long v) {
+        while ((v & ~0x7FL) != 0) {
+            out[pos++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out[pos++] = (byte) v;
+        return pos;
+    }
+}
@@ -0,0 +1,149 @@
+// LRU cache of decompressed SSTable blocks
+
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * LRU cache of decompressed SSTable blocks, bounded by their total size in bytes.
+ * Shared by all tables of a tree, so a hot block is decompressed once.
+ * <p>
+ * Blocks are spread by hash over up to 16 segments, each an LRU with its own lock and share
+ * of the capacity, so concurrent readers of different blocks rarely contend.
+ */
+public class BlockCache {
+
+    private static final int MAX_SEGMENTS = 16;
+    // Smallest share of the capacity worth a segment of its own: a few typical blocks
+    private static final long MIN_SEGMENT_BYTES = 256 << 10;
+
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param capacity Maximum total size of cached blocks, in bytes.
+     */
+    public BlockCache(long capacity) {
+        long fit = capacity / MIN_SEGMENT_BYTES;
+        int count = fit < 1 ? 1 : (int) Long.highestOneBit(Math.min(fit, MAX_SEGMENTS));
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(capacity / count);
+        }
+    }
+
+    /**
+     * Returns a cached block.
+     *
+     * @param tableId The id of the table.
+     * @param offset  The offset of the block in the table file.
+     * @return The decompressed block, or null if not cached.
+     */
+    public byte[] get(long tableId, long offset) {
+        Key key = new Key(tableId, offset);
+        byte[] block = segmentFor(key).get(key);
+        (block == null ? misses : hits).increment();
+        return block;
+    }
+
+    /**
+     * Caches a block, evicting the least recently used ones beyond capacity.
+     *
+     * @param tableId The id of the table.
+     * @param offset  The offset of the block in the table file.
+     * @param block   The decompressed block.
+     */
+    public void put(long tableId, long offset, byte[] block) {
+        Key key = new Key(tableId, offset);
+        segmentFor(key).put(key, block);
+    }
+
+    private Segment segmentFor(Key key) {
+        int h = key.hashCode();
+        return segments[(h ^ (h >>> 16)) & (segments.length - 1)];
+    }
+
+    /**
+     * @return The number of lookups served from the cache.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return The number of lookups that had to read the block.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * One LRU share of the cache.
+     */
+    private static final class Segment {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final long capacity;
+        private long used;
+        private final LinkedHashMap<Key, byte[]> blocks = new LinkedHashMap<>(16, 0.75f, true);
+
+        Segment(long capacity) {
+            this.capacity = capacity;
+        }
+
+        byte[] get(Key key) {
+            lock.lock();
+            try {
+                return blocks.get(key);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void put(Key key, byte[] block) {
+            lock.lock();
+            try {
+                byte[] previous = blocks.put(key, block);
+                used += block.length - (previous == null ? 0 : previous.length);
+
+                Iterator<byte[]> it = blocks.values().iterator();
+                while (used > capacity && it.hasNext()) {
+                    used -= it.next().length;
+                    it.remove();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Identifies a block: table id and file offset.
+     */
+    private static final class Key {
+        final long tableId;
+        final long offset;
+
+        Key(long tableId, long offset) {
+            this.tableId = tableId;
+            this.offset = offset;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return tableId == other.tableId && offset == other.offset;
+        }
+
+        @Override
+        public int hashCode() {
+            long h = (tableId * 0x9E3779B97F4A7C15L + offset) * 0x9E3779B97F4A7C15L;
+            return (int) (h >>> 32);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+// Compact, array-backed index of SSTable blocks
+
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Sorted index from the first key of each block to its position in the file, stored as one
+ * byte array instead of a map of objects:
+ * [int n][long offset x (n + 1)][int key start x (n + 1)][UTF-8 key bytes].
+ * Entry i spans [offset(i), offset(i + 1)) in the file. The same layout serves as the
+ * resident index of a table and, for partitioned indexes, as each on-disk index partition.
+ */
+class BlockIndex {
+
+    private final byte[] data;
+    private final int count;
+    private final int keysOffset; // Start of the key bytes
+
+    /**
+     * @param data An encoded index, as produced by {@link Builder#finish(long)}.
+     */
+    BlockIndex(byte[] data) {
+        this.data = data;
+        this.count = readInt(0);
+        this.keysOffset = 4 + 8 * (count + 1) + 4 * (count + 1);
+    }
+
+    /**
+     * @return The number of entries.
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * @return The heap footprint of the index, in bytes.
+     */
+    long memoryUsage() {
+        return data.length + 16;
+    }
+
+    /**
+     * @return The encoded index.
+     */
+    byte[] encoded() {
+        return data;
+    }
+
+    /**
+     * Finds the entry with the greatest key at or below the given key.
+     *
+     * @param key The key.
+     * @return The entry position, or -1 if the key sorts before the first entry.
+     */
+    int floor(String key) {
+        int lo = 0;
+        int hi = count - 1;
+        int found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key(mid).compareTo(key) <= 0) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @param i The entry position.
+     * @return The first key of the entry.
+     */
+    String key(int i) {
+        int start = keyStart(i);
+        return new String(data, start, keyStart(i + 1) - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param i The entry position.
+     * @return The file offset where the entry starts.
+     */
+    long start(int i) {
+        return readLong(4 + 8 * i);
+    }
+
+    /**
+     * @param i The entry position.
+     * @return The file offset where the entry ends.
+     */
+    long end(int i) {
+        return readLong(4 + 8 * (i + 1));
+    }
+
+    private int keyStart(int i) {
+        return keysOffset + readInt(4 + 8 * (count + 1) + 4 * i);
+    }
+
+    private int readInt(int pos) {
+        return ((data[pos] & 0xFF) << 24) | ((data[pos + 1] & 0xFF) << 16)
+                | ((data[pos + 2] & 0xFF) << 8) | (data[pos + 3] & 0xFF);
+    }
+
+    private long readLong(int pos) {
+        return ((long) readInt(pos) << 32) | (readInt(pos + 4) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Accumulates entries in key order.
+     */
+    static class Builder {
+        private long[] offsets = new long[16];
+        private int[] keyStarts = new int[16];
+        private byte[] keys = new byte[256];
+        private int keysLength;
+        private int count;
+
+        /**
+         * Appends an entry.
+         *
+         * @param firstKey The first key of the entry, not below the previous one.
+         * @param offset   The file offset where the entry starts.
+         */
+        void add(String firstKey, long offset) {
+            byte[] key = firstKey.getBytes(StandardCharsets.UTF_8);
+            if (count + 2 > offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                keyStarts = Arrays.copyOf(keyStarts, keyStarts.length * 2);
+            }
+            if (keysLength + key.length > keys.length) {
+                keys = Arrays.copyOf(keys, Math.max(keys.length * 2, keysLength + key.length));
+            }
+            offsets[count] = offset;
+            keyStarts[count] = keysLength;
+            System.arraycopy(key, 0, keys, keysLength, key.length);
+            keysLength += key.length;
+            count++;
+        }
+
+        /**
+         * @return The number of entries so far.
+         */
+        int count() {
+            return count;
+        }
+
+        /**
+         * Encodes the entries.
+         *
+         * @param end The file offset where the last entry ends.
+         * @return The encoded index.
+         */
+        byte[] finish(long end) {
+            offsets[count] = end;
+            keyStarts[count] = keysLength;
+
+            byte[] out = new byte[4 + 8 * (count + 1) + 4 * (count + 1) + keysLength];
+            int pos = putInt(out, 0, count);
+            for (int i = 0; i <= count; i++) {
+                pos = putInt(out, pos, (int) (offsets[i] >>> 32));
+                pos = putInt(out, pos, (int) offsets[i]);
+            }
+            for (int i = 0; i <= count; i++) {
+                pos = putInt(out, pos, keyStarts[i]);
+            }
+            System.arraycopy(keys, 0, out, pos, keysLength);
+            return out;
+        }
+
+        /**
+         * Starts a new index.
+         */
+        void reset() {
+            count = 0;
+            keysLength = 0;
+        }
+
+        private static int putInt(byte[] out, int pos, int v) {
+            out[pos] = (byte) (v >>> 24);
+            out[pos + 1] = (byte) (v >>> 16);
+            out[pos + 2] = (byte) (v >>> 8);
+            out[pos + 3] = (byte) v;
+            return pos + 4;
+        }
+    }
+}
@@ -1,9 +1,7 @@
 // Used to merge multiple SSL tables into a single one
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
 import java.util.*;
 
 
@@ -16,81 +14,294 @@ public class Compaction {
     /**
      * Merges multiple SSTables into a single SSTable.
      *
-     * @param sstables   The list of SSTables to merge.
-     * @param directory  The directory to store the new SSTable.
+     * For every key the newest version is kept, plus the newest version visible to each live
+     * snapshot. When the inputs include the oldest table, no older table can contain a deleted
+     * key, so a deletion no snapshot can look past is dropped together with everything older.
+     *
+     * @param sstables    The list of SSTables to merge, oldest first.
+     * @param directory   The directory to store the new SSTable.
+     * @param snapshots   Sequence numbers of the live snapshots.
+     * @param bottommost  True if no table older than the inputs exists.
+     * @param options     Block size, codec and block cache of the merged table, and how to read
+     *                    the inputs and write it (see {@link SSTableOptions#setDirectCompactionIo}).
+     * @return The newly created merged SSTable.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static SSTable compact(List<SSTable> sstables, String directory, long[] snapshots,
+                                  boolean bottommost, SSTableOptions options) throws IOException {
+        return compact(sstables, directory, snapshots, bottommost, options, null, null, null);
+    }
+
+    /**
+     * Merges multiple SSTables into a single SSTable, garbage-collecting entries on the way.
+     *
+     * Of the versions that would be kept, those no live snapshot can read are filtered: expired
+     * TTL entries, and entries the filter rejects, are turned into deletions at their sequence
+     * number, which the rules above then drop when they can.
+     *
+     * Merge operands are folded into the newest value or deletion below them, as long as no
+     * snapshot can read a version in between; operands with nothing below them are folded
+     * into one operand, or into a value if the compaction is bottommost.
+     *
+     * @param sstables    The list of SSTables to merge, oldest first.
+     * @param directory   The directory to store the new SSTable.
+     * @param snapshots   Sequence numbers of the live snapshots.
+     * @param bottommost  True if no table older than the inputs exists.
+     * @param options     Block size, codec and block cache of the merged table, and how to read
+     *                    the inputs and write it (see {@link SSTableOptions#setDirectCompactionIo}).
+     * @param filter      The application's filter, or null to drop expired entries only.
+     * @param valueLog    The value log the inputs point into and the output may move values
+     *                    to (see {@link SSTableOptions#setValueSeparationThreshold}), or null
+     *                    if the inputs hold every value inline.
+     * @param merge       Folds merge operands, or null to keep them as they are.
      * @return The newly created merged SSTable.
      * @throws IOException If an I/O error occurs.
      */
-    public static SSTable compact(List<SSTable> sstables, String directory) throws IOException {
-        PriorityQueue<IteratorWrapper> pq = new PriorityQueue<IteratorWrapper>(Comparator.comparing(wrapper -> wrapper.currentKey));
+    static SSTable compact(List<SSTable> sstables, String directory, long[] snapshots,
+                           boolean bottommost, SSTableOptions options, CompactionFilter filter,
+                           ValueLog valueLog, MergeOperator merge) throws IOException {
+        // Key ascending, newest version first
+        PriorityQueue<IteratorWrapper> pq = new PriorityQueue<IteratorWrapper>(
+                Comparator.<IteratorWrapper, String>comparing(wrapper -> wrapper.current.key)
+                        .thenComparing(wrapper -> wrapper.current.sequence, Comparator.reverseOrder()));
 
-        List<BufferedReader> readers = new ArrayList<>(); // Iterators for each SSLTable
+        List<SSTable.Scanner> scanners = new ArrayList<>(); // Iterators for each SSLTable
         try {
             for (SSTable table : sstables) {
-                BufferedReader reader = Files.newBufferedReader(table.getFilePath(), StandardCharsets.UTF_8);
-                readers.add(reader);
-                String line = reader.readLine();
-                if (line != null) {
-                    String[] parts = line.split(" ", 2);
-                    if (parts.length >= 1) {
-                        String key = parts[0];
-                        String value = parts.length == 2 ? parts[1] : "NULL";
-                        pq.add(new IteratorWrapper(key, value, reader));
+                SSTable.Scanner scanner = table.compactionScanner(options);
+                scanners.add(scanner);
+                if (scanner.hasNext()) {
+                    pq.add(new IteratorWrapper(scanner.next(), scanner));
+                }
+            }
+
+            long[] sortedSnapshots = snapshots.clone();
+            Arrays.sort(sortedSnapshots);
+
+            Iterator<SSTable.Entry> merged = new MergingIterator(pq, sortedSnapshots, bottommost, filter, valueLog,
+                    merge, System.currentTimeMillis());
+            if (valueLog == null) {
+                return SSTable.create(merged, directory, options, true);
+            }
+            // Large values go to a value file of this compaction, as do the live values of collected files
+            try (ValueLog.Writer writer = valueLog.newWriter()) {
+                Set<Long> relocate = valueLog.collectable(options.getValueLogGcRatio());
+                return SSTable.create(writer.separate(merged, options.getValueSeparationThreshold(), relocate),
+                        directory, options, true, writer);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            for (SSTable.Scanner scanner : scanners) {
+                scanner.close();
+            }
+        }
+    }
+
+    /**
+     * Merges the scanners and applies the retention rules on the fly.
+     */
+    private static class MergingIterator implements Iterator<SSTable.Entry> {
+        private final PriorityQueue<IteratorWrapper> pq;
+        private final long[] snapshots; // Ascending
+        private final boolean bottommost;
+        private final CompactionFilter filter;
+        private final ValueLog valueLog;
+        private final MergeOperator merge;
+        private final long now; // Wall-clock time TTLs are checked against
+        private SSTable.Entry next;
+
+        private final List<SSTable.Entry> versions = new ArrayList<>(); // Of the current key, newest first
+        private final ArrayDeque<SSTable.Entry> kept = new ArrayDeque<>(); // Versions of it to write
+
+        MergingIterator(PriorityQueue<IteratorWrapper> pq, long[] snapshots, boolean bottommost,
+                        CompactionFilter filter, ValueLog valueLog, MergeOperator merge, long now) {
+            this.pq = pq;
+            this.snapshots = snapshots;
+            this.bottommost = bottommost;
+            this.filter = filter;
+            this.valueLog = valueLog;
+            this.merge = merge;
+            this.now = now;
+            advance();
+        }
+
+        private void advance() {
+            while (kept.isEmpty() && !pq.isEmpty()) {
+                versions.clear();
+                String key = pq.peek().current.key;
+                while (!pq.isEmpty() && pq.peek().current.key.equals(key)) {
+                    IteratorWrapper it = pq.poll();
+                    versions.add(it.current);
+                    if (it.scanner.hasNext()) {
+                        it.current = it.scanner.next();
+                        pq.add(it);
                     }
                 }
+                retain();
             }
+            next = kept.poll();
+        }
 
-            TreeMap<String, String> merged = new TreeMap<>();
-            while (!pq.isEmpty()) {
-                IteratorWrapper it = pq.poll();
-                String key = it.currentKey;
-                String value = it.currentValue;
+        /**
+         * Decides which versions of the current key to keep.
+         */
+        private void retain() {
+            long previousSequence = Long.MAX_VALUE; // Sequence of the previous (newer) version
+            for (int i = 0; i < versions.size(); i++) {
+                SSTable.Entry entry = versions.get(i);
 
-                String line = it.reader.readLine();
+                // Visible to the snapshots in [sequence, previousSequence), or to the latest state
+                boolean visible = previousSequence == Long.MAX_VALUE
+                        || hasSnapshotIn(entry.sequence, previousSequence);
+                previousSequence = entry.sequence;
+                if (!visible) {
+                    continue;
+                }
 
-                if (line != null) {
-                    String[] parts = line.split(" ", 2);
-                    if (parts.length >= 1) {
-                        String nextKey = parts[0];
-                        String nextValue = parts.length == 2 ? parts[1] : "NULL";
-                        pq.add(new IteratorWrapper(nextKey, nextValue, it.reader));
+                if (StoredValue.isOperand(entry.value)) {
+                    if (merge == null) {
+                        kept.add(entry);
+                        previousSequence = Long.MAX_VALUE; // An operand hides nothing
+                        continue;
+                    }
+                    int folded = fold(i);
+                    entry = versions.get(i);
+                    previousSequence = versions.get(i + folded).sequence;
+                    i += folded;
+                    if (StoredValue.isOperand(entry.value)) {
+                        kept.add(entry);
+                        previousSequence = Long.MAX_VALUE;
+                        continue;
                     }
                 }
 
-                merged.put(key, value);
-            }
+                // Only what no snapshot can read is filtered; a removal stays a deletion for now
+                if (!entry.value.equals(MemTable.TOMBSTONE) && !hasSnapshotIn(entry.sequence, Long.MAX_VALUE)) {
+                    entry = filter(entry);
+                }
 
-            // Remove keys with null values
-            merged.entrySet().removeIf(entry -> entry.getValue().equals("NULL"));
+                // A deletion no snapshot can see past hides nothing once no older table remains
+                if (bottommost && entry.value.equals(MemTable.TOMBSTONE)
+                        && !hasSnapshotIn(Long.MIN_VALUE, entry.sequence)) {
+                    continue;
+                }
 
-            SSTable newSSTable = SSTable.createFromMemTable(merged, directory);
+                kept.add(entry);
+            }
+        }
 
-            return newSSTable;
-        } finally {
-            for (BufferedReader reader : readers) {
-                if (reader != null) {
-                    reader.close();
+        /**
+         * Folds the operand at {@code versions[i]} with the older versions no snapshot reads
+         * on their own, replacing it with the result at its sequence number: a value if a value
+         * or deletion was reached (or nothing is left below a bottommost compaction), otherwise
+         * a single operand.
+         *
+         * @return The number of older versions folded in.
+         */
+        private int fold(int i) {
+            SSTable.Entry entry = versions.get(i);
+            List<String> operands = new ArrayList<>(); // Newest first
+            operands.add(StoredValue.value(entry.value));
+            String base = null;
+            long expiresAt = StoredValue.NEVER;
+            boolean complete = false;
+            int j = i + 1;
+            while (j < versions.size() && !hasSnapshotIn(versions.get(j).sequence, versions.get(j - 1).sequence)) {
+                SSTable.Entry older = versions.get(j++);
+                if (StoredValue.isOperand(older.value)) {
+                    operands.add(StoredValue.value(older.value));
+                    continue;
+                }
+                if (!older.value.equals(MemTable.TOMBSTONE) && !StoredValue.isExpired(older.value, now)) {
+                    base = read(older.value);
+                    expiresAt = StoredValue.expiresAt(older.value);
                 }
+                complete = true;
+                break;
+            }
+            complete |= j == versions.size() && bottommost;
+
+            Collections.reverse(operands);
+            String value;
+            if (complete) {
+                value = StoredValue.wrap(merge.mergeAll(entry.key, base, operands), expiresAt);
+            } else {
+                // Associative: the operands combine into one, applied to the value later
+                value = StoredValue.operand(
+                        merge.mergeAll(entry.key, operands.get(0), operands.subList(1, operands.size())));
             }
+            versions.set(i, new SSTable.Entry(entry.key, entry.sequence, value));
+            return j - i - 1;
         }
 
+        private String read(String stored) {
+            try {
+                return StoredValue.isPointer(stored) ? valueLog.read(StoredValue.value(stored))
+                        : StoredValue.value(stored);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
 
-    }
+        /**
+         * Applies the TTL and the application's filter to a live entry.
+         *
+         * @return The entry, a replacement, or a deletion at the entry's sequence number.
+         */
+        private SSTable.Entry filter(SSTable.Entry entry) {
+            if (StoredValue.isExpired(entry.value, now)) {
+                return new SSTable.Entry(entry.key, entry.sequence, MemTable.TOMBSTONE);
+            }
+            if (filter == null) {
+                return entry;
+            }
+            String value = read(entry.value);
+            String replacement = filter.filter(entry.key, value);
+            if (replacement == null) {
+                return new SSTable.Entry(entry.key, entry.sequence, MemTable.TOMBSTONE);
+            }
+            if (replacement.equals(value)) {
+                return entry;
+            }
+            return new SSTable.Entry(entry.key, entry.sequence,
+                    StoredValue.wrap(replacement, StoredValue.expiresAt(entry.value)));
+        }
 
+        private boolean hasSnapshotIn(long from, long to) {
+            int i = Arrays.binarySearch(snapshots, from);
+            if (i < 0) {
+                i = -i - 1;
+            }
+            return i < snapshots.length && snapshots[i] < to;
+        }
 
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public SSTable.Entry next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            SSTable.Entry current = next;
+            advance();
+            return current;
+        }
+    }
 
     /**
      * Helper class to wrap iterator state.
      */
     private static class IteratorWrapper {
-        String currentKey;
-        String currentValue;
-        BufferedReader reader;
-
-        public IteratorWrapper(String key, String value, BufferedReader reader) {
-            this.currentKey = key;
-            this.currentValue = value;
-            this.reader = reader;
+        SSTable.Entry current;
+        SSTable.Scanner scanner;
+
+        public IteratorWrapper(SSTable.Entry current, SSTable.Scanner scanner) {
+            this.current = current;
+            this.scanner = scanner;
         }
     }
 }
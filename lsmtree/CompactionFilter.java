@@ -0,0 +1,26 @@
+// Application hook deciding which entries compaction keeps
+
+
+/**
+ * Called by compaction on every value it is about to keep, to garbage-collect entries without
+ * writing deletions. Entries a live snapshot can read are not passed to the filter, so
+ * snapshot reads never change under it. Expired TTL entries are dropped before the filter is
+ * consulted.
+ * <p>
+ * A removed entry behaves like a deletion written at its sequence number: older versions of
+ * the key do not resurface. Implementations must be thread-safe and fast, they run inside
+ * the compaction loop.
+ */
+@FunctionalInterface
+public interface CompactionFilter {
+
+    /**
+     * Decides the fate of an entry.
+     *
+     * @param key   The key.
+     * @param value The value, without its TTL.
+     * @return The value to keep (the same one, or a replacement that keeps the entry's TTL),
+     * or null to remove the entry.
+     */
+    String filter(String key, String value);
+}
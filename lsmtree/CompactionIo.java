@@ -0,0 +1,272 @@
+// Large sequential reads and writes for compaction, optionally bypassing the page cache
+
+import com.sun.nio.file.ExtendedOpenOption;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * File access of compaction. Inputs are read in windows of many blocks instead of one
+ * positional read per block, and the output is written through a buffer of the same size.
+ * <p>
+ * With direct I/O the files are opened with {@code O_DIRECT}, so streaming whole tables
+ * through compaction does not evict the pages foreground reads depend on. Direct transfers
+ * must start at, and span, multiples of the file system block size, so they go through
+ * aligned off-heap buffers. File systems that refuse {@code O_DIRECT} (tmpfs on older
+ * kernels, some network mounts) fall back to buffered I/O with the same buffer sizes.
+ */
+final class CompactionIo {
+
+    private static final int DEFAULT_ALIGNMENT = 4096;
+
+    private CompactionIo() {
+    }
+
+    /**
+     * Opens a file with {@code O_DIRECT}.
+     *
+     * @return The channel, or null if the platform or file system does not support it.
+     */
+    private static FileChannel openDirect(Path path, OpenOption... options) {
+        OpenOption[] direct = new OpenOption[options.length + 1];
+        System.arraycopy(options, 0, direct, 0, options.length);
+        direct[options.length] = ExtendedOpenOption.DIRECT;
+        try {
+            return FileChannel.open(path, direct);
+        } catch (UnsupportedOperationException | IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return The block size direct transfers must be aligned to.
+     */
+    private static int alignment(Path path) {
+        try {
+            long blockSize = Files.getFileStore(path).getBlockSize();
+            return blockSize > 0 && blockSize <= 1 << 16 ? (int) blockSize : DEFAULT_ALIGNMENT;
+        } catch (UnsupportedOperationException | IOException e) {
+            return DEFAULT_ALIGNMENT;
+        }
+    }
+
+    private static int roundUp(long length, int alignment) {
+        return (int) ((length + alignment - 1) / alignment * alignment);
+    }
+
+    /**
+     * Opens a reader over an SSTable file.
+     *
+     * @param path      The file.
+     * @param readahead The number of bytes read at once.
+     * @param direct    Whether to bypass the page cache if supported.
+     * @return The reader, to be closed by the caller.
+     * @throws IOException If the file cannot be opened.
+     */
+    static Reader reader(Path path, int readahead, boolean direct) throws IOException {
+        FileChannel channel = direct ? openDirect(path, StandardOpenOption.READ) : null;
+        if (channel != null) {
+            int alignment = alignment(path);
+            return new Reader(channel, roundUp(readahead, alignment), alignment);
+        }
+        return new Reader(FileChannel.open(path, StandardOpenOption.READ), readahead, 1);
+    }
+
+    /**
+     * Creates a new file to write an SSTable to.
+     *
+     * @param path       The file.
+     * @param bufferSize The number of bytes written at once.
+     * @param direct     Whether to bypass the page cache if supported.
+     * @return The stream, to be closed by the caller.
+     * @throws IOException If the file cannot be created.
+     */
+    static OutputStream output(Path path, int bufferSize, boolean direct) throws IOException {
+        OpenOption[] create = {StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING};
+        FileChannel channel = direct ? openDirect(path, create) : null;
+        if (channel != null) {
+            int alignment = alignment(path);
+            return new ChannelOutputStream(path, channel, roundUp(bufferSize, alignment), alignment);
+        }
+        return new ChannelOutputStream(path, FileChannel.open(path, create), bufferSize, 1);
+    }
+
+    private static ByteBuffer allocate(int capacity, int alignment) {
+        if (alignment == 1) {
+            return ByteBuffer.allocate(capacity);
+        }
+        return ByteBuffer.allocateDirect(capacity + alignment).alignedSlice(alignment);
+    }
+
+    /**
+     * Reads byte ranges of a file sequentially through a window of {@code readahead} bytes.
+     * Not thread-safe: each compaction input has its own.
+     */
+    static final class Reader implements Closeable {
+        private final FileChannel channel;
+        private final int readahead;
+        private final int alignment; // 1 for buffered I/O
+        private ByteBuffer window;
+        private long windowStart;
+        private long reads;
+        private long bytesRead;
+
+        private Reader(FileChannel channel, int readahead, int alignment) {
+            this.channel = channel;
+            this.readahead = readahead;
+            this.alignment = alignment;
+            this.window = allocate(readahead, alignment);
+            this.window.limit(0);
+        }
+
+        /**
+         * @return Whether the file was opened with {@code O_DIRECT}.
+         */
+        boolean isDirect() {
+            return alignment > 1;
+        }
+
+        /**
+         * Returns a byte range of the file, reading the window that starts with it if the
+         * current window does not hold it.
+         *
+         * @param start The first byte.
+         * @param end   The byte after the last.
+         * @return The bytes.
+         * @throws IOException If an I/O error occurs or the file ends before {@code end}.
+         */
+        byte[] read(long start, long end) throws IOException {
+            if (start < windowStart || end > windowStart + window.limit()) {
+                fill(start, end);
+            }
+            byte[] bytes = new byte[(int) (end - start)];
+            window.get((int) (start - windowStart), bytes);
+            return bytes;
+        }
+
+        private void fill(long start, long end) throws IOException {
+            long from = start - start % alignment;
+            int length = roundUp(Math.max(end - from, readahead), alignment);
+            if (length > window.capacity()) {
+                window = allocate(length, alignment); // A block larger than the readahead
+            }
+            window.clear().limit(length);
+            while (window.hasRemaining()) {
+                int read = channel.read(window, from + window.position());
+                // Past the end of the file, or a direct read cut short by it
+                if (read < 0 || window.position() % alignment != 0) {
+                    break;
+                }
+            }
+            window.flip();
+            windowStart = from;
+            reads++;
+            bytesRead += window.limit();
+            if (from + window.limit() < end) {
+                throw new EOFException("Truncated block at " + start);
+            }
+        }
+
+        /**
+         * @return The number of windows read from the file.
+         */
+        long getReads() {
+            return reads;
+        }
+
+        /**
+         * @return The number of bytes read from the file.
+         */
+        long getBytesRead() {
+            return bytesRead;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Writes through a buffer flushed in whole aligned chunks. With direct I/O the last chunk
+     * is padded to the alignment and the file is truncated back to its length on close.
+     */
+    private static final class ChannelOutputStream extends OutputStream {
+        private final Path path;
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final int alignment;
+        private long length;
+        private boolean closed;
+
+        ChannelOutputStream(Path path, FileChannel channel, int bufferSize, int alignment) {
+            this.path = path;
+            this.channel = channel;
+            this.buffer = allocate(bufferSize, alignment);
+            this.alignment = alignment;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            buffer.put((byte) b);
+            length++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (!buffer.hasRemaining()) {
+                    drain();
+                }
+                int n = Math.min(len, buffer.remaining());
+                buffer.put(b, off, n);
+                off += n;
+                len -= n;
+                length += n;
+            }
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            boolean padded = false;
+            try {
+                int tail = buffer.position() % alignment;
+                if (tail != 0) {
+                    buffer.put(new byte[alignment - tail]);
+                    padded = true;
+                }
+                drain();
+            } finally {
+                channel.close();
+            }
+            if (padded) {
+                try (FileChannel file = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    file.truncate(length);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+// Pluggable block compression for SSTables
+
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compresses SSTable blocks. Every block records the id of the codec that wrote it, so tables
+ * written with different codecs can be read side by side. Custom codecs must be registered
+ * with {@link #register(CompressionCodec)} before tables using them are read.
+ */
+public interface CompressionCodec {
+
+    CompressionCodec NONE = new CompressionCodec() {
+        @Override
+        public byte id() {
+            return 0;
+        }
+
+        @Override
+        public String name() {
+            return "none";
+        }
+
+        @Override
+        public byte[] compress(byte[] data, int offset, int length) {
+            byte[] copy = new byte[length];
+            System.arraycopy(data, offset, copy, 0, length);
+            return copy;
+        }
+
+        @Override
+        public byte[] decompress(byte[] data, int offset, int length, int uncompressedLength) {
+            byte[] copy = new byte[length];
+            System.arraycopy(data, offset, copy, 0, length);
+            return copy;
+        }
+    };
+
+    CompressionCodec LZ = new LZCodec();
+
+    CompressionCodec DEFLATE = new DeflateCodec();
+
+    /**
+     * @return The id stored in every block written by this codec (0-127).
+     */
+    byte id();
+
+    /**
+     * @return A short name for reports.
+     */
+    String name();
+
+    /**
+     * Compresses a byte range.
+     *
+     * @param data   The buffer.
+     * @param offset The start of the range.
+     * @param length The length of the range.
+     * @return The compressed bytes.
+     */
+    byte[] compress(byte[] data, int offset, int length);
+
+    /**
+     * Decompresses a byte range produced by {@link #compress(byte[], int, int)}.
+     *
+     * @param data               The buffer.
+     * @param offset             The start of the compressed range.
+     * @param length             The length of the compressed range.
+     * @param uncompressedLength The original length.
+     * @return The original bytes.
+     */
+    byte[] decompress(byte[] data, int offset, int length, int uncompressedLength);
+
+    /**
+     * Makes a codec available to readers.
+     *
+     * @param codec The codec to register.
+     */
+    static void register(CompressionCodec codec) {
+        Registry.CODECS.put(codec.id(), codec);
+    }
+
+    /**
+     * Finds the codec that wrote a block.
+     *
+     * @param id The codec id stored in the block.
+     * @return The codec.
+     */
+    static CompressionCodec byId(byte id) {
+        CompressionCodec codec = Registry.CODECS.get(id);
+        if (codec == null) {
+            throw new IllegalArgumentException("Unknown compression codec id: " + id);
+        }
+        return codec;
+    }
+
+    /**
+     * Holds the registered codecs.
+     */
+    final class Registry {
+        private static final Map<Byte, CompressionCodec> CODECS = new ConcurrentHashMap<>();
+
+        static {
+            CODECS.put(NONE.id(), NONE);
+            CODECS.put(LZ.id(), LZ);
+            CODECS.put(DEFLATE.id(), DEFLATE);
+        }
+
+        private Registry() {
+        }
+    }
+}
@@ -0,0 +1,278 @@
+// Read replica applying a primary's WAL records
+
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * A read replica of a primary {@link LSMTree}. A background thread pulls WAL records from the
+ * primary's {@link ReplicationLog}, in-process or through a {@link ReplicationServer}, and
+ * applies them to a local tree with their original sequence numbers, so reads on the replica
+ * see a prefix of the primary's history. Writes must go to the primary.
+ * <p>
+ * A follower starting from an empty tree receives a snapshot of the primary first, in chunks;
+ * one restarted over an existing tree resumes after the tree's last sequence number. A file
+ * next to the replica's SSTables marks a snapshot being copied, so a replica that stopped
+ * partway, holding only some keys at the snapshot's sequence number, refuses to resume
+ * instead of tailing with keys missing.
+ */
+public class Follower implements Closeable {
+
+    private final LSMTree tree;
+    private final Feed feed;
+    private final Thread applier;
+    private volatile boolean running = true;
+    private volatile long primarySequence;
+    private volatile long caughtUpAt = System.nanoTime();
+    private volatile IOException failure;
+
+    private Follower(LSMTree tree, Feed feed, String name) {
+        this.tree = tree;
+        this.feed = feed;
+        this.applier = new Thread(this::applyLoop, name);
+        applier.setDaemon(true);
+        applier.start();
+    }
+
+    /**
+     * Follows a primary in the same process.
+     *
+     * @param log     The primary's replication log.
+     * @param replica The tree to apply the records to.
+     * @return The running follower.
+     */
+    public static Follower local(ReplicationLog log, LSMTree replica) {
+        return new Follower(replica, new Feed() {
+            @Override
+            public ReplicationLog.Batch next(long afterSequence) throws IOException, InterruptedException {
+                return log.read(afterSequence, ReplicationServer.MAX_RECORDS, ReplicationServer.POLL_MILLIS);
+            }
+
+            @Override
+            public ReplicationLog.Batch nextSnapshot(long sequence, String afterKey) throws IOException {
+                return log.readSnapshot(sequence, afterKey, ReplicationServer.MAX_RECORDS);
+            }
+        }, "follower-local");
+    }
+
+    /**
+     * Follows a primary through its {@link ReplicationServer}.
+     *
+     * @param primary The server address.
+     * @param replica The tree to apply the records to.
+     * @return The running follower.
+     * @throws IOException If the server cannot be reached.
+     */
+    public static Follower remote(InetSocketAddress primary, LSMTree replica) throws IOException {
+        return new Follower(replica, new RemoteFeed(primary), "follower-" + primary.getPort());
+    }
+
+    private void applyLoop() {
+        try {
+            if (Files.exists(tree.bootstrapMarker())) {
+                throw new IOException("The replica stopped while copying a snapshot; rebuild it from an empty tree");
+            }
+            while (running) {
+                long applied = tree.getSequence();
+                ReplicationLog.Batch batch = feed.next(applied);
+                if (batch.snapshot) {
+                    if (applied != 0) {
+                        throw new IOException("Snapshot offered to a non-empty replica");
+                    }
+                    bootstrap(batch);
+                    continue;
+                }
+                apply(batch);
+            }
+        } catch (InterruptedException e) {
+            // Closing
+        } catch (IOException e) {
+            if (running) {
+                failure = e;
+                System.err.println("Follower stopped: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Copies a snapshot chunk by chunk, then moves the replica to the snapshot's sequence
+     * number even if it held no key, so the follower tails from there.
+     */
+    private void bootstrap(ReplicationLog.Batch batch) throws IOException, InterruptedException {
+        Path marker = tree.bootstrapMarker();
+        Files.createDirectories(marker.getParent());
+        Files.write(marker, new byte[0]);
+        apply(batch);
+        while (batch.resumeKey != null) {
+            if (!running) {
+                throw new InterruptedException();
+            }
+            batch = feed.nextSnapshot(batch.throughSequence, batch.resumeKey);
+            apply(batch);
+        }
+        tree.advanceReplicated(batch.throughSequence);
+        Files.delete(marker);
+    }
+
+    private void apply(ReplicationLog.Batch batch) throws IOException {
+        for (String record : batch.records) {
+            tree.applyReplicated(record);
+        }
+        primarySequence = Math.max(primarySequence, batch.primarySequence);
+        if (batch.throughSequence >= batch.primarySequence) {
+            caughtUpAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * Returns the value of a key on the replica.
+     *
+     * @param key The key.
+     * @return The value, or null if the key is absent or deleted.
+     * @throws IOException If an I/O error occurs.
+     */
+    public String search(String key) throws IOException {
+        return tree.search(key);
+    }
+
+    /**
+     * Returns the values of several keys on the replica, read at one sequence number.
+     *
+     * @param keys The keys.
+     * @return The values of the keys found.
+     * @throws IOException If an I/O error occurs.
+     */
+    public Map<String, String> multiGet(Collection<String> keys) throws IOException {
+        return tree.multiGet(keys);
+    }
+
+    /**
+     * Returns at most {@code limit} live keys of a range on the replica.
+     *
+     * @param startKey The first key (inclusive), or null to start at the smallest key.
+     * @param endKey   The end key (exclusive), or null for no upper bound.
+     * @param limit    The maximum number of keys.
+     * @return The keys and values.
+     * @throws IOException If an I/O error occurs.
+     */
+    public SortedMap<String, String> scan(String startKey, String endKey, int limit) throws IOException {
+        return tree.scan(startKey, endKey, limit);
+    }
+
+    /**
+     * @return The replica tree, for reads.
+     */
+    public LSMTree getTree() {
+        return tree;
+    }
+
+    /**
+     * @return The last sequence number applied.
+     */
+    public long getAppliedSequence() {
+        return tree.getSequence();
+    }
+
+    /**
+     * @return How many sequence numbers the replica is behind the primary, as of the last batch.
+     */
+    public long getLagSequences() {
+        return Math.max(0, primarySequence - tree.getSequence());
+    }
+
+    /**
+     * @return Milliseconds since the replica last had every write the primary had, 0 if it
+     * has them now.
+     */
+    public long getLagMillis() {
+        if (getLagSequences() == 0) {
+            return 0;
+        }
+        return (System.nanoTime() - caughtUpAt) / 1_000_000;
+    }
+
+    /**
+     * @return The error that stopped the follower, or null if it is running.
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Stops following. The replica tree is left open.
+     *
+     * @throws IOException If the connection cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        applier.interrupt();
+        feed.close();
+        try {
+            applier.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Source of batches, asked for the records after the last applied sequence number, or for
+     * the next chunk of a snapshot.
+     */
+    private interface Feed extends Closeable {
+        ReplicationLog.Batch next(long afterSequence) throws IOException, InterruptedException;
+
+        ReplicationLog.Batch nextSnapshot(long sequence, String afterKey) throws IOException;
+
+        @Override
+        default void close() throws IOException {
+        }
+    }
+
+    private static final class RemoteFeed implements Feed {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        RemoteFeed(InetSocketAddress primary) throws IOException {
+            socket = new Socket();
+            socket.setTcpNoDelay(true);
+            socket.connect(primary);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        @Override
+        public ReplicationLog.Batch next(long afterSequence) throws IOException {
+            out.writeLong(afterSequence);
+            out.writeBoolean(false);
+            out.flush();
+            return ReplicationServer.readBatch(in);
+        }
+
+        @Override
+        public ReplicationLog.Batch nextSnapshot(long sequence, String afterKey) throws IOException {
+            out.writeLong(sequence);
+            out.writeBoolean(true);
+            ReplicationServer.writeString(out, afterKey);
+            out.flush();
+            return ReplicationServer.readBatch(in);
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
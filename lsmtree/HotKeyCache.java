@@ -0,0 +1,387 @@
+// Cache of hot keys in front of the LSM Tree, with frequency-based admission
+
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded cache of the values of frequently read keys, so {@link LSMTree#search(String)} can
+ * skip the MemTables and SSTable blocks for a hot read set. Populated on reads and kept
+ * coherent by the tree's writes, which mark the cached value of the key written stale before
+ * the write becomes visible. A stale entry keeps its place, and the next read of the key
+ * refills it, so frequently written hot keys are not left to compete for admission again.
+ * Changes no write announces, a compaction filter rewriting or dropping values, clear the
+ * cache and start a new generation; a read that began in an older one is not cached.
+ * <p>
+ * Admission is TinyLFU: a count-min sketch estimates how often every key was read recently
+ * (4-bit counters, halved after ten reads per entry the cache can hold, so old popularity
+ * fades), and a missed key only displaces the least recently used entry if it was read more
+ * often. A scan or a burst of one-off reads therefore cannot flush the hot set, as it would
+ * a plain LRU.
+ * <p>
+ * Keys are spread by hash over up to 16 segments, each an LRU with its own share of the
+ * capacity, lock and sketch, so concurrent readers rarely meet on a lock. The sketch is
+ * updated outside the lock with compare-and-set; a counter that has saturated is not written
+ * at all, so the hottest keys cost readers no shared writes.
+ * <p>
+ * A cache belongs to one tree: coherence relies on that tree's sequence numbers.
+ */
+public class HotKeyCache {
+
+    // Estimated per-entry overhead: map node, entry object, string headers
+    private static final int ENTRY_OVERHEAD = 96;
+    private static final int STRIPES = 1024;
+    private static final int MAX_SEGMENTS = 16;
+    // Below this many entries per segment, LRU order and admission lose their meaning
+    private static final int MIN_SEGMENT_ENTRIES = 64;
+
+    private final boolean frequencyAdmission;
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    // Sequence number of the last write to any key of each hash stripe, guarded by the stripe's segment
+    private final long[] writeSequences = new long[STRIPES];
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * @param capacity Maximum total size of cached keys and values, in bytes.
+     */
+    public HotKeyCache(long capacity) {
+        this(capacity, true);
+    }
+
+    /**
+     * @param capacity           Maximum total size of cached keys and values, in bytes.
+     * @param frequencyAdmission Whether to admit by frequency (TinyLFU) rather than always (LRU).
+     */
+    public HotKeyCache(long capacity, boolean frequencyAdmission) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.frequencyAdmission = frequencyAdmission;
+        long fit = capacity / ((long) MIN_SEGMENT_ENTRIES * ENTRY_OVERHEAD);
+        int count = fit < 1 ? 1 : (int) Long.highestOneBit(Math.min(fit, MAX_SEGMENTS));
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(capacity / count);
+        }
+    }
+
+    /**
+     * Returns the cached value of a key, counting the read towards its frequency.
+     *
+     * @param key The key.
+     * @return The value, or null if not cached.
+     */
+    String get(String key) {
+        int stripe = stripe(key);
+        Segment segment = segments[stripe & (segments.length - 1)];
+        segment.sketch.increment(key);
+        String value = segment.get(key);
+        (value == null ? misses : hits).increment();
+        return value;
+    }
+
+    /**
+     * Returns the current generation, to be read before the version a value is read from.
+     *
+     * @return The generation.
+     */
+    long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Offers the value a read found. Dropped if the key was written after the read's
+     * sequence number or the cache was cleared since the read began (the value may be
+     * stale), or if the admission policy rejects it.
+     *
+     * @param key            The key.
+     * @param value          The value read.
+     * @param expiresAt      The expiry time of the value, or {@link StoredValue#NEVER}.
+     * @param readSequence   The sequence number the value was read at.
+     * @param readGeneration The generation when the read began.
+     */
+    void admit(String key, String value, long expiresAt, long readSequence, long readGeneration) {
+        int stripe = stripe(key);
+        segments[stripe & (segments.length - 1)].admit(stripe, key, value, expiresAt, readSequence, readGeneration);
+    }
+
+    /**
+     * Marks the cached value of a key being written stale, and keeps reads that started
+     * before the write from caching what they found. Called before the write is visible.
+     *
+     * @param key      The key.
+     * @param sequence The sequence number of the write.
+     */
+    void invalidate(String key, long sequence) {
+        int stripe = stripe(key);
+        segments[stripe & (segments.length - 1)].invalidate(stripe, key, sequence);
+    }
+
+    /**
+     * Drops every cached value and starts a new generation, for changes to the tree no write
+     * announces. Called after the changed tree is visible to new reads.
+     */
+    void clear() {
+        generation.incrementAndGet();
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    private static long size(String key, String value) {
+        return 2L * (key.length() + value.length()) + ENTRY_OVERHEAD;
+    }
+
+    private static int stripe(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    /**
+     * @return The number of reads served from the cache.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return The number of reads that went to the tree.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return The number of values cached after a miss.
+     */
+    public long getAdmitted() {
+        return admitted.sum();
+    }
+
+    /**
+     * @return The number of values read but not cached, being read less often than the
+     * entry they would have displaced.
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return The estimated size of the cached entries, in bytes.
+     */
+    public long getSize() {
+        long used = 0;
+        for (Segment segment : segments) {
+            used += segment.getUsed();
+        }
+        return used;
+    }
+
+    /**
+     * One LRU share of the cache, owning the write sequences of its stripes.
+     */
+    private final class Segment {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final long capacity;
+        private long used;
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private final FrequencySketch sketch;
+
+        Segment(long capacity) {
+            this.capacity = capacity;
+            this.sketch = new FrequencySketch((int) Math.min(1 << 26, capacity / ENTRY_OVERHEAD));
+        }
+
+        String get(String key) {
+            lock.lock();
+            try {
+                Entry entry = entries.get(key);
+                if (entry != null && entry.expiresAt != StoredValue.NEVER
+                        && entry.expiresAt <= System.currentTimeMillis()) {
+                    remove(key);
+                    return null;
+                }
+                return entry == null ? null : entry.value;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void admit(int stripe, String key, String value, long expiresAt, long readSequence, long readGeneration) {
+            lock.lock();
+            try {
+                if (writeSequences[stripe] > readSequence || generation.get() != readGeneration) {
+                    return;
+                }
+                long size = size(key, value);
+                Entry stale = entries.get(key);
+                if (stale != null) {
+                    if (stale.value == null) { // Admitted before, refilled after a write
+                        entries.put(key, new Entry(value, expiresAt, size));
+                        used += size - stale.size;
+                        evict();
+                    }
+                    return;
+                }
+                if (size > capacity) {
+                    rejected.increment();
+                    return;
+                }
+                if (used + size > capacity && frequencyAdmission) {
+                    String victim = entries.keySet().iterator().next();
+                    if (sketch.frequency(key) <= sketch.frequency(victim)) {
+                        rejected.increment();
+                        return;
+                    }
+                }
+                entries.put(key, new Entry(value, expiresAt, size));
+                used += size;
+                admitted.increment();
+                evict();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void invalidate(int stripe, String key, long sequence) {
+            lock.lock();
+            try {
+                writeSequences[stripe] = Math.max(writeSequences[stripe], sequence);
+                Entry entry = entries.get(key);
+                if (entry != null && entry.value != null) {
+                    entries.put(key, new Entry(null, StoredValue.NEVER, entry.size));
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void clear() {
+            lock.lock();
+            try {
+                entries.clear();
+                used = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        long getUsed() {
+            lock.lock();
+            try {
+                return used;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void remove(String key) {
+            Entry entry = entries.remove(key);
+            if (entry != null) {
+                used -= entry.size;
+            }
+        }
+
+        private void evict() {
+            Iterator<Entry> it = entries.values().iterator();
+            while (used > capacity && it.hasNext()) {
+                used -= it.next().size;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * A cached value.
+     */
+    private static final class Entry {
+        final String value; // Null while stale
+        final long expiresAt;
+        final long size;
+
+        Entry(String value, long expiresAt, long size) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Count-min sketch with one long of sixteen 4-bit counters per expected entry; a key maps
+     * to four counters in different longs. Aged by halving every counter. Safe for concurrent
+     * use without a lock: counters are bumped by compare-and-set, and an increment racing with
+     * the halving may be lost, which only blurs an estimate.
+     */
+    private static final class FrequencySketch {
+        private static final long[] SEEDS = {0x97CB3127L, 0xB5A1D2C3L, 0x3C6EF372L, 0xA54FF53AL};
+
+        private final AtomicLongArray table;
+        private final int sampleSize;
+        private final AtomicInteger additions = new AtomicInteger();
+
+        FrequencySketch(int entries) {
+            table = new AtomicLongArray(Integer.highestOneBit(Math.max(8, entries - 1) << 1));
+            sampleSize = 10 * table.length();
+        }
+
+        void increment(String key) {
+            int hash = key.hashCode();
+            boolean added = false;
+            for (long seed : SEEDS) {
+                long h = spread(hash, seed);
+                added |= incrementAt((int) h & (table.length() - 1), ((int) (h >>> 40) & 15) << 2);
+            }
+            if (added && additions.incrementAndGet() == sampleSize) { // One thread per crossing
+                reset();
+            }
+        }
+
+        // Saturates at 15 without writing, so the hottest keys leave the table untouched
+        private boolean incrementAt(int slot, int shift) {
+            long word;
+            do {
+                word = table.get(slot);
+                if (((word >>> shift) & 0xF) == 0xF) {
+                    return false;
+                }
+            } while (!table.compareAndSet(slot, word, word + (1L << shift)));
+            return true;
+        }
+
+        int frequency(String key) {
+            int hash = key.hashCode();
+            int frequency = 0xF;
+            for (long seed : SEEDS) {
+                long h = spread(hash, seed);
+                long word = table.get((int) h & (table.length() - 1));
+                frequency = Math.min(frequency, (int) ((word >>> (((int) (h >>> 40) & 15) << 2)) & 0xF));
+            }
+            return frequency;
+        }
+
+        private static long spread(int hash, long seed) {
+            long h = (hash + seed) * 0x9E3779B97F4A7C15L;
+            return h ^ (h >>> 29);
+        }
+
+        // Halves every counter, so the sketch follows changes in popularity
+        private void reset() {
+            for (int i = 0; i < table.length(); i++) {
+                long word;
+                do {
+                    word = table.get(i);
+                } while (!table.compareAndSet(i, word, (word >>> 1) & 0x7777777777777777L));
+            }
+            additions.addAndGet(-sampleSize / 2);
+        }
+    }
+}
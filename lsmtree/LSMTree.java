@@ -2,21 +2,127 @@
 
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 
 /**
- * Represents the LSM Tree
+ * Represents the LSM Tree.
+ *
+ * Writers serialize on the write lock (WAL append + MemTable insert). Readers never take it:
+ * they pin the current immutable {@link Version} and search it, so reads proceed while a
+ * flush or compaction is running.
+ *
+ * A full MemTable is frozen and flushed on a background thread while writers go on into a
+ * new one; the WAL is rotated at the freeze, so each frozen MemTable's records sit in a
+ * segment of their own until its SSTable is published. Writers stall only while
+ * {@link #MAX_IMMUTABLE_MEMTABLES} MemTables are waiting. A failed flush keeps its MemTable
+ * and WAL segment, and writes are refused from then on.
+ *
+ * Every write gets a monotonic sequence number. Readers see the writes up to the last
+ * published sequence, or up to the sequence of a {@link Snapshot} for repeatable reads.
+ *
+ * No monitor is held across I/O, so the blocking methods can be called from virtual threads
+ * without pinning their carrier; the *Async methods run them on a virtual thread executor.
  */
 public class LSMTree {
-    private final MemTable memTable;
+    // Present while a replica is bootstrapped from a primary's snapshot, see Follower
+    private static final String BOOTSTRAP_MARKER = "BOOTSTRAP";
+
+    private volatile Version current;
     private final WriteAheadLog wal;
-    private final List<SSTable> sstables;
     private final String sstableDirectory;
     private final int memTableSize;
+    // Settings for new tables; 8 MB block cache by default
+    private volatile SSTableOptions tableOptions = new SSTableOptions().setBlockCache(new BlockCache(8 << 20));
+
+    private long lastSequence;               // Last sequence assigned, guarded by the write lock
+    private volatile long visibleSequence;   // Last sequence readers may see
+    private final Set<Snapshot> snapshots = ConcurrentHashMap.newKeySet(); // Live snapshots
+
+    // WAL append + MemTable insert, and handing a full MemTable to the flush thread
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Publishing a new version (flush, compaction)
+    private final ReentrantLock versionLock = new ReentrantLock();
+    // Only one compaction at a time, independent of writers
+    private final ReentrantLock compactionLock = new ReentrantLock();
+    // Opening a snapshot (reading its sequence and registering it) vs. compaction collecting the live ones
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+
+    // Notified of every write, in sequence order (replication)
+    private final List<WriteListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Counters, timers and gauges, also published over JMX
+    private final Metrics metrics = new Metrics();
+    private final Metrics.Timer writeTimer = metrics.timer("lsm.write");
+    private final Metrics.Timer flushTimer = metrics.timer("lsm.flush");
+    private final Metrics.Timer compactionTimer = metrics.timer("lsm.compaction");
+    private final Metrics.Counter lookups = metrics.counter("lsm.lookups");
+    private final Metrics.Counter tablesProbed = metrics.counter("lsm.lookup.sstables_probed");
+    private final Metrics.Counter flushBytes = metrics.counter("lsm.flush.bytes");
+    private final Metrics.Counter compactionBytesRead = metrics.counter("lsm.compaction.bytes_read");
+    private final Metrics.Counter compactionBytesWritten = metrics.counter("lsm.compaction.bytes_written");
+    private final Metrics.Counter compactionEntriesDropped = metrics.counter("lsm.compaction.entries_dropped");
+    // File reads of tables compacted away, so the totals survive compaction
+    private final Metrics.Counter retiredDiskReads = metrics.counter("lsm.sstable.retired_disk_reads");
+    private final Metrics.Counter retiredBytesRead = metrics.counter("lsm.sstable.retired_bytes_read");
+
+    // Trace one operation in this many as JFR events, 0 for none
+    private volatile int traceSampling = Integer.getInteger("oltp.trace.sample", 0);
+    private volatile CompactionFilter compactionFilter;
+    private volatile MergeOperator mergeOperator;
+    private volatile HotKeyCache hotKeyCache;
+
+    // Large values moved out of the SSTables, see SSTableOptions.setValueSeparationThreshold
+    private final ValueLog valueLog;
+    private ScheduledExecutorService valueLogCollector; // Created by setValueLogGcPeriod, guarded by this
+
+    // At most this many full MemTables wait for the flush thread before writers stall
+    private static final int MAX_IMMUTABLE_MEMTABLES = 2;
+    // Flushes full MemTables one at a time, in the order they filled
+    private final ExecutorService flushExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "lsm-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ArrayDeque<Future<Void>> pendingFlushes = new ArrayDeque<>(); // Guarded by the write lock
+    private List<Path> memTableLogs = new ArrayList<>(); // WAL segments replayed into the active MemTable, guarded by the write lock
+    private volatile IOException flushFailure; // Set by the first flush that fails; writes are refused after it
+
+    // Runs the *Async methods, created on first use
+    private volatile Executor asyncExecutor;
+    private ExecutorService ownedExecutor;
 
     /**
      * Initializes the LSM Tree.
@@ -27,12 +133,188 @@ public class LSMTree {
      * @throws IOException If an I/O error occurs.
      */
     public LSMTree(int memTableSize, String walFilePath, String sstableDirectory) throws IOException {
-        this.memTable = new MemTable();
-        this.wal = new WriteAheadLog(walFilePath);
-        this.sstables = new ArrayList<>();
+        this.wal = new WriteAheadLog(walFilePath, metrics);
         this.sstableDirectory = sstableDirectory;
         this.memTableSize = memTableSize;
-        recover(); // Recover from WAL
+        this.valueLog = new ValueLog(Paths.get(sstableDirectory), metrics);
+
+        // Startup work is spread over this many threads; 1 opens and replays sequentially
+        int threads = Integer.getInteger("oltp.recovery.threads", Runtime.getRuntime().availableProcessors());
+        ExecutorService startup = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        try {
+            List<SSTable> sstables = loadSSTables(startup);
+            for (SSTable sstable : sstables) {
+                lastSequence = Math.max(lastSequence, sstable.getMaxSequence());
+            }
+            this.current = new Version(new MemTable(), Collections.emptyList(), sstables);
+            recover(startup, threads); // Recover from WAL
+        } finally {
+            if (startup != null) {
+                startup.shutdown();
+            }
+        }
+        registerGauges();
+        metrics.registerMBean("LSMTree", sstableDirectory);
+    }
+
+    private void registerGauges() {
+        metrics.gauge("lsm.sequence", () -> visibleSequence);
+        metrics.gauge("lsm.memtable.entries", () -> current.memTable.getEntryCount());
+        metrics.gauge("lsm.memtable.bytes", () -> {
+            Version version = current;
+            long bytes = version.memTable.getApproximateBytes();
+            for (MemTable immutable : version.immutableMemTables) {
+                bytes += immutable.getApproximateBytes();
+            }
+            return bytes;
+        });
+        metrics.gauge("lsm.memtable.immutable", () -> current.immutableMemTables.size());
+        // All tables form one level: flushes append, compaction merges them all
+        metrics.gauge("lsm.sstables", () -> current.sstables.size());
+        metrics.gauge("lsm.sstables.bytes", () -> sumTables(SSTable::getDiskSize));
+        metrics.gauge("lsm.sstables.entries", () -> sumTables(SSTable::getSize));
+        metrics.gauge("lsm.sstable.disk_reads", () -> retiredDiskReads.get() + sumTables(SSTable::getDiskReads));
+        metrics.gauge("lsm.sstable.bytes_read", () -> retiredBytesRead.get() + sumTables(SSTable::getBytesRead));
+        metrics.gauge("lsm.vlog.files", valueLog::getFileCount);
+        metrics.gauge("lsm.vlog.bytes", valueLog::getDiskSize);
+        metrics.gauge("lsm.hot_cache.hits", () -> {
+            HotKeyCache cache = hotKeyCache;
+            return cache == null ? 0 : cache.getHits();
+        });
+        metrics.gauge("lsm.hot_cache.misses", () -> {
+            HotKeyCache cache = hotKeyCache;
+            return cache == null ? 0 : cache.getMisses();
+        });
+        metrics.gauge("lsm.hot_cache.rejected", () -> {
+            HotKeyCache cache = hotKeyCache;
+            return cache == null ? 0 : cache.getRejected();
+        });
+        metrics.gauge("lsm.hot_cache.bytes", () -> {
+            HotKeyCache cache = hotKeyCache;
+            return cache == null ? 0 : cache.getSize();
+        });
+        metrics.gauge("lsm.block_cache.hits", () -> {
+            BlockCache cache = tableOptions.getBlockCache();
+            return cache == null ? 0 : cache.getHits();
+        });
+        metrics.gauge("lsm.block_cache.misses", () -> {
+            BlockCache cache = tableOptions.getBlockCache();
+            return cache == null ? 0 : cache.getMisses();
+        });
+    }
+
+    private long sumTables(ToLongFunction<SSTable> value) {
+        long sum = 0;
+        for (SSTable sstable : current.sstables) {
+            sum += value.applyAsLong(sstable);
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the registry of the tree's metrics: WAL traffic, MemTable size, flush and
+     * compaction durations, SSTable counts, lookups and SSTables probed, block cache hits.
+     *
+     * @return The metrics, also published as the MBean {@code oltp:type=LSMTree,name="<sstable directory>"}.
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns a dump of every metric, one per line, followed by the derived read amplification.
+     *
+     * @return The stats.
+     */
+    public String getStats() {
+        long lookupCount = lookups.get();
+        return metrics.format() + String.format("%-36s %.2f%n", "lsm.lookup.read_amplification",
+                lookupCount == 0 ? 0.0 : (double) tablesProbed.get() / lookupCount);
+    }
+
+    /**
+     * Returns the settings used for new SSTables.
+     *
+     * @return The options.
+     */
+    public SSTableOptions getTableOptions() {
+        return tableOptions;
+    }
+
+    /**
+     * Sets the block size, compression codec and block cache of SSTables written from now on.
+     * Existing tables keep their format and the cache they were opened with.
+     *
+     * @param tableOptions The options.
+     */
+    public void setTableOptions(SSTableOptions tableOptions) {
+        this.tableOptions = tableOptions;
+    }
+
+    /**
+     * @return The cache of hot keys in front of the tree, or null.
+     */
+    public HotKeyCache getHotKeyCache() {
+        return hotKeyCache;
+    }
+
+    /**
+     * Puts a cache of hot keys in front of the tree (hybrid mode): {@link #search(String)}
+     * serves frequently read keys from memory and caches what it reads, subject to the cache's
+     * admission policy; writes drop the cached value of their key, and compactions that ran a
+     * compaction filter clear the cache. Snapshot reads, multiGet and scans read the tree
+     * directly, so they do not pollute the cache.
+     *
+     * @param hotKeyCache The cache, used by this tree only, or null to read the tree directly.
+     */
+    public void setHotKeyCache(HotKeyCache hotKeyCache) {
+        writeLock.lock(); // Writers see the new cache before readers can use it
+        try {
+            this.hotKeyCache = hotKeyCache;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return The filter applied by compaction, or null.
+     */
+    public CompactionFilter getCompactionFilter() {
+        return compactionFilter;
+    }
+
+    /**
+     * Sets the filter compaction applies to the entries it keeps, e.g. to garbage-collect
+     * entries an application considers stale without writing deletions. Expired TTL entries
+     * are dropped with or without a filter. Clears the hot key cache, whose values the new
+     * filter may judge differently.
+     *
+     * @param compactionFilter The filter, or null.
+     */
+    public void setCompactionFilter(CompactionFilter compactionFilter) {
+        this.compactionFilter = compactionFilter;
+        HotKeyCache cache = hotKeyCache;
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * @return The operator folding merge operands, or null.
+     */
+    public MergeOperator getMergeOperator() {
+        return mergeOperator;
+    }
+
+    /**
+     * Sets the operator that folds the operands written by {@link #merge(String, String)}.
+     * Operands are stored as written, so the operator must be set again after reopening the
+     * tree, before keys with operands are read or compacted.
+     *
+     * @param mergeOperator The operator.
+     */
+    public void setMergeOperator(MergeOperator mergeOperator) {
+        this.mergeOperator = mergeOperator;
     }
 
     /**
@@ -42,122 +324,1233 @@ public class LSMTree {
      * @param value The value associated with the key.
      * @throws IOException If an I/O error occurs.
      */
-    public synchronized void put(String key, String value) throws IOException {
-        wal.logPut(key, value);
-        memTable.put(key, value);
-        if (memTable.isFull(memTableSize)) {
-            flushMemTable();
+    public void put(String key, String value) throws IOException {
+        putStored(key, StoredValue.wrap(value, StoredValue.NEVER));
+    }
+
+    /**
+     * Inserts or updates a key-value pair that expires after a time to live. Once expired, the
+     * key reads as deleted (older versions do not resurface), and compaction drops the entry
+     * without any deletion being written.
+     *
+     * @param key       The key to insert/update.
+     * @param value     The value associated with the key.
+     * @param ttlMillis The time to live in milliseconds, measured on the wall clock.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void put(String key, String value, long ttlMillis) throws IOException {
+        putStored(key, StoredValue.expiring(value, ttlMillis));
+    }
+
+    private void putStored(String key, String value) throws IOException {
+        TraceEvents.WriteEvent event = beginWriteTrace();
+        long start = writeTimer.start();
+        lockForWrite(event);
+        try {
+            checkWritable();
+            long sequence = lastSequence + 1;
+            wal.logPut(sequence, key, value);
+            MemTable memTable = current.memTable;
+            memTable.put(sequence, key, value);
+            HotKeyCache cache = hotKeyCache;
+            if (cache != null) {
+                cache.invalidate(key, sequence);
+            }
+            if (!listeners.isEmpty()) {
+                notifyListeners(sequence, WriteAheadLog.putRecord(sequence, key, value));
+            }
+            publish(sequence);
+            if (memTable.isFull(memTableSize)) {
+                scheduleFlush();
+            }
+        } finally {
+            writeLock.unlock();
+            writeTimer.stop(start);
+            if (event != null) {
+                endWriteTrace(event, "put", key, 1);
+            }
         }
     }
 
+    /**
+     * Applies an operand to the value of a key with the merge operator, e.g. adds to a counter,
+     * without reading the key: the operand is written like a put and folded in when the key is
+     * read or compacted. Concurrent merges are never lost, unlike a read followed by a put.
+     *
+     * @param key     The key.
+     * @param operand The operand.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void merge(String key, String operand) throws IOException {
+        putStored(key, StoredValue.operand(operand));
+    }
+
     /**
      * Deletes a key from the LSM Tree.
      *
      * @param key The key to delete.
      * @throws IOException If an I/O error occurs.
      */
-    public synchronized void delete(String key) throws IOException {
-        wal.logDelete(key);
-        memTable.delete(key);
-        if (memTable.isFull(memTableSize)) {
-            flushMemTable();
+    public void delete(String key) throws IOException {
+        TraceEvents.WriteEvent event = beginWriteTrace();
+        long start = writeTimer.start();
+        lockForWrite(event);
+        try {
+            checkWritable();
+            long sequence = lastSequence + 1;
+            wal.logDelete(sequence, key);
+            MemTable memTable = current.memTable;
+            memTable.delete(sequence, key);
+            HotKeyCache cache = hotKeyCache;
+            if (cache != null) {
+                cache.invalidate(key, sequence);
+            }
+            if (!listeners.isEmpty()) {
+                notifyListeners(sequence, WriteAheadLog.deleteRecord(sequence, key));
+            }
+            publish(sequence);
+            if (memTable.isFull(memTableSize)) {
+                scheduleFlush();
+            }
+        } finally {
+            writeLock.unlock();
+            writeTimer.stop(start);
+            if (event != null) {
+                endWriteTrace(event, "delete", key, 1);
+            }
         }
     }
 
 
     /**
-     * Searches for a key in the LSM Tree.
+     * Applies a batch of writes atomically: one WAL record, one MemTable pass, and
+     * readers observe the whole batch at once.
+     *
+     * @param batch The writes to apply.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void write(WriteBatch batch) throws IOException {
+        if (batch.size() == 0) {
+            return;
+        }
+
+        TraceEvents.WriteEvent event = beginWriteTrace();
+        long start = writeTimer.start();
+        lockForWrite(event);
+        try {
+            checkWritable();
+            long baseSequence = lastSequence + 1;
+            String operations = batch.encode();
+            wal.logBatch(baseSequence, operations);
+            MemTable memTable = current.memTable;
+            batch.applyTo(memTable, baseSequence);
+            HotKeyCache cache = hotKeyCache;
+            if (cache != null) {
+                batch.applyTo((sequence, key, value) -> cache.invalidate(key, sequence), baseSequence);
+            }
+            if (!listeners.isEmpty()) {
+                notifyListeners(baseSequence + batch.size() - 1, "BATCH " + baseSequence + " " + operations);
+            }
+            publish(baseSequence + batch.size() - 1);
+            if (memTable.isFull(memTableSize)) {
+                scheduleFlush();
+            }
+        } finally {
+            writeLock.unlock();
+            writeTimer.stop(start);
+            if (event != null) {
+                endWriteTrace(event, "batch", null, batch.size());
+            }
+        }
+    }
+
+    /**
+     * Applies a WAL record shipped from a primary, keeping its sequence numbers. The record is
+     * logged to this tree's WAL first, so a follower recovers like a primary, and passed on
+     * to this tree's listeners, so followers can be chained.
+     *
+     * @param record A record as written by the primary: "PUT seq length:keyvalue", "DELETE seq key"
+     *               or "BATCH seq operations".
+     * @throws IOException If the record is malformed or an I/O error occurs.
+     */
+    public void applyReplicated(String record) throws IOException {
+        // Checked before logging: a malformed record in the WAL would fail this tree's recovery
+        if (WalReplay.apply(record, (seq, key, value) -> { }) < 0) {
+            throw new IOException("Invalid replicated record: " + record);
+        }
+        writeLock.lock();
+        try {
+            checkWritable();
+            wal.logRecord(record);
+            MemTable memTable = current.memTable;
+            HotKeyCache cache = hotKeyCache;
+            long sequence = WalReplay.apply(record, (seq, key, value) -> {
+                memTable.put(seq, key, value);
+                if (cache != null) {
+                    cache.invalidate(key, seq);
+                }
+            });
+            if (!listeners.isEmpty()) {
+                notifyListeners(sequence, record);
+            }
+            publish(Math.max(lastSequence, sequence));
+            if (memTable.isFull(memTableSize)) {
+                scheduleFlush();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Moves this tree's sequence number up to a primary's without a record, for a replica
+     * bootstrapped from a snapshot that held no key.
+     *
+     * @param sequence The primary's sequence number.
+     */
+    void advanceReplicated(long sequence) {
+        writeLock.lock();
+        try {
+            publish(Math.max(lastSequence, sequence));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return The file marking a replica bootstrap in progress, next to the SSTables.
+     */
+    Path bootstrapMarker() {
+        return Paths.get(sstableDirectory, BOOTSTRAP_MARKER);
+    }
+
+    /**
+     * Registers a listener notified of every write from now on, in sequence order, with the
+     * write lock held.
+     *
+     * @param listener The listener.
+     * @return The last sequence number written before the listener was added.
+     */
+    public long addWriteListener(WriteListener listener) {
+        writeLock.lock();
+        try {
+            listeners.add(listener);
+            return lastSequence;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Unregisters a write listener.
+     *
+     * @param listener The listener.
+     */
+    public void removeWriteListener(WriteListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void notifyListeners(long sequence, String record) {
+        for (WriteListener listener : listeners) {
+            listener.onWrite(sequence, record);
+        }
+    }
+
+    /**
+     * Receives the WAL record of every write.
+     */
+    public interface WriteListener {
+        /**
+         * Called after the write is in the WAL and before readers can see it. Must not block
+         * or call back into the tree.
+         *
+         * @param sequence The last sequence number of the write.
+         * @param record   The WAL record.
+         */
+        void onWrite(long sequence, String record);
+    }
+
+    /**
+     * Returns the sequence number of the last write visible to readers.
+     *
+     * @return The sequence number.
+     */
+    public long getSequence() {
+        return visibleSequence;
+    }
+
+    /**
+     * Makes writes up to a sequence number visible to readers. Called with the write lock held.
+     *
+     * @param sequence The last applied sequence number.
+     */
+    private void publish(long sequence) {
+        lastSequence = sequence;
+        visibleSequence = sequence;
+    }
+
+    /**
+     * Sets the executor running the *Async methods. By default each call runs on its own
+     * virtual thread, or on a small platform thread pool when the JDK has no virtual threads.
+     *
+     * @param executor The executor; the caller keeps ownership of it.
+     */
+    public void setAsyncExecutor(Executor executor) {
+        this.asyncExecutor = executor;
+    }
+
+    /**
+     * Searches for a key without blocking the caller.
+     *
+     * @param key The key to search for.
+     * @return A future completed with the value, or null if not found or deleted.
+     */
+    public CompletableFuture<String> searchAsync(String key) {
+        return async(() -> search(key));
+    }
+
+    /**
+     * Inserts or updates a key-value pair without blocking the caller. The future completes
+     * once the write is in the WAL and visible to readers.
+     *
+     * @param key   The key to insert/update.
+     * @param value The value associated with the key.
+     * @return A future completed when the write is applied.
+     */
+    public CompletableFuture<Void> putAsync(String key, String value) {
+        return async(() -> {
+            put(key, value);
+            return null;
+        });
+    }
+
+    /**
+     * Deletes a key without blocking the caller.
+     *
+     * @param key The key to delete.
+     * @return A future completed when the deletion is applied.
+     */
+    public CompletableFuture<Void> deleteAsync(String key) {
+        return async(() -> {
+            delete(key);
+            return null;
+        });
+    }
+
+    /**
+     * Applies a batch of writes atomically without blocking the caller.
+     *
+     * @param batch The writes to apply; must not be modified until the future completes.
+     * @return A future completed when the batch is applied.
+     */
+    public CompletableFuture<Void> writeAsync(WriteBatch batch) {
+        return async(() -> {
+            write(batch);
+            return null;
+        });
+    }
+
+    /**
+     * Runs a blocking operation on the async executor.
+     */
+    private <T> CompletableFuture<T> async(IOTask<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            asyncExecutor().execute(() -> {
+                try {
+                    future.complete(task.call());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private Executor asyncExecutor() {
+        Executor executor = asyncExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                if (asyncExecutor == null) {
+                    ownedExecutor = VirtualThreads.newExecutor(Math.max(4, Runtime.getRuntime().availableProcessors() * 4));
+                    asyncExecutor = ownedExecutor;
+                }
+                executor = asyncExecutor;
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * A blocking operation of the tree.
+     */
+    private interface IOTask<T> {
+        T call() throws IOException;
+    }
+
+    /**
+     * Opens a snapshot of the current state. Close it to let compaction reclaim old versions.
+     *
+     * @return The snapshot.
+     */
+    public Snapshot getSnapshot() {
+        snapshotLock.lock();
+        try {
+            Snapshot snapshot = new Snapshot(this, visibleSequence);
+            snapshots.add(snapshot);
+            return snapshot;
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    /**
+     * Releases a snapshot.
+     *
+     * @param snapshot The snapshot to release.
+     */
+    public void releaseSnapshot(Snapshot snapshot) {
+        snapshots.remove(snapshot);
+    }
+
+    /**
+     * Returns the sequence numbers of the live snapshots. A snapshot being opened is either
+     * among them or reads its sequence number afterwards, so it sees at least every write
+     * that exists now.
+     *
+     * @return The sequence numbers.
+     */
+    private long[] liveSnapshots() {
+        snapshotLock.lock();
+        try {
+            return snapshots.stream().mapToLong(Snapshot::getSequence).toArray();
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    /**
+     * Searches for a key in the LSM Tree, through the hot key cache if one is set. Does not
+     * take the write lock.
      *
      * @param key The key to search for.
      * @return The associated value, or null if not found or deleted.
      * @throws IOException If an I/O error occurs.
      */
-    public synchronized String search(String key) throws IOException {
-        TreeMap<String, String> memData = memTable.getTable();
-        if(memData.containsKey(key)) {
-            return memData.get(key);
+    public String search(String key) throws IOException {
+        HotKeyCache cache = hotKeyCache;
+        if (cache == null) {
+            return search(key, visibleSequence);
+        }
+        String cached = cache.get(key);
+        if (cached != null) {
+            return cached;
         }
+        long generation = cache.generation();
+        long sequence = visibleSequence;
+        LookupResult result = read(key, sequence);
+        if (result.getStatus() == LookupResult.Status.FOUND) {
+            cache.admit(key, result.getValue(), result.getExpiresAt(), sequence, generation);
+        }
+        return result.getValue();
+    }
+
+    /**
+     * Searches for a key as of a snapshot.
+     *
+     * @param key      The key to search for.
+     * @param snapshot The snapshot to read from.
+     * @return The associated value at the snapshot, or null if not found or deleted.
+     * @throws IOException If an I/O error occurs.
+     */
+    public String search(String key, Snapshot snapshot) throws IOException {
+        return search(key, snapshot.getSequence());
+    }
 
-        // Search in SSTables in reverse order (newest first)
-        for (int i = sstables.size() - 1; i >= 0; i--) {
-            SSTable sstable = sstables.get(i);
-            String value = sstable.search(key);
-            if (value != null) {
-                return value;
+    private String search(String key, long sequence) throws IOException {
+        return read(key, sequence).getValue();
+    }
+
+    /**
+     * Looks up a key at a sequence number, with the value read from the value log if it was
+     * moved there.
+     */
+    private LookupResult read(String key, long sequence) throws IOException {
+        TraceEvents.LookupEvent event = beginLookupTrace();
+        Version version = acquireVersion();
+        try {
+            int[] probed = new int[2];
+            LookupResult result = lookup(version, key, sequence, probed);
+            lookups.increment();
+            tablesProbed.add(probed[1]);
+            if (event != null) {
+                OperationTrace.current().probed(probed[0], probed[1]);
+                event.found = result.getStatus() == LookupResult.Status.FOUND;
+            }
+
+            if (result.getLocation() != null) {
+                return LookupResult.found(valueLog.read(result.getLocation()), result.getExpiresAt());
+            }
+            return result;
+        } finally {
+            version.unref();
+            if (event != null) {
+                endLookupTrace(event, key);
             }
         }
+    }
 
-        // Key not found
-        return null;
+    /**
+     * Looks up a key in a pinned version, folding merge operands into the value below them.
+     *
+     * @param version  The pinned version.
+     * @param key      The key.
+     * @param sequence The snapshot sequence number.
+     * @param probed   Counts the MemTables ([0]) and SSTables ([1]) probed.
+     * @return FOUND, DELETED or ABSENT.
+     */
+    private LookupResult lookup(Version version, String key, long sequence, int[] probed) throws IOException {
+        List<String> operands = new ArrayList<>();
+        LookupResult result = lookupBelowOperands(version, key, sequence, operands, probed);
+        if (operands.isEmpty()) {
+            return result;
+        }
+        MergeOperator merge = mergeOperator;
+        if (merge == null) {
+            throw new IllegalStateException("No merge operator to fold the operands of " + key);
+        }
+        boolean found = result.getStatus() == LookupResult.Status.FOUND;
+        Collections.reverse(operands);
+        return LookupResult.found(merge.mergeAll(key, found ? valueOf(result) : null, operands),
+                found ? result.getExpiresAt() : StoredValue.NEVER);
     }
 
+    /**
+     * Finds the newest visible value or deletion of a key, newest component first: the first
+     * component holding one decides, a deletion shadows older tables. Merge operands above it
+     * are collected, newest first.
+     */
+    private LookupResult lookupBelowOperands(Version version, String key, long sequence, List<String> operands,
+                                             int[] probed) throws IOException {
+        int memTables = version.immutableMemTables.size() + 1;
+        int components = memTables + version.sstables.size();
+        long visible = sequence;
+        int c = 0;
+        while (c < components) {
+            LookupResult result;
+            if (c < memTables) {
+                MemTable memTable = c == 0 ? version.memTable : version.immutableMemTables.get(memTables - 1 - c);
+                result = memTable.lookup(key, visible);
+                probed[0]++;
+            } else {
+                result = version.sstables.get(components - 1 - c).lookup(key, visible);
+                probed[1]++;
+            }
+            if (result.getStatus() == LookupResult.Status.MERGE) {
+                operands.add(result.getValue());
+                visible = result.getSequence() - 1; // Older versions may be in the same component
+            } else if (result.isResolved()) {
+                return result;
+            } else {
+                c++;
+            }
+        }
+        return LookupResult.ABSENT;
+    }
 
     /**
-     * Flushes the MemTable to disk as an SSTable.
+     * Returns the value of a lookup, reading it from the value log if it was moved there.
+     * Called with the version pinned, which keeps the value file.
+     */
+    private String valueOf(LookupResult result) throws IOException {
+        return result.getLocation() != null ? valueLog.read(result.getLocation()) : result.getValue();
+    }
+
+    /**
+     * Traces one operation in {@code oneIn} as JFR events ({@link TraceEvents}), recording
+     * tables probed, file reads, cache accesses and lock, WAL and flush waits. Events are only
+     * built while a JFR recording enables them, so sampling can stay on in production.
+     * Defaults to the {@code oltp.trace.sample} system property, or 0.
      *
+     * @param oneIn 0 to trace nothing, 1 to trace every operation, N to trace one in N.
+     */
+    public void setTraceSampling(int oneIn) {
+        if (oneIn < 0) {
+            throw new IllegalArgumentException("Sampling must be 0 or positive: " + oneIn);
+        }
+        this.traceSampling = oneIn;
+    }
+
+    /**
+     * @return How many operations share one trace, 0 if tracing is off.
+     */
+    public int getTraceSampling() {
+        return traceSampling;
+    }
+
+    private boolean sampled() {
+        int oneIn = traceSampling;
+        return oneIn == 1 || (oneIn > 1 && ThreadLocalRandom.current().nextInt(oneIn) == 0);
+    }
+
+    private TraceEvents.LookupEvent beginLookupTrace() {
+        if (!sampled()) {
+            return null;
+        }
+        TraceEvents.LookupEvent event = new TraceEvents.LookupEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        OperationTrace.begin();
+        event.begin();
+        return event;
+    }
+
+    private void endLookupTrace(TraceEvents.LookupEvent event, String key) {
+        OperationTrace trace = OperationTrace.end();
+        event.end();
+        if (event.shouldCommit()) {
+            event.key = key;
+            event.memTablesProbed = trace.getMemTablesProbed();
+            event.sstablesProbed = trace.getSstablesProbed();
+            event.diskReads = trace.getDiskReads();
+            event.bytesRead = trace.getBytesRead();
+            event.cacheHits = trace.getCacheHits();
+            event.cacheMisses = trace.getCacheMisses();
+            event.cacheWait = trace.getCacheWaitNanos();
+            event.commit();
+        }
+    }
+
+    private TraceEvents.WriteEvent beginWriteTrace() {
+        if (!sampled()) {
+            return null;
+        }
+        TraceEvents.WriteEvent event = new TraceEvents.WriteEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        OperationTrace.begin();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Takes the write lock, timing the wait when the operation is traced.
+     */
+    private void lockForWrite(TraceEvents.WriteEvent event) {
+        if (event == null) {
+            writeLock.lock();
+            return;
+        }
+        long start = System.nanoTime();
+        writeLock.lock();
+        OperationTrace.current().addLockWait(System.nanoTime() - start);
+    }
+
+    private void endWriteTrace(TraceEvents.WriteEvent event, String operation, String key, int operations) {
+        OperationTrace trace = OperationTrace.end();
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.key = key;
+            event.operations = operations;
+            event.lockWait = trace.getLockWaitNanos();
+            event.walAppend = trace.getWalNanos();
+            event.flushStall = trace.getFlushNanos();
+            event.commit();
+        }
+    }
+
+    /**
+     * Returns the live keys of a range with their values, in key order.
+     *
+     * @param startKey The first key (inclusive), or null to start at the smallest key.
+     * @param endKey   The end key (exclusive), or null for no upper bound.
+     * @return The keys and values.
+     * @throws IOException If an I/O error occurs.
+     */
+    public SortedMap<String, String> scan(String startKey, String endKey) throws IOException {
+        return scan(startKey, endKey, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns at most {@code limit} live keys of a range, starting at the smallest. Every
+     * MemTable and SSTable of the current version is positioned at the start key and merged,
+     * so the cost grows with the keys read, not the size of the tree.
+     *
+     * @param startKey The first key (inclusive), or null to start at the smallest key.
+     * @param endKey   The end key (exclusive), or null for no upper bound.
+     * @param limit    The maximum number of keys.
+     * @return The keys and values.
+     * @throws IOException If an I/O error occurs.
+     */
+    public SortedMap<String, String> scan(String startKey, String endKey, int limit) throws IOException {
+        return scan(startKey, endKey, limit, visibleSequence);
+    }
+
+    /**
+     * Returns at most {@code limit} live keys of a range as of a snapshot.
+     *
+     * @param startKey The first key (inclusive), or null to start at the smallest key.
+     * @param endKey   The end key (exclusive), or null for no upper bound.
+     * @param limit    The maximum number of keys.
+     * @param snapshot The snapshot to read.
+     * @return The keys and values.
+     * @throws IOException If an I/O error occurs.
+     */
+    public SortedMap<String, String> scan(String startKey, String endKey, int limit, Snapshot snapshot) throws IOException {
+        return scan(startKey, endKey, limit, snapshot.getSequence());
+    }
+
+    /**
+     * Returns live keys of a snapshot with their values as stored, TTL included, so they
+     * can be written to another tree unchanged.
+     *
+     * @param snapshot The snapshot to read.
+     * @param startKey The first key (inclusive), or null to start at the smallest key.
+     * @param limit    The maximum number of keys.
+     * @return The keys and stored values.
+     * @throws IOException If an I/O error occurs.
+     */
+    SortedMap<String, String> scanStored(Snapshot snapshot, String startKey, int limit) throws IOException {
+        Version version = acquireVersion();
+        try {
+            return RangeScan.scan(version, startKey, null, limit, snapshot.getSequence(), true, valueLog,
+                    mergeOperator);
+        } finally {
+            version.unref();
+        }
+    }
+
+    private SortedMap<String, String> scan(String startKey, String endKey, int limit, long sequence) throws IOException {
+        Version version = acquireVersion();
+        try {
+            return RangeScan.scan(version, startKey, endKey, limit, sequence, false, valueLog, mergeOperator);
+        } finally {
+            version.unref();
+        }
+    }
+
+    /**
+     * Looks up many keys at once against a single version: the MemTables are probed once per
+     * key without copying, then each SSTable (newest first) reads every block that holds a
+     * remaining key exactly once.
+     *
+     * @param keys The keys to look up.
+     * @return The values of the keys found; missing or deleted keys are absent.
      * @throws IOException If an I/O error occurs.
      */
-    private void flushMemTable() throws IOException {
-        SSTable sstable = memTable.flush(sstableDirectory);
-        sstables.add(sstable);
-        wal.clear(); // Clear the WAL
+    public Map<String, String> multiGet(Collection<String> keys) throws IOException {
+        return multiGet(keys, null);
+    }
+
+    /**
+     * Looks up many keys at once, issuing the block reads of each SSTable on an executor.
+     *
+     * @param keys     The keys to look up.
+     * @param executor Runs block reads in parallel, or null to read them in the caller.
+     * @return The values of the keys found; missing or deleted keys are absent.
+     * @throws IOException If an I/O error occurs.
+     */
+    public Map<String, String> multiGet(Collection<String> keys, Executor executor) throws IOException {
+        long sequence = visibleSequence;
+        Map<String, String> results = new TreeMap<>();
+        TreeSet<String> remaining = new TreeSet<>(keys);
+        List<String> merging = new ArrayList<>(); // Keys with merge operands, looked up one by one
+
+        Version version = acquireVersion();
+        try {
+            List<MemTable> memTables = new ArrayList<>(version.immutableMemTables);
+            memTables.add(version.memTable);
+            for (int i = memTables.size() - 1; i >= 0 && !remaining.isEmpty(); i--) {
+                MemTable memTable = memTables.get(i);
+                remaining.removeIf(key -> {
+                    LookupResult result = memTable.lookup(key, sequence);
+                    if (result.getStatus() == LookupResult.Status.FOUND) {
+                        results.put(key, result.getValue());
+                    } else if (result.getStatus() == LookupResult.Status.MERGE) {
+                        merging.add(key);
+                        return true;
+                    }
+                    return result.isResolved();
+                });
+            }
+
+            // Search in SSTables in reverse order (newest first)
+            for (int i = version.sstables.size() - 1; i >= 0 && !remaining.isEmpty(); i--) {
+                Map<String, LookupResult> resolved = version.sstables.get(i).lookup(new ArrayList<>(remaining), sequence, executor);
+                for (Map.Entry<String, LookupResult> entry : resolved.entrySet()) {
+                    if (entry.getValue().getStatus() == LookupResult.Status.FOUND) {
+                        results.put(entry.getKey(), valueOf(entry.getValue()));
+                    } else if (entry.getValue().getStatus() == LookupResult.Status.MERGE) {
+                        merging.add(entry.getKey());
+                    }
+                }
+                remaining.removeAll(resolved.keySet());
+            }
+
+            for (String key : merging) {
+                LookupResult result = lookup(version, key, sequence, new int[2]);
+                if (result.getStatus() == LookupResult.Status.FOUND) {
+                    results.put(key, result.getValue());
+                }
+            }
+
+            return results;
+        } finally {
+            version.unref();
+        }
+    }
+
+    /**
+     * Pins the current version. Callers must {@link Version#unref()} it when done.
+     *
+     * @return The pinned version.
+     */
+    private Version acquireVersion() {
+        while (true) {
+            Version version = current;
+            if (version.ref()) {
+                return version;
+            }
+            // Replaced and released between the read and the ref, retry with the new one
+        }
     }
 
     /**
-     * Compacts SSTables to reclaim space.
+     * Replaces the current version, dropping the tree's reference to the old one.
+     * Must be called while holding versionLock.
      *
+     * @param next The new version.
+     * @throws IOException If an SSTable file that became unreferenced cannot be deleted.
+     */
+    private void install(Version next) throws IOException {
+        Version previous = current;
+        current = next;
+        previous.unref();
+    }
+
+
+    /**
+     * Hands the MemTable to the flush thread and starts an empty one. Called with the write
+     * lock held. The WAL is rotated at the same point, so the frozen MemTable's records sit in
+     * a segment of their own, deleted once its SSTable is published. The MemTable stays
+     * readable until then. Writers only wait here when {@link #MAX_IMMUTABLE_MEMTABLES} are
+     * already waiting to be flushed.
+     *
+     * @throws IOException If the WAL cannot be rotated, or a flush waited for failed.
+     */
+    private void scheduleFlush() throws IOException {
+        while (!pendingFlushes.isEmpty()
+                && (pendingFlushes.peekFirst().isDone() || pendingFlushes.size() >= MAX_IMMUTABLE_MEMTABLES)) {
+            OperationTrace trace = OperationTrace.current();
+            long start = System.nanoTime();
+            try {
+                awaitFlush(pendingFlushes.peekFirst());
+            } catch (IOException e) {
+                if (flushFailure == null) {
+                    throw e; // Interrupted
+                }
+            }
+            pendingFlushes.removeFirst();
+            if (trace != null) {
+                trace.addFlush(System.nanoTime() - start); // A writer is stalled on this flush
+            }
+        }
+        if (flushFailure != null) {
+            return; // This write is logged and applied; the next one is refused
+        }
+
+        List<Path> logs = memTableLogs;
+        logs.add(wal.rotate());
+        memTableLogs = new ArrayList<>();
+        MemTable flushing;
+        versionLock.lock();
+        try {
+            Version version = current;
+            flushing = version.memTable;
+            List<MemTable> immutables = new ArrayList<>(version.immutableMemTables);
+            immutables.add(flushing);
+            install(new Version(new MemTable(), immutables, new ArrayList<>(version.sstables)));
+        } finally {
+            versionLock.unlock();
+        }
+        pendingFlushes.addLast(flushExecutor.submit(() -> {
+            try {
+                flush(flushing, logs);
+            } catch (IOException | RuntimeException e) {
+                if (flushFailure == null) {
+                    flushFailure = e instanceof IOException ? (IOException) e : new IOException(e);
+                }
+                throw e;
+            }
+            return null;
+        }));
+    }
+
+    private static void awaitFlush(Future<Void> flush) throws IOException {
+        try {
+            flush.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a flush", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Flush failed", e.getCause());
+        }
+    }
+
+    /**
+     * Refuses writes once a flush has failed: the MemTable it held is kept, but nothing more
+     * would reach disk.
+     */
+    private void checkWritable() throws IOException {
+        IOException failure = flushFailure;
+        if (failure != null) {
+            throw new IOException("A flush failed; writes are refused until the tree is reopened", failure);
+        }
+    }
+
+    /**
+     * Writes a frozen MemTable to disk as an SSTable and publishes it in its place, then
+     * deletes the WAL segments holding its records. Runs on the flush thread.
+     *
+     * @param flushing The MemTable.
+     * @param logs     The WAL segments of its records.
      * @throws IOException If an I/O error occurs.
      */
-    public synchronized void compact() throws IOException {
-        if (sstables.size() <= 1) {
-            return; // Nothing to compact
+    private void flush(MemTable flushing, List<Path> logs) throws IOException {
+        TraceEvents.FlushEvent event = new TraceEvents.FlushEvent();
+        event.begin();
+        long start = System.nanoTime();
+        SSTableOptions options = tableOptions;
+        SSTable sstable;
+        if (options.getValueSeparationThreshold() > 0) {
+            try (ValueLog.Writer writer = valueLog.newWriter()) {
+                sstable = SSTable.create(writer.separate(flushing.entries(), options.getValueSeparationThreshold(),
+                        Collections.emptySet()), sstableDirectory, options, false, writer);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        } else {
+            sstable = flushing.flush(sstableDirectory, options);
+        }
+        sstable.setValueLog(valueLog);
+        long elapsed = System.nanoTime() - start;
+        flushTimer.record(elapsed);
+        flushBytes.add(sstable.getDiskSize());
+        event.end();
+        if (event.shouldCommit()) {
+            event.entries = sstable.getSize();
+            event.bytesWritten = sstable.getDiskSize();
+            event.commit();
         }
 
-        // For simplicity, compact all SSTables into one
-        List<SSTable> sstablesToCompact = new ArrayList<>(sstables);
-        SSTable merged = Compaction.compact(sstablesToCompact, sstableDirectory);
-        sstables.clear();
-        sstables.add(merged);
+        versionLock.lock();
+        try {
+            Version version = current;
+            List<MemTable> immutables = new ArrayList<>(version.immutableMemTables);
+            immutables.remove(flushing);
+            List<SSTable> sstables = new ArrayList<>(version.sstables);
+            sstables.add(sstable);
+            install(new Version(version.memTable, immutables, sstables));
+        } finally {
+            versionLock.unlock();
+        }
+        for (Path log : logs) {
+            Files.deleteIfExists(log);
+        }
+    }
 
-        // Delete old SSTables from disk
-        for (SSTable sstable : sstablesToCompact) {
-            Files.deleteIfExists(sstable.getFilePath());
+    /**
+     * Waits for the MemTables already handed to the flush thread to be on disk, so a
+     * compaction or value log collection started after a write covers it. Flushes run in
+     * order, so an empty task completes after them.
+     */
+    private void awaitScheduledFlushes() throws IOException {
+        try {
+            awaitFlush(flushExecutor.submit(() -> null));
+        } catch (RejectedExecutionException e) {
+            // Closed: every flush has completed
         }
     }
 
     /**
-     * Recovers the LSM Tree state by replaying the WAL.
+     * Compacts SSTables to reclaim space. Runs without the write lock, so writers and
+     * readers keep going; tables flushed meanwhile are kept on top of the merged one. Full
+     * MemTables still waiting for the flush thread are written out first.
      *
      * @throws IOException If an I/O error occurs.
      */
-    private void recover() throws IOException {
-        List<String> logs = wal.readLogs();
-        for (String log : logs) {
-            if (log.startsWith("PUT")) {
-                String[] parts = log.split(" ", 3);
-                if (parts.length == 3) {
-                    String key = parts[1];
-                    String value = parts[2];
-                    memTable.put(key, value);
+    public void compact() throws IOException {
+        awaitScheduledFlushes();
+        compactionLock.lock();
+        try {
+            Version version = acquireVersion();
+            try {
+                SSTableOptions options = tableOptions;
+                if (version.sstables.isEmpty()
+                        || version.sstables.size() == 1 && valueLog.collectable(options.getValueLogGcRatio()).isEmpty()) {
+                    return; // Nothing to compact
+                }
+
+                // For simplicity, compact all SSTables into one
+                List<SSTable> sstablesToCompact = version.sstables;
+                // All tables are merged, so nothing older can hold a deleted key: tombstones go away
+                TraceEvents.CompactionEvent event = new TraceEvents.CompactionEvent();
+                event.begin();
+                long start = compactionTimer.start();
+                CompactionFilter filter = compactionFilter;
+                SSTable merged = Compaction.compact(sstablesToCompact, sstableDirectory, liveSnapshots(), true, options,
+                        filter, valueLog, mergeOperator);
+                merged.setValueLog(valueLog);
+                compactionTimer.stop(start);
+                long entriesIn = 0;
+                long bytesIn = 0;
+                for (SSTable input : sstablesToCompact) {
+                    bytesIn += input.getDiskSize();
+                    entriesIn += input.getSize();
                 }
-            } else if (log.startsWith("DELETE")) {
-                String[] parts = log.split(" ", 2);
-                if (parts.length == 2) {
-                    String key = parts[1];
-                    memTable.delete(key);
+                compactionBytesRead.add(bytesIn);
+                compactionBytesWritten.add(merged.getDiskSize());
+                compactionEntriesDropped.add(entriesIn - merged.getSize());
+                event.end();
+                if (event.shouldCommit()) {
+                    event.inputTables = sstablesToCompact.size();
+                    event.bytesRead = bytesIn;
+                    event.bytesWritten = merged.getDiskSize();
+                    event.entriesDropped = entriesIn - merged.getSize();
+                    event.commit();
                 }
+
+                versionLock.lock();
+                try {
+                    // Inputs are still the oldest tables, only flushes appended since
+                    Version latest = current;
+                    List<SSTable> sstables = new ArrayList<>();
+                    sstables.add(merged);
+                    sstables.addAll(latest.sstables.subList(sstablesToCompact.size(), latest.sstables.size()));
+                    install(new Version(latest.memTable, new ArrayList<>(latest.immutableMemTables), sstables));
+                } finally {
+                    versionLock.unlock();
+                }
+                HotKeyCache cache = hotKeyCache;
+                if (filter != null && cache != null) {
+                    cache.clear(); // The filter may have dropped or rewritten cached values
+                }
+                for (SSTable input : sstablesToCompact) {
+                    retiredDiskReads.add(input.getDiskReads());
+                    retiredBytesRead.add(input.getBytesRead());
+                }
+                // Old SSTable files are deleted once the last reader releases them
+            } finally {
+                version.unref();
             }
+        } finally {
+            compactionLock.unlock();
         }
     }
 
+    /**
+     * Collects garbage in the value log: measures which fraction of each value file is still
+     * the current value of its key, then compacts if a file reaches the GC ratio of the table
+     * options, copying the live values of those files to a new one. The old files are deleted
+     * once no version or snapshot reads the tables pointing into them.
+     *
+     * @return The number of value files whose live values were relocated.
+     * @throws IOException If an I/O error occurs.
+     */
+    public int collectValueLog() throws IOException {
+        awaitScheduledFlushes();
+        valueLog.measure(this::isLiveValue);
+        int collectable = valueLog.collectable(tableOptions.getValueLogGcRatio()).size();
+        if (collectable > 0) {
+            compact();
+        }
+        return collectable;
+    }
+
+    /**
+     * Runs {@link #collectValueLog()} in the background at a fixed period, until the tree is
+     * closed.
+     *
+     * @param periodMillis The period in milliseconds, or 0 to stop.
+     */
+    public synchronized void setValueLogGcPeriod(long periodMillis) {
+        if (periodMillis < 0) {
+            throw new IllegalArgumentException("Period must not be negative: " + periodMillis);
+        }
+        if (valueLogCollector != null) {
+            valueLogCollector.shutdown();
+            valueLogCollector = null;
+        }
+        if (periodMillis == 0) {
+            return;
+        }
+        valueLogCollector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "lsm-vlog-gc");
+            thread.setDaemon(true);
+            return thread;
+        });
+        valueLogCollector.scheduleWithFixedDelay(() -> {
+            try {
+                collectValueLog();
+            } catch (IOException e) {
+                System.err.println("Value log GC failed: " + e.getMessage());
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private boolean isLiveValue(String key, String location) throws IOException {
+        Version version = acquireVersion();
+        try {
+            // A value merge operands still apply to is live too
+            LookupResult result = lookupBelowOperands(version, key, Long.MAX_VALUE, new ArrayList<>(), new int[2]);
+            return location.equals(result.getLocation());
+        } finally {
+            version.unref();
+        }
+    }
+
+    /**
+     * Reopens the SSTables left in the directory by earlier runs, reading their footers and
+     * indexes concurrently. Flushes append tables and compaction merges the oldest ones, so
+     * their sequence ranges do not overlap and the max sequence number restores their order.
+     * Tables still being written when the process stopped are deleted: a flush cut short is
+     * still in the WAL, a compaction cut short still has its inputs.
+     * <p>
+     * A complete table that cannot be opened holds writes the WAL no longer has, so it fails
+     * the open. With {@code -Doltp.recovery.quarantine=true} it is renamed to ".corrupt" and
+     * left out instead, losing its data and letting older versions of its keys resurface.
+     *
+     * @param executor Opens the tables, or null to open them on the caller.
+     * @return The tables, oldest first.
+     * @throws IOException If the directory cannot be listed, or a table cannot be opened and
+     *                     quarantine is off.
+     */
+    private List<SSTable> loadSSTables(ExecutorService executor) throws IOException {
+        Path directory = Paths.get(sstableDirectory);
+        List<SSTable> sstables = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return sstables;
+        }
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(path -> path.getFileName().toString().endsWith(".sst")).sorted().collect(Collectors.toList());
+        }
+        try (Stream<Path> listing = Files.list(directory)) {
+            for (Path partial : listing.filter(path -> path.getFileName().toString().endsWith(".sst" + SSTable.TEMP_SUFFIX))
+                    .collect(Collectors.toList())) {
+                Files.deleteIfExists(partial);
+            }
+        }
+
+        List<Future<SSTable>> opening = new ArrayList<>();
+        for (Path file : files) {
+            Callable<SSTable> open = () -> SSTable.open(file, tableOptions);
+            opening.add(executor == null ? call(open) : executor.submit(open));
+        }
+        boolean quarantine = Boolean.getBoolean("oltp.recovery.quarantine");
+        IOException failure = null;
+        for (int i = 0; i < files.size(); i++) {
+            try {
+                sstables.add(opening.get(i).get());
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (!quarantine) {
+                    if (failure == null) {
+                        failure = new IOException("Cannot open SSTable " + files.get(i)
+                                + "; its writes are no longer in the WAL (-Doltp.recovery.quarantine=true to set it aside)", cause);
+                    } else {
+                        failure.addSuppressed(cause);
+                    }
+                    continue;
+                }
+                Path corrupt = files.get(i).resolveSibling(files.get(i).getFileName() + ".corrupt");
+                Files.move(files.get(i), corrupt);
+                System.err.println("Quarantined " + corrupt + ", its data is lost: " + cause.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while opening SSTables", e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        sstables.sort(Comparator.comparingLong(SSTable::getMaxSequence)); // Stable: ties keep file name order
+
+        Set<Long> valueFiles = new HashSet<>();
+        for (SSTable sstable : sstables) {
+            sstable.setValueLog(valueLog);
+            for (long file : sstable.getValueFiles()) {
+                valueFiles.add(file);
+            }
+        }
+        if (sstables.size() == files.size()) { // A quarantined table may still point into value files
+            valueLog.deleteUnreferenced(valueFiles); // Left by a flush or compaction cut short
+        }
+        return sstables;
+    }
+
+    private static Future<SSTable> call(Callable<SSTable> open) {
+        try {
+            return CompletableFuture.completedFuture(open.call());
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Recovers the LSM Tree state by replaying the WAL, in parallel for a large log.
+     *
+     * @param executor    Runs the replay workers, or null to replay on the caller.
+     * @param parallelism The number of workers.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void recover(ExecutorService executor, int parallelism) throws IOException {
+        // Segments of MemTables whose flush did not finish, oldest first, then the active log
+        List<String> logs = new ArrayList<>();
+        for (Path segment : wal.segments()) {
+            logs.addAll(WalReplay.upgradeLegacy(wal.readLogs(segment), wal.getLegacyRecords(), lastSequence));
+            memTableLogs.add(segment);
+        }
+        logs.addAll(WalReplay.upgradeLegacy(wal.readLogs(), wal.getLegacyRecords(), lastSequence));
+        long sequence = WalReplay.replay(logs, current.memTable, executor, parallelism);
+        lastSequence = Math.max(lastSequence, sequence);
+        visibleSequence = lastSequence;
+    }
+
     /**
      * Closes the LSM Tree, ensuring all resources are properly released.
      *
      * @throws IOException If an I/O error occurs.
      */
-    public synchronized void close() throws IOException {
-        flushMemTable(); // Flush any remaining data
-        wal.close();
+    public void close() throws IOException {
+        metrics.unregisterMBean();
+        writeLock.lock();
+        try {
+            if (current.memTable.getEntryCount() > 0 && flushFailure == null) {
+                scheduleFlush(); // Flush any remaining data
+            }
+            while (!pendingFlushes.isEmpty()) {
+                awaitFlush(pendingFlushes.removeFirst());
+            }
+            wal.close();
+        } finally {
+            writeLock.unlock();
+            flushExecutor.shutdown();
+        }
+        synchronized (this) {
+            if (ownedExecutor != null) {
+                ownedExecutor.shutdown();
+            }
+            if (valueLogCollector != null) {
+                valueLogCollector.shutdownNow();
+            }
+        }
+        valueLog.close();
     }
 
 
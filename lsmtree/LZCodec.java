@@ -0,0 +1,151 @@
+// Fast LZ77 block codec, LZ4 block layout
+
+
+import java.util.Arrays;
+
+/**
+ * Pure Java LZ77 codec using the LZ4 block layout: sequences of
+ * [token][literal length ext][literals][2-byte offset][match length ext].
+ * Greedy single-probe hash matching favours speed over ratio.
+ */
+public class LZCodec implements CompressionCodec {
+
+    private static final int MIN_MATCH = 4;
+    private static final int HASH_BITS = 12;
+    private static final int MAX_OFFSET = 65535;
+    private static final int LAST_LITERALS = 5;  // Trailing bytes always stored as literals
+    private static final int MATCH_LIMIT = 12;   // No match starts this close to the end
+
+    @Override
+    public byte id() {
+        return 1;
+    }
+
+    @Override
+    public String name() {
+        return "lz";
+    }
+
+    @Override
+    public byte[] compress(byte[] src, int offset, int length) {
+        byte[] out = new byte[length + length / 255 + 16];
+        int op = 0;
+        int end = offset + length;
+        int anchor = offset;
+        int ip = offset;
+        int[] table = new int[1 << HASH_BITS];
+        Arrays.fill(table, -1);
+
+        int limit = end - MATCH_LIMIT;
+        while (ip < limit) {
+            int sequence = readInt(src, ip);
+            int h = (sequence * -1640531535) >>> (32 - HASH_BITS);
+            int ref = table[h];
+            table[h] = ip;
+
+            if (ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+                ip++;
+                continue;
+            }
+
+            int matchLength = MIN_MATCH;
+            while (ip + matchLength < end - LAST_LITERALS && src[ref + matchLength] == src[ip + matchLength]) {
+                matchLength++;
+            }
+
+            op = writeSequence(out, op, src, anchor, ip - anchor, ip - ref, matchLength);
+            ip += matchLength;
+            anchor = ip;
+        }
+
+        op = writeSequence(out, op, src, anchor, end - anchor, 0, 0);
+        return Arrays.copyOf(out, op);
+    }
+
+    private static int writeSequence(byte[] out, int op, byte[] src, int literalStart, int literalLength,
+                                     int matchOffset, int matchLength) {
+        int tokenPos = op++;
+        int token = Math.min(literalLength, 15) << 4;
+        if (literalLength >= 15) {
+            op = writeLength(out, op, literalLength - 15);
+        }
+        System.arraycopy(src, literalStart, out, op, literalLength);
+        op += literalLength;
+
+        if (matchLength > 0) {
+            out[op++] = (byte) matchOffset;
+            out[op++] = (byte) (matchOffset >>> 8);
+            int extra = matchLength - MIN_MATCH;
+            token |= Math.min(extra, 15);
+            if (extra >= 15) {
+                op = writeLength(out, op, extra - 15);
+            }
+        }
+        out[tokenPos] = (byte) token;
+        return op;
+    }
+
+    private static int writeLength(byte[] out, int op, int length) {
+        while (length >= 255) {
+            out[op++] = (byte) 255;
+            length -= 255;
+        }
+        out[op++] = (byte) length;
+        return op;
+    }
+
+    @Override
+    public byte[] decompress(byte[] src, int offset, int length, int uncompressedLength) {
+        byte[] out = new byte[uncompressedLength];
+        int ip = offset;
+        int end = offset + length;
+        int op = 0;
+
+        while (ip < end) {
+            int token = src[ip++] & 0xFF;
+
+            int literalLength = token >>> 4;
+            if (literalLength == 15) {
+                int b;
+                do {
+                    b = src[ip++] & 0xFF;
+                    literalLength += b;
+                } while (b == 255);
+            }
+            System.arraycopy(src, ip, out, op, literalLength);
+            ip += literalLength;
+            op += literalLength;
+
+            if (ip >= end) {
+                break; // Last sequence has no match
+            }
+
+            int matchOffset = (src[ip] & 0xFF) | (src[ip + 1] & 0xFF) << 8;
+            ip += 2;
+            int matchLength = token & 0x0F;
+            if (matchLength == 15) {
+                int b;
+                do {
+                    b = src[ip++] & 0xFF;
+                    matchLength += b;
+                } while (b == 255);
+            }
+            matchLength += MIN_MATCH;
+
+            // Byte by byte: the match may overlap the bytes it produces
+            int ref = op - matchOffset;
+            for (int i = 0; i < matchLength; i++) {
+                out[op++] = out[ref + i];
+            }
+        }
+
+        if (op != uncompressedLength) {
+            throw new IllegalStateException("Corrupted LZ block: " + op + " != " + uncompressedLength);
+        }
+        return out;
+    }
+
+    private static int readInt(byte[] b, int i) {
+        return (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16 | (b[i + 3] & 0xFF) << 24;
+    }
+}
@@ -0,0 +1,117 @@
+// Outcome of a point lookup in one LSM component
+
+
+/**
+ * Outcome of looking up a key in a MemTable or SSTable. A deletion is distinct from a miss:
+ * it shadows every older component, so the search can stop right there. A merge operand
+ * shadows nothing: the search goes on below its sequence number to the value it applies to.
+ */
+public final class LookupResult {
+
+    public enum Status { FOUND, DELETED, MERGE, ABSENT }
+
+    public static final LookupResult ABSENT = new LookupResult(Status.ABSENT, null, null, 0, StoredValue.NEVER);
+    public static final LookupResult DELETED = new LookupResult(Status.DELETED, null, null, 0, StoredValue.NEVER);
+
+    private final Status status;
+    private final String value;
+    private final String location; // Of a value in the value log, then value is null
+    private final long sequence;   // Of a merge operand
+    private final long expiresAt;  // Of a value found
+
+    private LookupResult(Status status, String value, String location, long sequence, long expiresAt) {
+        this.status = status;
+        this.value = value;
+        this.location = location;
+        this.sequence = sequence;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * @param value The value found.
+     * @return A FOUND result.
+     */
+    public static LookupResult found(String value) {
+        return found(value, StoredValue.NEVER);
+    }
+
+    /**
+     * @param value     The value found.
+     * @param expiresAt Its expiry time, or {@link StoredValue#NEVER}.
+     * @return A FOUND result.
+     */
+    static LookupResult found(String value, long expiresAt) {
+        return new LookupResult(Status.FOUND, value, null, 0, expiresAt);
+    }
+
+    /**
+     * Maps a stored value to a result, recognizing the tombstone marker, TTLs, values in the
+     * value log and merge operands: an expired entry reads as a deletion, so it shadows older
+     * versions of the key too.
+     *
+     * @param value    The stored value, or null if there is none.
+     * @param sequence The sequence number of the version.
+     * @return The result.
+     */
+    static LookupResult of(String value, long sequence) {
+        if (value == null) {
+            return ABSENT;
+        }
+        if (MemTable.TOMBSTONE.equals(value)) {
+            return DELETED;
+        }
+        if (StoredValue.isWrapped(value)) {
+            if (StoredValue.isExpired(value, System.currentTimeMillis())) {
+                return DELETED;
+            }
+            if (StoredValue.isOperand(value)) {
+                return new LookupResult(Status.MERGE, StoredValue.value(value), null, sequence, StoredValue.NEVER);
+            }
+            long expiresAt = StoredValue.expiresAt(value);
+            return StoredValue.isPointer(value)
+                    ? new LookupResult(Status.FOUND, null, StoredValue.value(value), 0, expiresAt)
+                    : found(StoredValue.value(value), expiresAt);
+        }
+        return found(value);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return The value if FOUND (null if the value is in the value log), the operand if MERGE,
+     * otherwise null.
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * @return The location of the value in the value log, or null if the value is inline.
+     */
+    String getLocation() {
+        return location;
+    }
+
+    /**
+     * @return The expiry time of a value found, or {@link StoredValue#NEVER}.
+     */
+    long getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * @return The sequence number of a merge operand; older versions are below it.
+     */
+    long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return True if the key was found or deleted, i.e. older components need not be searched.
+     */
+    public boolean isResolved() {
+        return status == Status.FOUND || status == Status.DELETED;
+    }
+}
@@ -2,39 +2,76 @@
 
 
 import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * Implements the in-memory buffer for the LSMTree
+ * Implements the in-memory buffer for the LSMTree.
+ * Backed by a concurrent skip list so readers never lock. Every key keeps a chain of
+ * versions, newest first, tagged with the sequence number of the write.
  */
 public class MemTable {
 
-    private final TreeMap<String, String> table;
+    // Deleted keys map to the same marker SSTables use on disk
+    public static final String TOMBSTONE = "NULL";
+
+    private final ConcurrentSkipListMap<String, ValueVersion> table;
+    private final AtomicInteger size; // Number of versions, ConcurrentSkipListMap.size() is O(n)
+    private final LongAdder bytes = new LongAdder(); // Approximate heap footprint of the versions
+
+    // Estimated per-version overhead: skip list node or version object, sequence and references
+    private static final int VERSION_OVERHEAD = 64;
 
     /**
      * Initializes the MemTable
      */
     public MemTable() {
-        this.table = new TreeMap<>();
+        this.table = new ConcurrentSkipListMap<>();
+        this.size = new AtomicInteger();
     }
 
     /**
      * Inserts or updates a key-value pair in the MemTable
      *
+     * @param sequence The sequence number of the write
      * @param key The key to insert/update
      * @param value The value associated with the key
      */
-    public synchronized void put(String key, String value) {
-        table.put(key, value);
+    public void put(long sequence, String key, String value) {
+        table.compute(key, (k, older) -> new ValueVersion(sequence, value, older));
+        size.incrementAndGet();
+        bytes.add(2L * (key.length() + value.length()) + VERSION_OVERHEAD);
     }
 
     /**
      * Deletes a key from the MemTable.
      *
+     * @param sequence The sequence number of the write.
      * @param key The key to delete.
      */
-    public synchronized void delete(String key){
-        table.put(key, null);
+    public void delete(long sequence, String key){
+        put(sequence, key, TOMBSTONE);
+    }
+
+    /**
+     * Looks up the newest version of a key visible at a sequence number, without copying the table.
+     *
+     * @param key The key to look up.
+     * @param sequence The snapshot sequence number.
+     * @return FOUND with the value, DELETED, MERGE with an operand, or ABSENT if the MemTable
+     * has no visible entry.
+     */
+    public LookupResult lookup(String key, long sequence) {
+        ValueVersion version = table.get(key);
+        while (version != null && version.sequence > sequence) {
+            version = version.older;
+        }
+        return version == null ? LookupResult.ABSENT : LookupResult.of(version.value, version.sequence);
     }
 
 
@@ -45,30 +82,119 @@ public class MemTable {
      * @return True if MemTable size >= maxSize, else False.
      */
 
-    public synchronized boolean isFull(int maxSize) {
-        return table.size() >= maxSize;
+    public boolean isFull(int maxSize) {
+        return size.get() >= maxSize;
+    }
+
+    /**
+     * @return The number of versions held.
+     */
+    public int getEntryCount() {
+        return size.get();
     }
 
     /**
-     * Flushes the MemTable to create an SSTable.
+     * @return The approximate heap size of the keys and values held, in bytes.
+     */
+    public long getApproximateBytes() {
+        return bytes.sum();
+    }
+
+    /**
+     * Flushes the MemTable to create an SSTable, with every version of every key.
+     * The MemTable is left untouched, concurrent readers may still be using it.
      *
      * @param directory The directory to store the SSTable.
      * @return The created SSTable instance.
      * @throws IOException If an I/O error occurs during SSTable creation.
      */
-    public synchronized SSTable flush(String directory) throws IOException {
-        SSTable sslTable = SSTable.createFromMemTable(table, directory);
-        table.clear();
-        return sslTable;
+    public SSTable flush(String directory) throws IOException {
+        return flush(directory, new SSTableOptions());
     }
 
     /**
-     * Returns the current state of the MemTable
+     * Flushes the MemTable to create an SSTable with the given block settings.
      *
-     * @return The TreeMap of the table
+     * @param directory The directory to store the SSTable.
+     * @param options   Block size, codec and block cache of the new table.
+     * @return The created SSTable instance.
+     * @throws IOException If an I/O error occurs during SSTable creation.
      */
-    public synchronized TreeMap<String, String> getTable() {
-        return new TreeMap<>(table);
+    public SSTable flush(String directory, SSTableOptions options) throws IOException {
+        return SSTable.create(entries(), directory, options);
     }
-}
 
+    /**
+     * Iterates all versions ordered by key, newest version first within a key.
+     *
+     * @return The iterator.
+     */
+    public Iterator<SSTable.Entry> entries() {
+        return entries(null);
+    }
+
+    /**
+     * Iterates all versions of the keys at or after a start key, ordered by key, newest
+     * version first within a key.
+     *
+     * @param fromKey The first key, or null to start at the beginning.
+     * @return The iterator.
+     */
+    public Iterator<SSTable.Entry> entries(String fromKey) {
+        Iterator<Map.Entry<String, ValueVersion>> keys =
+                (fromKey == null ? table : table.tailMap(fromKey, true)).entrySet().iterator();
+        return new Iterator<SSTable.Entry>() {
+            private String key;
+            private ValueVersion version;
+
+            @Override
+            public boolean hasNext() {
+                return version != null || keys.hasNext();
+            }
+
+            @Override
+            public SSTable.Entry next() {
+                if (version == null) {
+                    if (!keys.hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    Map.Entry<String, ValueVersion> next = keys.next();
+                    key = next.getKey();
+                    version = next.getValue();
+                }
+                SSTable.Entry entry = new SSTable.Entry(key, version.sequence, version.value);
+                version = version.older;
+                return entry;
+            }
+        };
+    }
+
+    /**
+     * Returns the latest state of the MemTable
+     *
+     * @return The TreeMap of the table, deleted and expired keys map to null, keys whose
+     * newest version is a merge operand to the operand
+     */
+    public TreeMap<String, String> getTable() {
+        TreeMap<String, String> latest = new TreeMap<>();
+        for (Map.Entry<String, ValueVersion> entry : table.entrySet()) {
+            latest.put(entry.getKey(), LookupResult.of(entry.getValue().value, entry.getValue().sequence).getValue());
+        }
+        return latest;
+    }
+
+    /**
+     * One version of a key, linked to the next older one.
+     */
+    private static final class ValueVersion {
+        final long sequence;
+        final String value;
+        final ValueVersion older;
+
+        ValueVersion(long sequence, String value, ValueVersion older) {
+            this.sequence = sequence;
+            this.value = value;
+            this.older = older;
+        }
+    }
+}
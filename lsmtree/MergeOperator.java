@@ -0,0 +1,43 @@
+// Application hook folding merge operands into values
+
+import java.util.List;
+
+/**
+ * Combines the operands written by {@link LSMTree#merge(String, String)} with the value of
+ * their key, e.g. adds increments to a counter. Operands are blind writes: reads fold them
+ * into the newest value or deletion below them, and compaction folds them ahead of time.
+ * <p>
+ * The operator must be associative: when compaction cannot see the value below some
+ * operands, it folds them into one by passing the older operand as {@code existing}, and
+ * later folds the result into the value. Implementations must be thread-safe, deterministic
+ * and must not return null.
+ */
+@FunctionalInterface
+public interface MergeOperator {
+
+    /**
+     * Applies an operand.
+     *
+     * @param key      The key.
+     * @param existing The current value (or an older operand), null if the key has no value.
+     * @param operand  The operand.
+     * @return The new value.
+     */
+    String merge(String key, String existing, String operand);
+
+    /**
+     * Applies operands in the order they were written.
+     *
+     * @param key      The key.
+     * @param existing The value below the operands, null if the key has no value.
+     * @param operands The operands, oldest first.
+     * @return The new value.
+     */
+    default String mergeAll(String key, String existing, List<String> operands) {
+        String value = existing;
+        for (String operand : operands) {
+            value = merge(key, value, operand);
+        }
+        return value;
+    }
+}
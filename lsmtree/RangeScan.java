@@ -0,0 +1,146 @@
+// Merges the MemTables and SSTables of a version into one range scan
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Range scan over a pinned {@link Version}: every source is positioned at the start key and
+ * the sources are merged by key. For each key the newest version visible at the scan's
+ * sequence number wins; deleted keys are skipped. Merge operands above the winner are folded
+ * into it.
+ */
+class RangeScan {
+
+    /**
+     * Scans a key range.
+     *
+     * @param version  The pinned version.
+     * @param fromKey  The first key (inclusive), or null to start at the beginning.
+     * @param toKey    The end key (exclusive), or null for no upper bound.
+     * @param limit    The maximum number of keys returned.
+     * @param sequence The snapshot sequence number.
+     * @param stored   Whether to return values as stored, with their TTL, instead of as read.
+     *                 Values in the value log are inlined either way.
+     * @param valueLog The value log values may have been moved to.
+     * @param merge    Folds merge operands, or null if none were written.
+     * @return The live keys of the range with their values, in key order.
+     * @throws IOException If an I/O error occurs.
+     */
+    static SortedMap<String, String> scan(Version version, String fromKey, String toKey, int limit,
+                                          long sequence, boolean stored, ValueLog valueLog,
+                                          MergeOperator merge) throws IOException {
+        // Key ascending, then newest source first
+        PriorityQueue<Source> pq = new PriorityQueue<>(
+                Comparator.<Source, String>comparing(source -> source.current.key)
+                        .thenComparingInt(source -> source.age));
+
+        List<SSTable.Scanner> scanners = new ArrayList<>();
+        try {
+            int age = 0;
+            addSource(pq, version.memTable.entries(fromKey), age++);
+            for (int i = version.immutableMemTables.size() - 1; i >= 0; i--) {
+                addSource(pq, version.immutableMemTables.get(i).entries(fromKey), age++);
+            }
+            for (int i = version.sstables.size() - 1; i >= 0; i--) {
+                SSTable.Scanner scanner = version.sstables.get(i).scanner(fromKey);
+                scanners.add(scanner);
+                addSource(pq, scanner, age++);
+            }
+
+            SortedMap<String, String> results = new TreeMap<>();
+            while (!pq.isEmpty() && results.size() < limit) {
+                String key = pq.peek().current.key;
+                if (toKey != null && key.compareTo(toKey) >= 0) {
+                    break;
+                }
+
+                // Drain every version of the key, the first visible value or deletion wins
+                LookupResult resolved = LookupResult.ABSENT;
+                String winner = null;
+                List<String> operands = null; // Newest first
+                while (!pq.isEmpty() && pq.peek().current.key.equals(key)) {
+                    Source source = pq.poll();
+                    while (source.current != null && source.current.key.equals(key)) {
+                        if (!resolved.isResolved() && source.current.sequence <= sequence) {
+                            LookupResult result = LookupResult.of(source.current.value, source.current.sequence);
+                            if (result.getStatus() == LookupResult.Status.MERGE) {
+                                if (operands == null) {
+                                    operands = new ArrayList<>();
+                                }
+                                operands.add(result.getValue());
+                            } else {
+                                resolved = result;
+                                winner = source.current.value;
+                            }
+                        }
+                        source.advance();
+                    }
+                    if (source.current != null) {
+                        pq.add(source);
+                    }
+                }
+                if (operands != null) {
+                    if (merge == null) {
+                        throw new IllegalStateException("No merge operator to fold the operands of " + key);
+                    }
+                    boolean found = resolved.getStatus() == LookupResult.Status.FOUND;
+                    String base = !found ? null
+                            : resolved.getLocation() != null ? valueLog.read(resolved.getLocation()) : resolved.getValue();
+                    Collections.reverse(operands);
+                    String value = merge.mergeAll(key, base, operands);
+                    long expiresAt = found ? StoredValue.expiresAt(winner) : StoredValue.NEVER;
+                    results.put(key, stored ? StoredValue.wrap(value, expiresAt) : value);
+                    continue;
+                }
+                if (resolved.getStatus() != LookupResult.Status.FOUND) {
+                    continue;
+                }
+                if (resolved.getLocation() == null) {
+                    results.put(key, stored ? winner : resolved.getValue());
+                } else {
+                    String value = valueLog.read(resolved.getLocation());
+                    results.put(key, stored ? StoredValue.wrap(value, StoredValue.expiresAt(winner)) : value);
+                }
+            }
+            return results;
+        } finally {
+            for (SSTable.Scanner scanner : scanners) {
+                scanner.close();
+            }
+        }
+    }
+
+    private static void addSource(PriorityQueue<Source> pq, Iterator<SSTable.Entry> entries, int age) {
+        Source source = new Source(entries, age);
+        if (source.current != null) {
+            pq.add(source);
+        }
+    }
+
+    /**
+     * One MemTable or SSTable, positioned on its next entry.
+     */
+    private static class Source {
+        final Iterator<SSTable.Entry> entries;
+        final int age; // 0 for the newest source
+        SSTable.Entry current;
+
+        Source(Iterator<SSTable.Entry> entries, int age) {
+            this.entries = entries;
+            this.age = age;
+            advance();
+        }
+
+        void advance() {
+            current = entries.hasNext() ? entries.next() : null;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+// In-memory tail of a primary's WAL, read by followers
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the most recent WAL records of a primary {@link LSMTree} so followers can stream them.
+ * The primary's WAL segments are deleted on every flush, so records are retained here instead,
+ * up to a fixed capacity. A new, empty follower first receives a snapshot of the primary (one
+ * PUT per live key, in chunks) and then the records after it; a follower that falls further
+ * behind than the retained tail has to be rebuilt.
+ */
+public class ReplicationLog implements LSMTree.WriteListener {
+
+    private final LSMTree primary;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+
+    // Ring buffer of records and their last sequence numbers, guarded by lock
+    private final String[] records;
+    private final long[] sequences;
+    private long appendedCount;  // Records ever appended; the newest is at (appendedCount - 1) % capacity
+    private int size;
+    private long coveredFrom;    // First sequence number still retained
+    private long lastSequence;   // Last sequence number appended
+
+    /**
+     * Attaches to a primary. Writes made before this point reach followers through the
+     * snapshot only.
+     *
+     * @param primary  The primary tree.
+     * @param capacity The number of records retained.
+     */
+    public ReplicationLog(LSMTree primary, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.primary = primary;
+        this.records = new String[capacity];
+        this.sequences = new long[capacity];
+        lock.lock();
+        try {
+            lastSequence = primary.addWriteListener(this);
+            coveredFrom = lastSequence + 1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void onWrite(long sequence, String record) {
+        lock.lock();
+        try {
+            int slot = (int) (appendedCount % records.length);
+            if (size == records.length) {
+                coveredFrom = sequences[slot] + 1; // Evict the oldest
+            } else {
+                size++;
+            }
+            records[slot] = record;
+            sequences[slot] = sequence;
+            appendedCount++;
+            lastSequence = Math.max(lastSequence, sequence);
+            appended.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the records after a sequence number, waiting for one if there is none yet.
+     *
+     * @param afterSequence The last sequence number the follower applied, 0 if it is empty.
+     * @param maxRecords    The maximum number of records returned.
+     * @param timeoutMillis How long to wait for a new record.
+     * @return The records, possibly none if the wait timed out.
+     * @throws IOException If the follower is behind the retained tail and not empty, or an
+     *                     I/O error occurs while reading a snapshot.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public Batch read(long afterSequence, int maxRecords, long timeoutMillis) throws IOException, InterruptedException {
+        lock.lock();
+        try {
+            if (afterSequence + 1 < coveredFrom) {
+                if (afterSequence != 0) {
+                    throw new IOException("Follower at " + afterSequence + " is behind the retained log, which starts at "
+                            + coveredFrom + "; rebuild it from an empty tree");
+                }
+            } else {
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+                while (lastSequence <= afterSequence) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return new Batch(Collections.emptyList(), afterSequence, lastSequence, false);
+                    }
+                    appended.awaitNanos(remaining);
+                }
+                return collect(afterSequence, maxRecords);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return snapshot(-1, null, maxRecords);
+    }
+
+    /**
+     * Returns the next chunk of the snapshot an empty follower is copying.
+     *
+     * @param sequence   The sequence number of the snapshot, from its first chunk.
+     * @param afterKey   The last key of the previous chunk.
+     * @param maxRecords The maximum number of records returned.
+     * @return The records of the keys after {@code afterKey}.
+     * @throws IOException If the records after the snapshot are no longer retained, or an
+     *                     I/O error occurs.
+     */
+    public Batch readSnapshot(long sequence, String afterKey, int maxRecords) throws IOException {
+        return snapshot(sequence, afterKey, maxRecords);
+    }
+
+    /**
+     * Copies the retained records after a sequence number. Called with the lock held.
+     */
+    private Batch collect(long afterSequence, int maxRecords) {
+        // Binary search the first record past afterSequence
+        long lo = appendedCount - size;
+        long hi = appendedCount;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (sequences[(int) (mid % records.length)] <= afterSequence) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        List<String> batch = new ArrayList<>();
+        long through = afterSequence;
+        for (long i = lo; i < appendedCount && batch.size() < maxRecords; i++) {
+            int slot = (int) (i % records.length);
+            batch.add(records[slot]);
+            through = sequences[slot];
+        }
+        return new Batch(batch, through, lastSequence, false);
+    }
+
+    /**
+     * Reads a chunk of the primary's live keys in key order, as PUT records. Every chunk is
+     * read at the primary's latest sequence number but tagged with that of the first chunk,
+     * the snapshot's: the follower tails the log from there once it has every chunk, and
+     * replaying the writes made meanwhile brings each key to its value whichever chunk held it.
+     *
+     * @param sequence The snapshot's sequence number, or -1 to start a snapshot.
+     * @param afterKey The last key of the previous chunk, or null for the first chunk.
+     */
+    private Batch snapshot(long sequence, String afterKey, int maxRecords) throws IOException {
+        try (Snapshot snapshot = primary.getSnapshot()) {
+            if (sequence < 0) {
+                sequence = snapshot.getSequence();
+            }
+            // The smallest key after afterKey; one key more than requested tells whether chunks follow
+            SortedMap<String, String> entries = primary.scanStored(snapshot, afterKey == null ? null : afterKey + '\0',
+                    maxRecords + 1);
+            List<String> puts = new ArrayList<>();
+            String lastKey = null;
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                if (puts.size() == maxRecords) {
+                    break;
+                }
+                puts.add(WriteAheadLog.putRecord(sequence, entry.getKey(), entry.getValue()));
+                lastKey = entry.getKey();
+            }
+
+            lock.lock();
+            try {
+                if (sequence + 1 < coveredFrom) {
+                    throw new IOException("Log capacity exceeded while taking a snapshot at " + sequence);
+                }
+                return new Batch(puts, sequence, lastSequence, true, entries.size() > maxRecords ? lastKey : null);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Stops recording the primary's writes.
+     */
+    public void detach() {
+        primary.removeWriteListener(this);
+    }
+
+    /**
+     * A run of records for a follower.
+     */
+    public static final class Batch {
+        /** The records, in sequence order. */
+        public final List<String> records;
+        /** The last sequence number covered, the follower's next read position. */
+        public final long throughSequence;
+        /** The primary's last sequence number when the batch was read. */
+        public final long primarySequence;
+        /** True if the records are a chunk of a copy of the primary for an empty follower. */
+        public final boolean snapshot;
+        /** The last key of a snapshot chunk if more chunks follow, else null. */
+        public final String resumeKey;
+
+        public Batch(List<String> records, long throughSequence, long primarySequence, boolean snapshot) {
+            this(records, throughSequence, primarySequence, snapshot, null);
+        }
+
+        public Batch(List<String> records, long throughSequence, long primarySequence, boolean snapshot,
+                     String resumeKey) {
+            this.records = records;
+            this.throughSequence = throughSequence;
+            this.primarySequence = primarySequence;
+            this.snapshot = snapshot;
+            this.resumeKey = resumeKey;
+        }
+    }
+}
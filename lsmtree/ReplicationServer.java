@@ -0,0 +1,196 @@
+// TCP endpoint shipping a primary's WAL records to remote followers
+
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Serves a {@link ReplicationLog} over TCP. A follower sends the last sequence number it has
+ * applied and receives the next batch, the request waiting up to {@link #POLL_MILLIS} for new
+ * writes so an idle follower is not spinning.
+ * <p>
+ * Request: {@code [long afterSequence][false]}, or {@code [long snapshotSequence][true]
+ * [string afterKey]} for the next chunk of a snapshot. Response: {@code [byte status]
+ * [long throughSequence][long primarySequence][boolean snapshot][int count][count x string]
+ * [boolean more][string resumeKey if more]}, or {@code [byte ERROR][string message]}. Strings
+ * are an int length followed by UTF-8 bytes.
+ */
+public class ReplicationServer implements Closeable {
+
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+    static final int MAX_RECORDS = 4096;
+    static final long POLL_MILLIS = 500;
+
+    private final ReplicationLog log;
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections;
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+    private volatile boolean running = true;
+
+    /**
+     * Binds the server on the loopback interface and starts accepting followers.
+     *
+     * @param log  The log to serve.
+     * @param port The port, 0 for an ephemeral one.
+     * @throws IOException If the port cannot be bound.
+     */
+    public ReplicationServer(ReplicationLog log, int port) throws IOException {
+        this(log, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /**
+     * Binds the server and starts accepting followers.
+     *
+     * @param log     The log to serve.
+     * @param address The address to bind.
+     * @throws IOException If the address cannot be bound.
+     */
+    public ReplicationServer(ReplicationLog log, InetSocketAddress address) throws IOException {
+        this.log = log;
+        this.serverSocket = new ServerSocket();
+        serverSocket.bind(address);
+        this.connections = VirtualThreads.newPerTaskExecutor("replication-connection");
+        Thread acceptor = new Thread(this::acceptLoop, "replication-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * @return The bound port.
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                sockets.add(socket);
+                connections.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream(), 1 << 16))) {
+            while (running) {
+                long afterSequence;
+                try {
+                    afterSequence = in.readLong();
+                } catch (EOFException e) {
+                    return; // Follower closed the connection
+                }
+                String afterKey = in.readBoolean() ? readString(in) : null;
+                try {
+                    writeBatch(out, afterKey == null ? log.read(afterSequence, MAX_RECORDS, POLL_MILLIS)
+                            : log.readSnapshot(afterSequence, afterKey, MAX_RECORDS));
+                } catch (IOException e) {
+                    out.writeByte(ERROR);
+                    writeString(out, String.valueOf(e.getMessage()));
+                }
+                out.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (SocketException e) {
+            // Connection reset or server closing
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("Replication connection failed: " + e.getMessage());
+            }
+        } finally {
+            sockets.remove(socket);
+        }
+    }
+
+    static void writeBatch(DataOutputStream out, ReplicationLog.Batch batch) throws IOException {
+        out.writeByte(OK);
+        out.writeLong(batch.throughSequence);
+        out.writeLong(batch.primarySequence);
+        out.writeBoolean(batch.snapshot);
+        out.writeInt(batch.records.size());
+        for (String record : batch.records) {
+            writeString(out, record);
+        }
+        out.writeBoolean(batch.resumeKey != null);
+        if (batch.resumeKey != null) {
+            writeString(out, batch.resumeKey);
+        }
+    }
+
+    static ReplicationLog.Batch readBatch(DataInputStream in) throws IOException {
+        byte status = in.readByte();
+        if (status == ERROR) {
+            throw new IOException("Primary refused: " + readString(in));
+        }
+        if (status != OK) {
+            throw new IOException("Invalid status: " + status);
+        }
+        long throughSequence = in.readLong();
+        long primarySequence = in.readLong();
+        boolean snapshot = in.readBoolean();
+        int count = in.readInt();
+        List<String> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            records.add(readString(in));
+        }
+        String resumeKey = in.readBoolean() ? readString(in) : null;
+        return new ReplicationLog.Batch(records, throughSequence, primarySequence, snapshot, resumeKey);
+    }
+
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Stops accepting followers and closes the open connections. The log stays attached.
+     *
+     * @throws IOException If the server socket cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverSocket.close();
+        for (Socket socket : sockets) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+        connections.shutdownNow();
+    }
+}
@@ -1,9 +1,22 @@
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 
 /**
@@ -11,24 +24,125 @@ import java.util.TreeMap;
  */
 public class SSTable {
 
+    // Disambiguates tables created within the same millisecond (flush racing compaction)
+    private static final AtomicLong FILE_COUNTER = new AtomicLong();
+    // Suffix of a table being written, renamed away once the footer is on disk
+    static final String TEMP_SUFFIX = ".tmp";
+
+    // Footer: [long index offset][int index length][byte partitioned][long entries][long max sequence]
+    // [int value file count][long magic], preceded by the ids of the value files (long each)
+    private static final int FOOTER_SIZE = 41;
+    private static final long MAGIC = 0x53535441424C4532L; // "SSTABLE2"
+
+    // Cache key of the table's blocks
+    private final long id;
     private final Path filePath;
 
-    // Sparse idx: key -> offset in file
-    private final TreeMap<String, Long> index;
+    // Resident idx: first key of each block -> block position, or of each index partition if partitioned
+    private final BlockIndex index;
+    private final boolean partitioned;
+    private final long fileSize;
     private final long size;
+    private final BlockCache blockCache;
+    private final long maxSequence;
+    private final long[] valueFiles; // Value log files the table points into
+    private volatile ValueLog valueLog; // Told when the table is first referenced and when it is released
+
+    // Shared by readers, opened lazily under channelLock
+    private volatile FileChannel channel;
+    private final ReentrantLock channelLock = new ReentrantLock();
+
+    // Number of versions referencing this table, the file is deleted when it drops to 0
+    private final AtomicInteger refs = new AtomicInteger();
+
+    // Reads that went to the file (blocks and index partitions missing from the cache)
+    private final LongAdder diskReads = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
 
 
     /**
      * Private constructor.
      *
-     * @param filePath The path to the SSTable file.
-     * @param index    The index.
-     * @param size     The number of entries.
+     * @param id         The table id.
+     * @param filePath   The path to the SSTable file.
+     * @param index       The resident index.
+     * @param partitioned Whether the resident index points to index partitions.
+     * @param fileSize    The size of the file.
+     * @param size        The number of entries.
+     * @param maxSequence The highest sequence number stored.
+     * @param valueFiles  The value log files the table points into.
+     * @param blockCache  The block cache, or null.
      */
-    private SSTable(Path filePath, TreeMap<String, Long> index, long size){
+    private SSTable(long id, Path filePath, BlockIndex index, boolean partitioned, long fileSize, long size,
+                    long maxSequence, long[] valueFiles, BlockCache blockCache){
+        this.id = id;
         this.filePath = filePath;
         this.index = index;
+        this.partitioned = partitioned;
+        this.fileSize = fileSize;
         this.size = size;
+        this.maxSequence = maxSequence;
+        this.valueFiles = valueFiles;
+        this.blockCache = blockCache;
+    }
+
+    /**
+     * Opens an SSTable written earlier, reading only its footer and resident index.
+     *
+     * @param filePath The table file.
+     * @param options  The block cache to read through; the other settings come from the file.
+     * @return The table.
+     * @throws IOException If the file is not a complete SSTable or cannot be read.
+     */
+    public static SSTable open(Path filePath, SSTableOptions options) throws IOException {
+        BlockIndex index;
+        boolean partitioned;
+        long fileSize;
+        long size;
+        long maxSequence;
+        long[] valueFiles;
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            fileSize = channel.size();
+            if (fileSize < FOOTER_SIZE || readFully(channel, fileSize - 8, 8).getLong() != MAGIC) {
+                throw new IOException("Not an SSTable, or truncated: " + filePath);
+            }
+
+            ByteBuffer footer = readFully(channel, fileSize - FOOTER_SIZE, FOOTER_SIZE);
+            long indexOffset = footer.getLong();
+            int indexLength = footer.getInt();
+            partitioned = footer.get() != 0;
+            size = footer.getLong();
+            maxSequence = footer.getLong();
+            int valueFileCount = footer.getInt();
+            if (indexOffset < 0 || indexLength < 0 || valueFileCount < 0
+                    || indexOffset + indexLength + 8L * valueFileCount + FOOTER_SIZE != fileSize) {
+                throw new IOException("Corrupt SSTable footer: " + filePath);
+            }
+            index = new BlockIndex(readFully(channel, indexOffset, indexLength).array());
+            valueFiles = new long[valueFileCount];
+            readFully(channel, indexOffset + indexLength, 8 * valueFileCount).asLongBuffer().get(valueFiles);
+        }
+
+        return new SSTable(FILE_COUNTER.incrementAndGet(), filePath, index, partitioned, fileSize, size,
+                maxSequence, valueFiles, options.getBlockCache());
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Truncated SSTable");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @return The highest sequence number stored in the table.
+     */
+    public long getMaxSequence() {
+        return maxSequence;
     }
 
     /**
@@ -49,96 +163,666 @@ public class SSTable {
         return filePath;
     }
 
+    /**
+     * Returns the size of the table on disk, after compression.
+     *
+     * @return The size in bytes.
+     */
+    public long getDiskSize() {
+        return fileSize;
+    }
+
+    /**
+     * Returns the heap used by the resident part of the index. Index partitions are read
+     * through the block cache like data blocks.
+     *
+     * @return The size in bytes.
+     */
+    public long getIndexMemoryUsage() {
+        return index.memoryUsage();
+    }
+
+    /**
+     * @return The number of reads from the file, i.e. blocks and index partitions not cached.
+     */
+    public long getDiskReads() {
+        return diskReads.sum();
+    }
+
+    /**
+     * @return The number of bytes read from the file.
+     */
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    /**
+     * @return The ids of the value log files the table points into.
+     */
+    long[] getValueFiles() {
+        return valueFiles.clone();
+    }
+
+    /**
+     * Registers the value log to tell when the table starts and stops pointing into its files.
+     * Must be called before the table is referenced by a version.
+     *
+     * @param valueLog The tree's value log.
+     */
+    void setValueLog(ValueLog valueLog) {
+        this.valueLog = valueLog;
+    }
+
+    /**
+     * Adds a reference from a version.
+     */
+    void ref() {
+        if (refs.incrementAndGet() == 1 && valueLog != null && valueFiles.length > 0) {
+            valueLog.retain(valueFiles);
+        }
+    }
+
+    /**
+     * Drops a reference from a version, deleting the file once it is no longer referenced.
+     *
+     * @throws IOException If the file cannot be deleted.
+     */
+    void unref() throws IOException {
+        if (refs.decrementAndGet() == 0) {
+            channelLock.lock();
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+            } finally {
+                channelLock.unlock();
+            }
+            Files.deleteIfExists(filePath);
+            if (valueLog != null && valueFiles.length > 0) {
+                valueLog.release(valueFiles);
+            }
+        }
+    }
+
 
     /**
-     * Creates an SSTable from the given MemTable.
+     * Creates an SSTable with the default options: 4 KB uncompressed blocks, no cache.
      *
-     * @param memTable  The MemTable data.
+     * @param entries   The entries to write.
      * @param directory The directory to store the SSTable.
      * @return The created SSTable instance.
      * @throws IOException If an I/O error occurs.
      */
-    public static SSTable createFromMemTable(TreeMap<String, String> memTable, String directory) throws IOException {
+    public static SSTable create(Iterator<Entry> entries, String directory) throws IOException {
+        return create(entries, directory, new SSTableOptions());
+    }
+
+    /**
+     * Creates an SSTable from entries sorted by key, newest version first within a key.
+     * Entries are packed into prefix-compressed blocks (see {@link BlockBuilder}), each stored on disk as
+     * [codec id][varint uncompressed length][payload]. A block that does not shrink is stored
+     * uncompressed. The block index follows the data (see {@link BlockIndex}): either one
+     * resident index, or partitions of {@code indexPartitionSize} blocks plus a resident index
+     * of the partitions. The ids of the value log files the entries point into follow, then a
+     * fixed-size footer locates the resident index. The table is written under a temporary
+     * name and renamed once complete, so a ".sst" file is never a table cut short.
+     *
+     * @param entries   The entries to write.
+     * @param directory The directory to store the SSTable.
+     * @param options   Block size, codec and block cache.
+     * @return The created SSTable instance.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static SSTable create(Iterator<Entry> entries, String directory, SSTableOptions options) throws IOException {
+        return create(entries, directory, options, false);
+    }
+
+    /**
+     * Creates an SSTable, writing it the way compaction does if asked: through a buffer of
+     * {@link SSTableOptions#getCompactionReadahead()} bytes, bypassing the page cache if
+     * {@link SSTableOptions#isDirectCompactionIo()} is set.
+     *
+     * @param entries    The entries to write.
+     * @param directory  The directory to store the SSTable.
+     * @param options    Block size, codec, block cache and compaction I/O settings.
+     * @param compaction Whether the table is a compaction output.
+     * @return The created SSTable instance.
+     * @throws IOException If an I/O error occurs.
+     */
+    static SSTable create(Iterator<Entry> entries, String directory, SSTableOptions options,
+                          boolean compaction) throws IOException {
+        return create(entries, directory, options, compaction, null);
+    }
+
+    /**
+     * Creates an SSTable and closes {@code beforePublish} once the table is written but before
+     * it is renamed into place, so files the table depends on (its value files) are complete
+     * whenever the table exists.
+     *
+     * @param entries       The entries to write.
+     * @param directory     The directory to store the SSTable.
+     * @param options       Block size, codec, block cache and compaction I/O settings.
+     * @param compaction    Whether the table is a compaction output.
+     * @param beforePublish Closed before the table is published, or null.
+     * @return The created SSTable instance.
+     * @throws IOException If an I/O error occurs.
+     */
+    static SSTable create(Iterator<Entry> entries, String directory, SSTableOptions options,
+                          boolean compaction, Closeable beforePublish) throws IOException {
         //Generates unique filename with timestamp
-        String filename = "sstable_" + System.currentTimeMillis() + ".sst";
+        long id = FILE_COUNTER.incrementAndGet();
+        String filename = "sstable_" + System.currentTimeMillis() + "_" + id + ".sst";
         Path sstablePath = Paths.get(directory, filename);
+        Path tempPath = Paths.get(directory, filename + TEMP_SUFFIX);
         Files.createDirectories(sstablePath.getParent());
 
-        TreeMap<String, Long> index = new TreeMap<>();
+        int partitionSize = options.getIndexPartitionSize();
+        BlockIndex.Builder blockIndex = new BlockIndex.Builder();
+        List<byte[]> partitions = new ArrayList<>();
+        List<String> partitionKeys = new ArrayList<>();
+        BlockIndex index;
         long size = 0;
-        // Adjustable for sparsity
-        final int INDEX_INTERVAL = 10;
-
-        try( BufferedWriter writer = Files.newBufferedWriter(sstablePath, StandardCharsets.UTF_8)) {
-            long offset = 0;
-            int count = 0;
-            for(Map.Entry<String, String> entry : memTable.entrySet()){
-                String key = entry.getKey();
-                String value = entry.getValue();
-
-                if(value == null) {
-                    value = "NULL";
+        long maxSequence = 0;
+        TreeSet<Long> valueFiles = new TreeSet<>();
+        long offset = 0;
+
+        OutputStream file = compaction
+                ? CompactionIo.output(tempPath, options.getCompactionReadahead(), options.isDirectCompactionIo())
+                : new BufferedOutputStream(Files.newOutputStream(tempPath), 1 << 16);
+        try (OutputStream out = file) {
+            BlockBuilder block = new BlockBuilder(options.getRestartInterval());
+            String previousKey = null;
+            while (entries.hasNext()) {
+                Entry entry = entries.next();
+                if (entry.value == null) {
+                    entry = new Entry(entry.key, entry.sequence, "NULL");
+                }
+
+                // Only cut between keys, so a seek never skips older versions
+                if (block.size() >= options.getBlockSize() && !entry.key.equals(previousKey)) {
+                    offset += writeBlock(out, block, options.getCompression());
+                    block.reset();
+                }
+                if (block.count() == 0) {
+                    if (partitionSize > 0 && blockIndex.count() == partitionSize) {
+                        partitions.add(blockIndex.finish(offset));
+                        blockIndex.reset();
+                    }
+                    if (blockIndex.count() == 0) {
+                        partitionKeys.add(entry.key);
+                    }
+                    blockIndex.add(entry.key, offset);
                 }
 
-                String line = key + " " + value;
-                writer.write(line);
-                writer.newLine();
+                block.add(entry);
                 size++;
+                maxSequence = Math.max(maxSequence, entry.sequence);
+                if (StoredValue.isPointer(entry.value)) {
+                    valueFiles.add(ValueLog.file(StoredValue.value(entry.value)));
+                }
+                previousKey = entry.key;
+            }
+            if (block.count() > 0) {
+                offset += writeBlock(out, block, options.getCompression());
+            }
 
-                if(count % INDEX_INTERVAL == 0) {
-                    index.put(key, offset);
+            if (partitionSize > 0) {
+                if (blockIndex.count() > 0) {
+                    partitions.add(blockIndex.finish(offset));
+                }
+                BlockIndex.Builder topIndex = new BlockIndex.Builder();
+                for (int p = 0; p < partitions.size(); p++) {
+                    topIndex.add(partitionKeys.get(p), offset);
+                    out.write(partitions.get(p));
+                    offset += partitions.get(p).length;
                 }
+                index = new BlockIndex(topIndex.finish(offset));
+            } else {
+                index = new BlockIndex(blockIndex.finish(offset));
+            }
 
-                offset += line.getBytes(StandardCharsets.UTF_8).length + System.lineSeparator().getBytes().length;
-                count++;
+            byte[] resident = index.encoded();
+            DataOutputStream footer = new DataOutputStream(out);
+            footer.write(resident);
+            for (long valueFile : valueFiles) {
+                footer.writeLong(valueFile);
+            }
+            footer.writeLong(offset);
+            footer.writeInt(resident.length);
+            footer.writeBoolean(partitionSize > 0);
+            footer.writeLong(size);
+            footer.writeLong(maxSequence);
+            footer.writeInt(valueFiles.size());
+            footer.writeLong(MAGIC);
+            footer.flush();
+            offset += resident.length + 8L * valueFiles.size() + FOOTER_SIZE;
+            if (beforePublish != null) {
+                beforePublish.close();
             }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempPath);
+            throw e;
         }
+        Files.move(tempPath, sstablePath, StandardCopyOption.ATOMIC_MOVE);
 
-        return new SSTable(sstablePath, index, size);
+        long[] files = valueFiles.stream().mapToLong(Long::longValue).toArray();
+        return new SSTable(id, sstablePath, index, partitionSize > 0, offset, size, maxSequence, files, options.getBlockCache());
+    }
+
+    /**
+     * Compresses and writes one block.
+     *
+     * @return The number of bytes written.
+     */
+    private static int writeBlock(OutputStream out, BlockBuilder block, CompressionCodec codec) throws IOException {
+        int blockSize = block.finish();
+        byte[] payload = codec.compress(block.buffer(), 0, blockSize);
+        if (payload.length >= blockSize && codec != CompressionCodec.NONE) {
+            codec = CompressionCodec.NONE;
+            payload = codec.compress(block.buffer(), 0, blockSize);
+        }
+
+        byte[] header = new byte[11];
+        header[0] = codec.id();
+        int headerLength = BlockBuilder.writeVarLong(header, 1, blockSize);
+        out.write(header, 0, headerLength);
+        out.write(payload);
+        return headerLength + payload.length;
     }
 
 
     /**
-     * Searches for a key in the SSTable.
+     * Searches for the latest version of a key in the SSTable.
      *
      * @param key The key to search for.
      * @return The associated value, or null if not found or marked as deleted.
      * @throws IOException If an I/O error occurs.
      */
     public String search(String key) throws IOException {
-        String seekKey = index.floorKey(key); //Closest key smaller than the key in the index
+        LookupResult result = lookup(key, Long.MAX_VALUE);
+        ValueLog log = valueLog;
+        return result.getLocation() != null && log != null ? log.read(result.getLocation()) : result.getValue();
+    }
 
-        long offset = 0;
-        if(seekKey != null) {
-            offset = index.get(seekKey);
+    /**
+     * Searches for the newest version of a key written at or before a sequence number.
+     *
+     * @param key      The key to search for.
+     * @param sequence The snapshot sequence number.
+     * @return FOUND with the value, DELETED if that version is a tombstone, MERGE if it is a
+     * merge operand, or ABSENT.
+     * @throws IOException If an I/O error occurs.
+     */
+    public LookupResult lookup(String key, long sequence) throws IOException {
+        long[] block = findBlock(key); //Block whose first key is closest below the key
+
+        if(block == null) {
+            return LookupResult.ABSENT; // Smaller than the first key
+        }
+        return readBlock(block[0], block[1], true).lookup(key, sequence);
+    }
+
+    /**
+     * Looks up many keys at once. Keys are grouped by block and every block holding
+     * at least one of them is read (or taken from the cache) exactly once.
+     *
+     * @param sortedKeys The keys to look up, ascending and without duplicates.
+     * @param sequence   The snapshot sequence number.
+     * @param executor   Runs block reads in parallel, or null to read them in the caller.
+     * @return The result of every key found or deleted here; absent keys are not in the map.
+     * @throws IOException If an I/O error occurs.
+     */
+    public Map<String, LookupResult> lookup(List<String> sortedKeys, long sequence, Executor executor) throws IOException {
+        Map<String, LookupResult> results = new HashMap<>();
+        if (sortedKeys.isEmpty()) {
+            return results;
         }
 
-        try (RandomAccessFile raf = new RandomAccessFile(filePath.toFile(), "r")) {
-            raf.seek(offset);
-            String line;
+        // Group consecutive keys that fall into the same block
+        List<long[]> blocks = new ArrayList<>();
+        List<List<String>> groups = new ArrayList<>();
+        for (String key : sortedKeys) {
+            long[] block = findBlock(key);
+            if (block == null) {
+                continue; // Sorts before the first key of the table
+            }
+            if (blocks.isEmpty() || blocks.get(blocks.size() - 1)[0] != block[0]) {
+                blocks.add(block);
+                groups.add(new ArrayList<>());
+            }
+            groups.get(groups.size() - 1).add(key);
+        }
+        if (groups.isEmpty()) {
+            return results;
+        }
 
-            while((line = raf.readLine()) != null) {
-                // Charset name: ISO-8859-1
-                String decodedLine = new String(line.getBytes("ISO-8859-1"), StandardCharsets.UTF_8);
-                String[] parts = decodedLine.split(" ", 2);
-                if (parts.length < 1) {
-                    continue;
+        if (executor == null || groups.size() == 1) {
+            for (int g = 0; g < groups.size(); g++) {
+                searchBlock(blocks.get(g), groups.get(g), sequence, results);
+            }
+            return results;
+        }
+
+        List<CompletableFuture<Map<String, LookupResult>>> reads = new ArrayList<>();
+        for (int g = 0; g < groups.size(); g++) {
+            long[] block = blocks.get(g);
+            List<String> group = groups.get(g);
+            reads.add(CompletableFuture.supplyAsync(() -> {
+                Map<String, LookupResult> found = new HashMap<>();
+                try {
+                    searchBlock(block, group, sequence, found);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
                 }
+                return found;
+            }, executor));
+        }
+        try {
+            for (CompletableFuture<Map<String, LookupResult>> read : reads) {
+                results.putAll(read.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+        return results;
+    }
 
-                String currentKey = parts[0];
+    /**
+     * Resolves the given keys against one block, in a single pass.
+     */
+    private void searchBlock(long[] block, List<String> keys, long sequence,
+                             Map<String, LookupResult> results) throws IOException {
+        Block.Cursor cursor = readBlock(block[0], block[1], true).cursor();
+        int k = 0;
+        String pending = null; // Key whose visible version was already decided
+        while (cursor.next()) {
+            String key = cursor.key();
 
-                if (currentKey.equals(key)) {
-                    if (parts.length == 1 || parts[1].equals("NULL")){
-                        return null;
-                    }
+            // Skip keys that sort before this entry, they are not in the table
+            while (k < keys.size() && keys.get(k).compareTo(key) < 0) {
+                k++;
+            }
+            if (k == keys.size()) {
+                break;
+            }
+
+            if (key.equals(keys.get(k)) && !key.equals(pending) && cursor.sequence() <= sequence) {
+                results.put(key, LookupResult.of(cursor.value(), cursor.sequence()));
+                pending = key;
+            }
+        }
+    }
+
+    /**
+     * Locates the data block that may hold a key.
+     *
+     * @param key The key.
+     * @return The start and end offsets of the block, or null if the key sorts before the table.
+     * @throws IOException If an index partition cannot be read.
+     */
+    private long[] findBlock(String key) throws IOException {
+        BlockIndex blocks = index;
+        if (partitioned) {
+            int partition = index.floor(key);
+            if (partition < 0) {
+                return null;
+            }
+            blocks = partition(partition);
+        }
+        int i = blocks.floor(key);
+        return i < 0 ? null : new long[]{blocks.start(i), blocks.end(i)};
+    }
+
+    /**
+     * @return The number of index partitions, 1 if the index is not partitioned.
+     */
+    private int partitionCount() {
+        return partitioned ? index.size() : 1;
+    }
+
+    /**
+     * Returns the index of the data blocks covered by a partition, reading it through the
+     * block cache if the index is partitioned.
+     *
+     * @param p The partition position.
+     * @return The index of its blocks.
+     * @throws IOException If an I/O error occurs.
+     */
+    private BlockIndex partition(int p) throws IOException {
+        if (!partitioned) {
+            return index;
+        }
+        long start = index.start(p);
+        byte[] data = blockCache == null ? null : blockCache.get(id, start);
+        if (data == null) {
+            data = read(start, index.end(p));
+            if (blockCache != null) {
+                blockCache.put(id, start, data);
+            }
+        }
+        return new BlockIndex(data);
+    }
+
+    /**
+     * Reads and decompresses a block, going through the block cache when there is one.
+     *
+     * @param start     The offset of the block.
+     * @param end       The offset where the block ends.
+     * @param fillCache Whether to cache the block after a miss; scans pass false so they do
+     *                  not evict the working set.
+     * @return The block.
+     * @throws IOException If an I/O error occurs.
+     */
+    private Block readBlock(long start, long end, boolean fillCache) throws IOException {
+        if (blockCache != null) {
+            OperationTrace trace = OperationTrace.current();
+            long waitStart = trace == null ? 0 : System.nanoTime();
+            byte[] cached = blockCache.get(id, start);
+            if (trace != null) {
+                trace.cacheAccess(cached != null, System.nanoTime() - waitStart);
+            }
+            if (cached != null) {
+                return new Block(cached);
+            }
+        }
+
+        byte[] data = decompress(read(start, end));
+        if (blockCache != null && fillCache) {
+            blockCache.put(id, start, data);
+        }
+        return new Block(data);
+    }
+
+    /**
+     * Decodes a block as stored on disk.
+     *
+     * @param raw [codec id][varint uncompressed length][payload]
+     * @return The uncompressed block.
+     */
+    private static byte[] decompress(byte[] raw) {
+        CompressionCodec codec = CompressionCodec.byId(raw[0]);
+        int[] pos = {1};
+        int uncompressedLength = (int) Block.readVarLong(raw, pos);
+        return codec.decompress(raw, pos[0], raw.length - pos[0], uncompressedLength);
+    }
+
+    /**
+     * Reads a byte range of the file with positional reads.
+     */
+    private byte[] read(long start, long end) throws IOException {
+        diskReads.increment();
+        bytesRead.add(end - start);
+        OperationTrace.diskRead(end - start);
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+        FileChannel channel = channel();
+        long position = start;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Truncated block at " + start + " in " + filePath);
+            }
+            position += read;
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Returns the channel shared by all readers of the table, opening it on first use.
+     * Positional reads do not move the channel position, so concurrent readers need no lock.
+     */
+    private FileChannel channel() throws IOException {
+        FileChannel open = channel;
+        if (open != null && open.isOpen()) {
+            return open;
+        }
+        channelLock.lock();
+        try {
+            if (channel == null || !channel.isOpen()) {
+                channel = FileChannel.open(filePath, StandardOpenOption.READ);
+            }
+            return channel;
+        } finally {
+            channelLock.unlock();
+        }
+    }
+
+    /**
+     * Opens a sequential scanner over all entries, in file order. Blocks read by the scanner
+     * are not added to the block cache.
+     *
+     * @return The scanner, to be closed by the caller.
+     * @throws IOException If an I/O error occurs.
+     */
+    public Scanner scanner() throws IOException {
+        return new Scanner(null, null);
+    }
+
+    /**
+     * Opens a sequential scanner over all entries for compaction. It reads through a private
+     * channel in windows of {@link SSTableOptions#getCompactionReadahead()} bytes, opened with
+     * direct I/O if {@link SSTableOptions#isDirectCompactionIo()} is set and supported, and
+     * neither reads nor fills the block cache.
+     *
+     * @param options The compaction I/O settings.
+     * @return The scanner, to be closed by the caller.
+     * @throws IOException If an I/O error occurs.
+     */
+    Scanner compactionScanner(SSTableOptions options) throws IOException {
+        CompactionIo.Reader reader = CompactionIo.reader(filePath, options.getCompactionReadahead(),
+                options.isDirectCompactionIo());
+        try {
+            return new Scanner(null, reader);
+        } catch (IOException | RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+    }
 
-                    return parts[1];
-                } else if (currentKey.compareTo(key) > 0){
-                    break; // Key not found
+    /**
+     * Opens a sequential scanner over the entries at or after a key. Seeks through the
+     * index, so only the blocks from the one holding the key onwards are read.
+     *
+     * @param fromKey The first key, or null to start at the beginning.
+     * @return The scanner, to be closed by the caller.
+     * @throws IOException If an I/O error occurs.
+     */
+    public Scanner scanner(String fromKey) throws IOException {
+        return new Scanner(fromKey, null);
+    }
+
+    /**
+     * One version of a key: "NULL" as value marks a deletion.
+     */
+    public static final class Entry {
+        public final String key;
+        public final long sequence;
+        public final String value;
+
+        public Entry(String key, long sequence, String value) {
+            this.key = key;
+            this.sequence = sequence;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Sequential reader over the entries of an SSTable, one block at a time.
+     */
+    public final class Scanner implements Iterator<Entry>, Closeable {
+        private int partition = -1;
+        private BlockIndex blocks;
+        private int block;
+        private Block.Cursor cursor;
+        private Entry next;
+        private final CompactionIo.Reader reader; // Null to read through the table's channel and cache
+
+        private Scanner(String fromKey, CompactionIo.Reader reader) throws IOException {
+            this.reader = reader;
+            if (fromKey != null && index.size() > 0) {
+                // Position just before the block that may hold the key, then skip smaller keys
+                partition = partitioned ? Math.max(0, index.floor(fromKey)) : 0;
+                blocks = partition(partition);
+                block = Math.max(0, blocks.floor(fromKey));
+            }
+            advance();
+            while (fromKey != null && next != null && next.key.compareTo(fromKey) < 0) {
+                advance();
+            }
+        }
+
+        private void advance() throws IOException {
+            next = null;
+            while (cursor == null || !cursor.next()) {
+                while (blocks == null || block == blocks.size()) {
+                    if (++partition >= partitionCount()) {
+                        return;
+                    }
+                    blocks = partition(partition);
+                    block = 0;
                 }
+                cursor = reader == null
+                        ? readBlock(blocks.start(block), blocks.end(block), false).cursor()
+                        : new Block(decompress(reader.read(blocks.start(block), blocks.end(block)))).cursor();
+                block++;
+            }
+            next = cursor.entry();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Entry next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Entry current = next;
+            try {
+                advance();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
+            return current;
         }
 
-        return null;
+        @Override
+        public void close() {
+            cursor = null;
+            next = null;
+            if (reader != null) {
+                diskReads.add(reader.getReads());
+                bytesRead.add(reader.getBytesRead());
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    // Read-only channel, nothing to lose
+                }
+            }
+        }
     }
 }
@@ -0,0 +1,214 @@
+// Settings used when writing and reading SSTables
+
+
+/**
+ * Settings for the SSTables an LSM Tree writes: block size, compression codec and the block
+ * cache shared by readers.
+ */
+public class SSTableOptions {
+
+    private int blockSize = 4096;
+    private int restartInterval = 16;
+    private int indexPartitionSize = 0;
+    private CompressionCodec compression = CompressionCodec.NONE;
+    private BlockCache blockCache = null;
+    private int compactionReadahead = 1 << 20;
+    private boolean directCompactionIo = false;
+    private int valueSeparationThreshold = 0;
+    private double valueLogGcRatio = 0.5;
+
+    /**
+     * @return Target uncompressed block size in bytes.
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Sets the target uncompressed block size. A block only ends between two keys, so all
+     * versions of a key live in the same block.
+     *
+     * @param blockSize The size in bytes.
+     * @return These options.
+     */
+    public SSTableOptions setBlockSize(int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        }
+        this.blockSize = blockSize;
+        return this;
+    }
+
+    /**
+     * @return Number of entries between two restart points of a block.
+     */
+    public int getRestartInterval() {
+        return restartInterval;
+    }
+
+    /**
+     * Sets how often a block stores a key in full instead of as a delta to the previous key.
+     * Lookups binary search the restart points and then scan at most this many entries, so
+     * a larger interval saves space at the cost of longer scans.
+     *
+     * @param restartInterval The number of entries, 1 to disable prefix compression.
+     * @return These options.
+     */
+    public SSTableOptions setRestartInterval(int restartInterval) {
+        if (restartInterval <= 0) {
+            throw new IllegalArgumentException("Restart interval must be positive: " + restartInterval);
+        }
+        this.restartInterval = restartInterval;
+        return this;
+    }
+
+    /**
+     * @return Number of data blocks per index partition, 0 if the index is fully resident.
+     */
+    public int getIndexPartitionSize() {
+        return indexPartitionSize;
+    }
+
+    /**
+     * Sets the index layout of new tables. With 0 the whole block index (one entry per data
+     * block) stays on the heap. Otherwise it is written in partitions of this many entries
+     * and only the first key of each partition stays on the heap; partitions are read through
+     * the block cache, so a cold lookup costs one extra read.
+     *
+     * @param indexPartitionSize The number of blocks per partition, or 0.
+     * @return These options.
+     */
+    public SSTableOptions setIndexPartitionSize(int indexPartitionSize) {
+        if (indexPartitionSize < 0) {
+            throw new IllegalArgumentException("Index partition size must not be negative: " + indexPartitionSize);
+        }
+        this.indexPartitionSize = indexPartitionSize;
+        return this;
+    }
+
+    /**
+     * @return The codec used for new tables.
+     */
+    public CompressionCodec getCompression() {
+        return compression;
+    }
+
+    /**
+     * Sets the codec used for new tables. Existing tables keep the codec they were written with.
+     *
+     * @param compression The codec.
+     * @return These options.
+     */
+    public SSTableOptions setCompression(CompressionCodec compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    /**
+     * @return The cache of decompressed blocks, or null if blocks are read on every lookup.
+     */
+    public BlockCache getBlockCache() {
+        return blockCache;
+    }
+
+    /**
+     * Sets the cache of decompressed blocks.
+     *
+     * @param blockCache The cache, or null to disable caching.
+     * @return These options.
+     */
+    public SSTableOptions setBlockCache(BlockCache blockCache) {
+        this.blockCache = blockCache;
+        return this;
+    }
+
+    /**
+     * @return Size of the reads of compaction inputs and of the writes of its output, in bytes.
+     */
+    public int getCompactionReadahead() {
+        return compactionReadahead;
+    }
+
+    /**
+     * Sets how much compaction reads and writes at once. Compaction streams whole tables, so
+     * large transfers cut the number of system calls and, with direct I/O, of device requests.
+     *
+     * @param compactionReadahead The size in bytes.
+     * @return These options.
+     */
+    public SSTableOptions setCompactionReadahead(int compactionReadahead) {
+        if (compactionReadahead <= 0) {
+            throw new IllegalArgumentException("Compaction readahead must be positive: " + compactionReadahead);
+        }
+        this.compactionReadahead = compactionReadahead;
+        return this;
+    }
+
+    /**
+     * @return Whether compaction reads its inputs and writes its output with direct I/O.
+     */
+    public boolean isDirectCompactionIo() {
+        return directCompactionIo;
+    }
+
+    /**
+     * Sets whether compaction bypasses the OS page cache ({@code O_DIRECT}), so merging whole
+     * tables does not evict the pages of the foreground read set. Where the file system does
+     * not support direct I/O, compaction silently uses buffered I/O. Flushes and lookups are
+     * not affected.
+     *
+     * @param directCompactionIo True to use direct I/O.
+     * @return These options.
+     */
+    public SSTableOptions setDirectCompactionIo(boolean directCompactionIo) {
+        this.directCompactionIo = directCompactionIo;
+        return this;
+    }
+
+    /**
+     * @return Length in characters from which values are moved to the value log, 0 if never.
+     */
+    public int getValueSeparationThreshold() {
+        return valueSeparationThreshold;
+    }
+
+    /**
+     * Sets the length from which flushes and compactions move values out of the SSTables into
+     * the tree's value log, leaving only their location in the table. Compaction then copies
+     * the location instead of the value, which cuts write amplification for large values at
+     * the cost of one more read per lookup of a separated value.
+     *
+     * @param valueSeparationThreshold The length in characters, or 0 to keep values inline.
+     * @return These options.
+     */
+    public SSTableOptions setValueSeparationThreshold(int valueSeparationThreshold) {
+        if (valueSeparationThreshold < 0) {
+            throw new IllegalArgumentException("Value separation threshold must not be negative: " + valueSeparationThreshold);
+        }
+        this.valueSeparationThreshold = valueSeparationThreshold;
+        return this;
+    }
+
+    /**
+     * @return Garbage fraction from which compaction relocates the live values of a value file.
+     */
+    public double getValueLogGcRatio() {
+        return valueLogGcRatio;
+    }
+
+    /**
+     * Sets how much of a value file must be garbage (values overwritten, deleted or expired)
+     * before compaction copies its live values to a new file so it can be deleted. Lower
+     * ratios reclaim space sooner and rewrite more live data.
+     *
+     * @param valueLogGcRatio The fraction, above 0 and at most 1.
+     * @return These options.
+     */
+    public SSTableOptions setValueLogGcRatio(double valueLogGcRatio) {
+        if (!(valueLogGcRatio > 0 && valueLogGcRatio <= 1)) {
+            throw new IllegalArgumentException("Value log GC ratio must be in (0, 1]: " + valueLogGcRatio);
+        }
+        this.valueLogGcRatio = valueLogGcRatio;
+        return this;
+    }
+}
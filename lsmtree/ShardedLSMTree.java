@@ -0,0 +1,301 @@
+// Partitions keys across independent LSM Trees
+
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Spreads keys over N independent {@link LSMTree} shards, each with its own WAL, MemTable and
+ * SSTable directory, so writers to different shards never contend. Keys are assigned by hash,
+ * or by range when split keys are given.
+ *
+ * Every operation on a single key is as consistent as on one LSMTree. Operations spanning
+ * shards (multiGet, scan) read each shard at its own latest state, not at one global point.
+ */
+public class ShardedLSMTree {
+
+    private final LSMTree[] shards;
+    // Range partitioning: shard i holds [splitKeys[i - 1], splitKeys[i]); null for hash partitioning
+    private final List<String> splitKeys;
+
+    /**
+     * Creates a hash-partitioned tree.
+     *
+     * @param shardCount   The number of shards.
+     * @param memTableSize The maximum number of entries in each shard's MemTable.
+     * @param directory    The directory holding one sub-directory per shard.
+     * @throws IOException If an I/O error occurs.
+     */
+    public ShardedLSMTree(int shardCount, int memTableSize, String directory) throws IOException {
+        this(shardCount, null, memTableSize, directory);
+    }
+
+    /**
+     * Creates a range-partitioned tree with one more shard than split keys.
+     *
+     * @param splitKeys    The first key of every shard but the first, strictly ascending.
+     * @param memTableSize The maximum number of entries in each shard's MemTable.
+     * @param directory    The directory holding one sub-directory per shard.
+     * @throws IOException If an I/O error occurs.
+     */
+    public ShardedLSMTree(List<String> splitKeys, int memTableSize, String directory) throws IOException {
+        this(splitKeys.size() + 1, new ArrayList<>(splitKeys), memTableSize, directory);
+        for (int i = 1; i < splitKeys.size(); i++) {
+            if (splitKeys.get(i - 1).compareTo(splitKeys.get(i)) >= 0) {
+                throw new IllegalArgumentException("Split keys must be strictly ascending: " + splitKeys);
+            }
+        }
+    }
+
+    private ShardedLSMTree(int shardCount, List<String> splitKeys, int memTableSize, String directory) throws IOException {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Shard count must be positive: " + shardCount);
+        }
+        this.splitKeys = splitKeys;
+        this.shards = new LSMTree[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            String shardDirectory = Paths.get(directory, "shard-" + i).toString();
+            shards[i] = new LSMTree(memTableSize, Paths.get(shardDirectory, "wal.log").toString(),
+                    Paths.get(shardDirectory, "sstables").toString());
+        }
+    }
+
+    /**
+     * @return The number of shards.
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Returns the shard owning a key.
+     *
+     * @param key The key.
+     * @return The shard.
+     */
+    public LSMTree getShard(String key) {
+        return shards[shardIndex(key)];
+    }
+
+    private int shardIndex(String key) {
+        if (splitKeys == null) {
+            int h = key.hashCode();
+            return Math.floorMod(h ^ (h >>> 16), shards.length);
+        }
+        int pos = Collections.binarySearch(splitKeys, key);
+        return pos >= 0 ? pos + 1 : -pos - 1;
+    }
+
+    /**
+     * Sets the SSTable settings of every shard.
+     *
+     * @param options The options.
+     */
+    public void setTableOptions(SSTableOptions options) {
+        for (LSMTree shard : shards) {
+            shard.setTableOptions(options);
+        }
+    }
+
+    /**
+     * Sets the compaction filter of every shard.
+     *
+     * @param filter The filter, or null.
+     */
+    public void setCompactionFilter(CompactionFilter filter) {
+        for (LSMTree shard : shards) {
+            shard.setCompactionFilter(filter);
+        }
+    }
+
+    /**
+     * Sets the merge operator of every shard.
+     *
+     * @param mergeOperator The operator.
+     */
+    public void setMergeOperator(MergeOperator mergeOperator) {
+        for (LSMTree shard : shards) {
+            shard.setMergeOperator(mergeOperator);
+        }
+    }
+
+    /**
+     * Inserts or updates a key-value pair in its shard.
+     *
+     * @param key   The key to insert/update.
+     * @param value The value associated with the key.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void put(String key, String value) throws IOException {
+        getShard(key).put(key, value);
+    }
+
+    /**
+     * Inserts or updates a key-value pair in its shard, expiring after a time to live.
+     *
+     * @param key       The key to insert/update.
+     * @param value     The value associated with the key.
+     * @param ttlMillis The time to live in milliseconds.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void put(String key, String value, long ttlMillis) throws IOException {
+        getShard(key).put(key, value, ttlMillis);
+    }
+
+    /**
+     * Applies a merge operand in the key's shard (see {@link LSMTree#merge(String, String)}).
+     *
+     * @param key     The key.
+     * @param operand The operand.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void merge(String key, String operand) throws IOException {
+        getShard(key).merge(key, operand);
+    }
+
+    /**
+     * Deletes a key from its shard.
+     *
+     * @param key The key to delete.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void delete(String key) throws IOException {
+        getShard(key).delete(key);
+    }
+
+    /**
+     * Searches for a key in its shard.
+     *
+     * @param key The key to search for.
+     * @return The associated value, or null if not found or deleted.
+     * @throws IOException If an I/O error occurs.
+     */
+    public String search(String key) throws IOException {
+        return getShard(key).search(key);
+    }
+
+    /**
+     * Looks up many keys, with one multiGet per shard involved.
+     *
+     * @param keys The keys to look up.
+     * @return The values of the keys found; missing or deleted keys are absent.
+     * @throws IOException If an I/O error occurs.
+     */
+    public Map<String, String> multiGet(Collection<String> keys) throws IOException {
+        List<List<String>> byShard = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            byShard.add(new ArrayList<>());
+        }
+        for (String key : keys) {
+            byShard.get(shardIndex(key)).add(key);
+        }
+
+        Map<String, String> results = new TreeMap<>();
+        for (int i = 0; i < shards.length; i++) {
+            if (!byShard.get(i).isEmpty()) {
+                results.putAll(shards[i].multiGet(byShard.get(i)));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Returns the live keys of a range with their values, in key order.
+     *
+     * @param startKey The first key (inclusive), or null to start at the smallest key.
+     * @param endKey   The end key (exclusive), or null for no upper bound.
+     * @return The keys and values.
+     * @throws IOException If an I/O error occurs.
+     */
+    public SortedMap<String, String> scan(String startKey, String endKey) throws IOException {
+        return scan(startKey, endKey, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns at most {@code limit} live keys of a range. With hash partitioning every shard
+     * is scanned and the results merged; with range partitioning only the shards overlapping
+     * the range are visited, in key order, stopping once the limit is reached.
+     *
+     * @param startKey The first key (inclusive), or null to start at the smallest key.
+     * @param endKey   The end key (exclusive), or null for no upper bound.
+     * @param limit    The maximum number of keys.
+     * @return The keys and values.
+     * @throws IOException If an I/O error occurs.
+     */
+    public SortedMap<String, String> scan(String startKey, String endKey, int limit) throws IOException {
+        TreeMap<String, String> results = new TreeMap<>();
+        if (splitKeys != null) {
+            int first = startKey == null ? 0 : shardIndex(startKey);
+            for (int i = first; i < shards.length && results.size() < limit; i++) {
+                if (endKey != null && i > 0 && splitKeys.get(i - 1).compareTo(endKey) >= 0) {
+                    break;
+                }
+                results.putAll(shards[i].scan(startKey, endKey, limit - results.size()));
+            }
+            return results;
+        }
+
+        for (LSMTree shard : shards) {
+            results.putAll(shard.scan(startKey, endKey, limit));
+        }
+        while (results.size() > limit) {
+            results.pollLastEntry();
+        }
+        return results;
+    }
+
+    /**
+     * Compacts every shard.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void compact() throws IOException {
+        for (LSMTree shard : shards) {
+            shard.compact();
+        }
+    }
+
+    /**
+     * Collects value log garbage in every shard (see {@link LSMTree#collectValueLog()}).
+     *
+     * @return The number of value files relocated.
+     * @throws IOException If an I/O error occurs.
+     */
+    public int collectValueLog() throws IOException {
+        int collected = 0;
+        for (LSMTree shard : shards) {
+            collected += shard.collectValueLog();
+        }
+        return collected;
+    }
+
+    /**
+     * Closes every shard.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void close() throws IOException {
+        IOException failure = null;
+        for (LSMTree shard : shards) {
+            try {
+                shard.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
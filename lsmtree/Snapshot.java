@@ -0,0 +1,38 @@
+// Point-in-time view of the LSM Tree
+
+
+/**
+ * A point-in-time view of an LSM Tree, identified by the last sequence number visible to it.
+ * While a snapshot is open, compaction keeps every version it can see.
+ */
+public class Snapshot implements AutoCloseable {
+
+    private final LSMTree tree;
+    private final long sequence;
+
+    /**
+     * @param tree     The tree the snapshot belongs to.
+     * @param sequence The last sequence number visible to the snapshot.
+     */
+    Snapshot(LSMTree tree, long sequence) {
+        this.tree = tree;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Returns the last sequence number visible to this snapshot.
+     *
+     * @return The sequence number.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Releases the snapshot, letting compaction drop the versions only it could see.
+     */
+    @Override
+    public void close() {
+        tree.releaseSnapshot(this);
+    }
+}
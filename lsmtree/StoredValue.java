@@ -0,0 +1,125 @@
+// Envelope of stored values: expiry times, value log pointers and merge operands
+
+
+/**
+ * Encodes what the tree stores about an entry besides its value inside the stored value, so
+ * none of it needs a change to the WAL, MemTable, SSTable or replication formats:
+ * {@code <marker><expires at millis><marker><payload>}. The marker tells the payload apart:
+ * the value itself, its location in the {@link ValueLog}, or a {@link MergeOperator} operand.
+ * Plain values without a TTL are stored as is, unless they start with a marker themselves;
+ * those are wrapped with an expiry of {@link #NEVER} so they cannot be misread.
+ */
+final class StoredValue {
+
+    static final long NEVER = 0;
+    private static final char MARKER = '\u0001';
+    private static final char POINTER = '\u0002';
+    private static final char OPERAND = '\u0003';
+
+    private StoredValue() {
+    }
+
+    /**
+     * Encodes a value with its expiry time.
+     *
+     * @param value     The value.
+     * @param expiresAt Wall-clock time in milliseconds after which the entry is gone, or {@link #NEVER}.
+     * @return The value to store.
+     */
+    static String wrap(String value, long expiresAt) {
+        if (expiresAt == NEVER && !isWrapped(value)) {
+            return value;
+        }
+        return MARKER + Long.toString(expiresAt) + MARKER + value;
+    }
+
+    /**
+     * Encodes the location of a value in the value log with the entry's expiry time.
+     *
+     * @param location  The location, see {@link ValueLog}.
+     * @param expiresAt The expiry time, or {@link #NEVER}.
+     * @return The value to store.
+     */
+    static String pointer(String location, long expiresAt) {
+        return POINTER + Long.toString(expiresAt) + POINTER + location;
+    }
+
+    /**
+     * Encodes a merge operand, folded into the value of its key when read.
+     *
+     * @param operand The operand.
+     * @return The value to store.
+     */
+    static String operand(String operand) {
+        return OPERAND + Long.toString(NEVER) + OPERAND + operand;
+    }
+
+    /**
+     * Encodes a value expiring a duration from now.
+     *
+     * @param value     The value.
+     * @param ttlMillis The time to live in milliseconds, positive.
+     * @return The value to store.
+     */
+    static String expiring(String value, long ttlMillis) {
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("TTL must be positive: " + ttlMillis);
+        }
+        return wrap(value, System.currentTimeMillis() + ttlMillis);
+    }
+
+    /**
+     * @param stored A stored value.
+     * @return Whether it carries an expiry time (possibly {@link #NEVER}).
+     */
+    static boolean isWrapped(String stored) {
+        return stored != null && !stored.isEmpty()
+                && (stored.charAt(0) == MARKER || stored.charAt(0) == POINTER || stored.charAt(0) == OPERAND);
+    }
+
+    /**
+     * @param stored A stored value.
+     * @return Whether the value itself is in the value log.
+     */
+    static boolean isPointer(String stored) {
+        return stored != null && !stored.isEmpty() && stored.charAt(0) == POINTER;
+    }
+
+    /**
+     * @param stored A stored value.
+     * @return Whether it is a merge operand rather than a value.
+     */
+    static boolean isOperand(String stored) {
+        return stored != null && !stored.isEmpty() && stored.charAt(0) == OPERAND;
+    }
+
+    /**
+     * @param stored A stored value.
+     * @return Its expiry time, or {@link #NEVER}.
+     */
+    static long expiresAt(String stored) {
+        if (!isWrapped(stored)) {
+            return NEVER;
+        }
+        return Long.parseLong(stored.substring(1, stored.indexOf(stored.charAt(0), 1)));
+    }
+
+    /**
+     * @param stored A stored value.
+     * @param now    The current wall-clock time in milliseconds.
+     * @return Whether the entry has expired.
+     */
+    static boolean isExpired(String stored, long now) {
+        long expiresAt = expiresAt(stored);
+        return expiresAt != NEVER && expiresAt <= now;
+    }
+
+    /**
+     * @param stored A stored value.
+     * @return The value without its expiry time, its location if it is in the value log, or
+     * the operand.
+     */
+    static String value(String stored) {
+        return isWrapped(stored) ? stored.substring(stored.indexOf(stored.charAt(0), 1) + 1) : stored;
+    }
+}
@@ -0,0 +1,127 @@
+// JFR events emitted by the LSM Tree
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Custom Java Flight Recorder events of the LSM Tree. Lookups and writes are emitted only for
+ * operations picked by {@link LSMTree#setTraceSampling(int)} and only while a recording has
+ * them enabled; flushes and compactions, being rare, are emitted whenever enabled.
+ * <p>
+ * Record with e.g. {@code java -XX:StartFlightRecording:filename=oltp.jfr ...} and read with
+ * {@code jfr print --events oltp.LSMTree.Lookup oltp.jfr}.
+ */
+public final class TraceEvents {
+
+    private TraceEvents() {
+    }
+
+    @Name("oltp.LSMTree.Lookup")
+    @Label("LSM Lookup")
+    @Category({"OLTP", "LSM Tree"})
+    @Description("A sampled point lookup and the work it took")
+    @StackTrace(false)
+    public static final class LookupEvent extends Event {
+        @Label("Key")
+        public String key;
+
+        @Label("Found")
+        public boolean found;
+
+        @Label("MemTables Probed")
+        public int memTablesProbed;
+
+        @Label("SSTables Probed")
+        @Description("Read amplification of this lookup")
+        public int sstablesProbed;
+
+        @Label("Disk Reads")
+        @Description("Blocks and index partitions read from files, i.e. not in the block cache")
+        public int diskReads;
+
+        @Label("Bytes Read")
+        @DataAmount
+        public long bytesRead;
+
+        @Label("Cache Hits")
+        public int cacheHits;
+
+        @Label("Cache Misses")
+        public int cacheMisses;
+
+        @Label("Cache Lock Wait")
+        @Description("Time spent in the shared block cache, including waiting for its lock")
+        @Timespan
+        public long cacheWait;
+    }
+
+    @Name("oltp.LSMTree.Write")
+    @Label("LSM Write")
+    @Category({"OLTP", "LSM Tree"})
+    @Description("A sampled put, delete or batch and where its time went")
+    @StackTrace(false)
+    public static final class WriteEvent extends Event {
+        @Label("Operation")
+        public String operation;
+
+        @Label("Key")
+        @Description("The key, null for a batch")
+        public String key;
+
+        @Label("Operations")
+        public int operations;
+
+        @Label("Write Lock Wait")
+        @Timespan
+        public long lockWait;
+
+        @Label("WAL Append")
+        @Description("Time appending to the WAL, including waiting for its lock")
+        @Timespan
+        public long walAppend;
+
+        @Label("Flush Stall")
+        @Description("Time flushing a full MemTable inline")
+        @Timespan
+        public long flushStall;
+    }
+
+    @Name("oltp.LSMTree.Flush")
+    @Label("LSM Flush")
+    @Category({"OLTP", "LSM Tree"})
+    @StackTrace(false)
+    public static final class FlushEvent extends Event {
+        @Label("Entries")
+        public long entries;
+
+        @Label("Bytes Written")
+        @DataAmount
+        public long bytesWritten;
+    }
+
+    @Name("oltp.LSMTree.Compaction")
+    @Label("LSM Compaction")
+    @Category({"OLTP", "LSM Tree"})
+    @StackTrace(false)
+    public static final class CompactionEvent extends Event {
+        @Label("Input Tables")
+        public int inputTables;
+
+        @Label("Bytes Read")
+        @DataAmount
+        public long bytesRead;
+
+        @Label("Bytes Written")
+        @DataAmount
+        public long bytesWritten;
+
+        @Label("Entries Dropped")
+        public long entriesDropped;
+    }
+}
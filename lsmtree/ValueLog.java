@@ -0,0 +1,429 @@
+// Log of large values kept apart from the SSTables (key-value separation)
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Value log in the style of WiscKey: values above a size threshold are moved out of the
+ * SSTables into value files, and the tables keep only their location, so compaction rewrites
+ * small pointers instead of the values themselves.
+ * <p>
+ * Every flush or compaction that moves values writes a file of its own, {@code value_<id>.vlog},
+ * as records {@code [int key length][key][int value length][value]} (UTF-8). A location is
+ * {@code <file id>:<offset of the value>:<length>}. Each SSTable lists the value files it
+ * points into, and a file is deleted once no SSTable that points into it is referenced by a
+ * version any more, so readers of old versions and snapshots keep their values.
+ * <p>
+ * Garbage is reclaimed by relocation: the collector measures which fraction of a file is
+ * still the current value of its key, and compaction copies the live values of files over
+ * the garbage ratio to its own new file, after which the old one is no longer referenced.
+ */
+final class ValueLog implements Closeable {
+
+    private static final String PREFIX = "value_";
+    private static final String SUFFIX = ".vlog";
+
+    private final Path directory;
+    private final AtomicLong nextFile = new AtomicLong();
+    private final Map<Long, FileChannel> channels = new ConcurrentHashMap<>();
+    private final Map<Long, Integer> refs = new HashMap<>(); // SSTables pointing into each file, guarded by this
+    private final Map<Long, Double> garbage = new ConcurrentHashMap<>(); // Last measured garbage ratio
+
+    private final Metrics.Counter bytesWritten;
+    private final Metrics.Counter bytesRelocated;
+    private final Metrics.Counter reads;
+
+    /**
+     * Opens the value log of a directory.
+     *
+     * @param directory The directory holding the value files (the SSTable directory).
+     * @param metrics   The registry receiving {@code lsm.vlog.*} counters.
+     * @throws IOException If the directory cannot be listed.
+     */
+    ValueLog(Path directory, Metrics metrics) throws IOException {
+        this.directory = directory;
+        this.bytesWritten = metrics.counter("lsm.vlog.bytes_written");
+        this.bytesRelocated = metrics.counter("lsm.vlog.bytes_relocated");
+        this.reads = metrics.counter("lsm.vlog.reads");
+        for (long file : listFiles()) {
+            nextFile.set(Math.max(nextFile.get(), file));
+        }
+    }
+
+    private Path path(long file) {
+        return directory.resolve(PREFIX + file + SUFFIX);
+    }
+
+    /**
+     * @return The ids of the value files on disk, ascending.
+     */
+    List<Long> listFiles() throws IOException {
+        List<Long> files = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return files;
+        }
+        try (Stream<Path> listing = Files.list(directory)) {
+            listing.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(PREFIX) && name.endsWith(SUFFIX))
+                    .forEach(name -> files.add(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()))));
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * @param location A value location.
+     * @return The id of the file holding it.
+     */
+    static long file(String location) {
+        return Long.parseLong(location.substring(0, location.indexOf(':')));
+    }
+
+    /**
+     * Reads a value.
+     *
+     * @param location The location stored in place of the value.
+     * @return The value.
+     * @throws IOException If the file cannot be read.
+     */
+    String read(String location) throws IOException {
+        int first = location.indexOf(':');
+        int second = location.indexOf(':', first + 1);
+        long file = Long.parseLong(location.substring(0, first));
+        long offset = Long.parseLong(location.substring(first + 1, second));
+        int length = Integer.parseInt(location.substring(second + 1));
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        FileChannel channel = channel(file);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("Truncated value at " + location);
+            }
+        }
+        reads.increment();
+        return new String(buffer.array(), StandardCharsets.UTF_8);
+    }
+
+    private FileChannel channel(long file) throws IOException {
+        try {
+            return channels.computeIfAbsent(file, id -> {
+                try {
+                    return FileChannel.open(path(id), StandardOpenOption.READ);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Starts a new value file, created on the first value appended.
+     *
+     * @return The writer, to be closed once the SSTable pointing into it is written.
+     */
+    Writer newWriter() {
+        return new Writer(nextFile.incrementAndGet());
+    }
+
+    /**
+     * Records that an SSTable pointing into value files is referenced by a version.
+     *
+     * @param files The files the table points into.
+     */
+    synchronized void retain(long[] files) {
+        for (long file : files) {
+            refs.merge(file, 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Records that an SSTable is no longer referenced, deleting the value files nothing else
+     * points into.
+     *
+     * @param files The files the table points into.
+     * @throws IOException If a file cannot be deleted.
+     */
+    void release(long[] files) throws IOException {
+        List<Long> unreferenced = new ArrayList<>();
+        synchronized (this) {
+            for (long file : files) {
+                if (refs.merge(file, -1, Integer::sum) == 0) {
+                    refs.remove(file);
+                    unreferenced.add(file);
+                }
+            }
+        }
+        for (long file : unreferenced) {
+            delete(file);
+        }
+    }
+
+    private void delete(long file) throws IOException {
+        garbage.remove(file);
+        FileChannel channel = channels.remove(file);
+        if (channel != null) {
+            channel.close();
+        }
+        Files.deleteIfExists(path(file));
+    }
+
+    /**
+     * Deletes the value files no SSTable points into, left by a flush or compaction that did
+     * not complete. Called at startup, once every table has been opened.
+     *
+     * @param referenced The files the tables point into.
+     * @throws IOException If a file cannot be deleted.
+     */
+    void deleteUnreferenced(Set<Long> referenced) throws IOException {
+        for (long file : listFiles()) {
+            if (!referenced.contains(file)) {
+                delete(file);
+            }
+        }
+    }
+
+    /**
+     * Measures the garbage of the value files SSTables point into: a record is live if it is
+     * still the current value of its key. Values only snapshots can read count as garbage,
+     * relocating them is harmless.
+     *
+     * @param liveness Decides whether a record is live.
+     * @throws IOException If a file cannot be read.
+     */
+    void measure(Liveness liveness) throws IOException {
+        List<Long> files;
+        synchronized (this) {
+            files = new ArrayList<>(refs.keySet());
+        }
+        for (long file : files) {
+            long total = 0;
+            long live = 0;
+            try (FileChannel channel = FileChannel.open(path(file), StandardOpenOption.READ)) {
+                long size = channel.size();
+                long position = 0;
+                ByteBuffer header = ByteBuffer.allocate(4);
+                while (position + 8 <= size) {
+                    int keyLength = readInt(channel, header, position);
+                    ByteBuffer key = ByteBuffer.allocate(keyLength);
+                    readFully(channel, key, position + 4);
+                    int valueLength = readInt(channel, header, position + 4 + keyLength);
+                    long valueOffset = position + 8 + keyLength;
+                    String location = file + ":" + valueOffset + ":" + valueLength;
+                    if (liveness.isLive(new String(key.array(), StandardCharsets.UTF_8), location)) {
+                        live += valueLength;
+                    }
+                    total += valueLength;
+                    position = valueOffset + valueLength;
+                }
+            } catch (NoSuchFileException e) {
+                continue; // Deleted since the list was taken
+            }
+            garbage.put(file, total == 0 ? 0 : 1 - (double) live / total);
+        }
+    }
+
+    private static int readInt(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.clear();
+        readFully(channel, buffer, position);
+        return buffer.getInt(0);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Truncated value file");
+            }
+        }
+    }
+
+    /**
+     * Returns the files whose measured garbage reaches a ratio: compaction relocates their
+     * live values.
+     *
+     * @param ratio The garbage ratio, between 0 and 1.
+     * @return The file ids.
+     */
+    Set<Long> collectable(double ratio) {
+        Set<Long> files = new HashSet<>();
+        for (Map.Entry<Long, Double> entry : garbage.entrySet()) {
+            if (entry.getValue() >= ratio) {
+                files.add(entry.getKey());
+            }
+        }
+        return files;
+    }
+
+    /**
+     * @return The number of value files SSTables point into.
+     */
+    synchronized int getFileCount() {
+        return refs.size();
+    }
+
+    /**
+     * @return The size of the value files SSTables point into, in bytes.
+     */
+    long getDiskSize() {
+        List<Long> files;
+        synchronized (this) {
+            files = new ArrayList<>(refs.keySet());
+        }
+        long size = 0;
+        for (long file : files) {
+            size += path(file).toFile().length();
+        }
+        return size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (FileChannel channel : channels.values()) {
+            channel.close();
+        }
+        channels.clear();
+    }
+
+    /**
+     * Decides whether a value file record is still the current value of its key.
+     */
+    interface Liveness {
+        boolean isLive(String key, String location) throws IOException;
+    }
+
+    /**
+     * Appends the values of one flush or compaction to a new value file.
+     */
+    final class Writer implements Closeable {
+        private final long file;
+        private FileChannel channel;
+        private DataOutputStream out;
+        private long position;
+
+        private Writer(long file) {
+            this.file = file;
+        }
+
+        /**
+         * Appends a value.
+         *
+         * @param key   The key, kept for the garbage collector.
+         * @param value The value.
+         * @return The location of the value.
+         * @throws IOException If an I/O error occurs.
+         */
+        String append(String key, String value) throws IOException {
+            if (out == null) {
+                Files.createDirectories(directory);
+                channel = FileChannel.open(path(file), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+                out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            }
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(keyBytes.length);
+            out.write(keyBytes);
+            out.writeInt(valueBytes.length);
+            long offset = position + 8 + keyBytes.length;
+            out.write(valueBytes);
+            position = offset + valueBytes.length;
+            bytesWritten.add(8 + keyBytes.length + valueBytes.length);
+            return file + ":" + offset + ":" + valueBytes.length;
+        }
+
+        /**
+         * Moves the values of entries to this file on the fly: inline values of at least
+         * {@code threshold} characters, and values in files being collected (which are inlined
+         * back if they are now below the threshold).
+         *
+         * @param entries   The entries.
+         * @param threshold The separation threshold, 0 to move nothing new.
+         * @param relocate  The files whose live values are copied out.
+         * @return The entries with their values moved.
+         */
+        Iterator<SSTable.Entry> separate(Iterator<SSTable.Entry> entries, int threshold, Set<Long> relocate) {
+            return new Iterator<SSTable.Entry>() {
+                @Override
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                @Override
+                public SSTable.Entry next() {
+                    SSTable.Entry entry = entries.next();
+                    try {
+                        String stored = separate(entry.key, entry.value, threshold, relocate);
+                        return stored == entry.value ? entry : new SSTable.Entry(entry.key, entry.sequence, stored);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            };
+        }
+
+        private String separate(String key, String stored, int threshold, Set<Long> relocate) throws IOException {
+            if (StoredValue.isPointer(stored)) {
+                String location = StoredValue.value(stored);
+                if (!relocate.contains(file(location))) {
+                    return stored;
+                }
+                String value = read(location);
+                bytesRelocated.add(Long.parseLong(location.substring(location.lastIndexOf(':') + 1)));
+                if (threshold > 0 && value.length() >= threshold) {
+                    return StoredValue.pointer(append(key, value), StoredValue.expiresAt(stored));
+                }
+                return StoredValue.wrap(value, StoredValue.expiresAt(stored));
+            }
+            if (threshold > 0 && !MemTable.TOMBSTONE.equals(stored) && !StoredValue.isOperand(stored)) {
+                String value = StoredValue.value(stored);
+                if (value.length() >= threshold) {
+                    return StoredValue.pointer(append(key, value), StoredValue.expiresAt(stored));
+                }
+            }
+            return stored;
+        }
+
+        /**
+         * Writes the buffered values to the file and forces them to disk. Must be called
+         * before the SSTable pointing into it is published, see
+         * {@link SSTable#create(Iterator, String, SSTableOptions, boolean, Closeable)}.
+         * Closing again does nothing.
+         *
+         * @throws IOException If an I/O error occurs.
+         */
+        @Override
+        public void close() throws IOException {
+            if (out != null) {
+                try (DataOutputStream closing = out) {
+                    out = null;
+                    closing.flush();
+                    channel.force(true);
+                }
+            }
+        }
+    }
+}
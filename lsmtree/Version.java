@@ -0,0 +1,66 @@
+// Immutable view of the LSM Tree state
+
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Immutable snapshot of the LSM Tree: the active MemTable, MemTables being flushed and the
+ * SSTables, newest last. Readers pin a version with {@link #ref()} and search it without
+ * taking any tree lock; SSTable files are deleted once no version references them.
+ */
+public class Version {
+
+    final MemTable memTable;
+    final List<MemTable> immutableMemTables; // Being flushed, newest last
+    final List<SSTable> sstables;            // Oldest first
+
+    // Starts at 1: the reference held by the tree while this is the current version
+    private final AtomicInteger refs = new AtomicInteger(1);
+
+    /**
+     * @param memTable           The active MemTable.
+     * @param immutableMemTables MemTables being flushed, newest last.
+     * @param sstables           The SSTables, oldest first.
+     */
+    Version(MemTable memTable, List<MemTable> immutableMemTables, List<SSTable> sstables) {
+        this.memTable = memTable;
+        this.immutableMemTables = Collections.unmodifiableList(immutableMemTables);
+        this.sstables = Collections.unmodifiableList(sstables);
+        for (SSTable sstable : sstables) {
+            sstable.ref();
+        }
+    }
+
+    /**
+     * Pins this version.
+     *
+     * @return False if the version was already released and must not be used.
+     */
+    boolean ref() {
+        while (true) {
+            int current = refs.get();
+            if (current == 0) {
+                return false;
+            }
+            if (refs.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases a reference, dropping the SSTable references once nobody uses this version.
+     *
+     * @throws IOException If an unreferenced SSTable file cannot be deleted.
+     */
+    void unref() throws IOException {
+        if (refs.decrementAndGet() == 0) {
+            for (SSTable sstable : sstables) {
+                sstable.unref();
+            }
+        }
+    }
+}
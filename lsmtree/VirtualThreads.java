@@ -0,0 +1,78 @@
+// Virtual thread executor, when the running JDK has one
+
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates executors running each task on its own virtual thread. The sources target JDK 17,
+ * so the JDK 21 factory is looked up reflectively; on older JDKs a bounded pool of platform
+ * threads is used instead.
+ */
+final class VirtualThreads {
+
+    private static final MethodHandle FACTORY = lookupFactory();
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return True if the JDK supports virtual threads.
+     */
+    static boolean isAvailable() {
+        return FACTORY != null;
+    }
+
+    /**
+     * Creates an executor with one virtual thread per task, or a pool of
+     * {@code fallbackThreads} platform threads without virtual thread support.
+     *
+     * @param fallbackThreads The pool size used on JDKs without virtual threads.
+     * @return The executor, to be shut down by the caller.
+     */
+    static ExecutorService newExecutor(int fallbackThreads) {
+        if (FACTORY != null) {
+            try {
+                return (ExecutorService) FACTORY.invokeExact();
+            } catch (Throwable e) {
+                throw new IllegalStateException("Cannot create a virtual thread executor", e);
+            }
+        }
+        return Executors.newFixedThreadPool(fallbackThreads, runnable -> {
+            Thread thread = new Thread(runnable, "lsm-async");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Creates an executor with one thread per task: a virtual thread, or a platform thread
+     * without virtual thread support. For tasks that block for as long as a connection stays
+     * open, which a bounded pool would leave queued and never run.
+     *
+     * @param name The name of the platform threads.
+     * @return The executor, to be shut down by the caller.
+     */
+    static ExecutorService newPerTaskExecutor(String name) {
+        if (FACTORY != null) {
+            return newExecutor(0);
+        }
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static MethodHandle lookupFactory() {
+        try {
+            return MethodHandles.publicLookup().findStatic(Executors.class, "newVirtualThreadPerTaskExecutor",
+                    MethodType.methodType(ExecutorService.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+// Replays WAL records into a MemTable, in parallel for large logs
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Applies WAL records to a MemTable. A large log is replayed in two parallel phases: chunks
+ * of records are parsed concurrently, then each worker applies the operations of one key
+ * partition, walking the chunks in log order. Versions of a key therefore reach the MemTable
+ * in sequence order, while different keys are inserted concurrently into its skip list.
+ */
+final class WalReplay {
+
+    // Below this many records, parsing sequentially is cheaper than coordinating workers
+    static final int PARALLEL_THRESHOLD = 16_384;
+
+    private WalReplay() {
+    }
+
+    /**
+     * Receives the operations of a record: deletes arrive as {@link MemTable#TOMBSTONE}.
+     */
+    interface Sink {
+        void accept(long sequence, String key, String value);
+    }
+
+    /**
+     * Applies one record to a MemTable.
+     *
+     * @param record   The record.
+     * @param memTable The MemTable to write to.
+     * @return The last sequence number of the record, or -1 if it is malformed.
+     */
+    static long apply(String record, MemTable memTable) {
+        return parse(record, memTable::put);
+    }
+
+    /**
+     * Passes the operations of one record to a sink.
+     *
+     * @param record The record.
+     * @param sink   Receives each operation.
+     * @return The last sequence number of the record, or -1 if it is malformed.
+     */
+    static long apply(String record, Sink sink) {
+        return parse(record, sink);
+    }
+
+    /**
+     * Applies a whole log to a MemTable.
+     *
+     * @param records     The records, in log order.
+     * @param memTable    The MemTable to write to.
+     * @param executor    Runs the workers, or null to replay on the caller.
+     * @param parallelism The number of workers.
+     * @return The highest sequence number replayed, or -1 if none.
+     * @throws IOException If a record is malformed or a worker fails.
+     */
+    static long replay(List<String> records, MemTable memTable, ExecutorService executor, int parallelism) throws IOException {
+        if (executor == null || parallelism <= 1 || records.size() < PARALLEL_THRESHOLD) {
+            long last = -1;
+            for (String record : records) {
+                long sequence = apply(record, memTable);
+                if (sequence < 0) {
+                    throw malformed(record);
+                }
+                last = Math.max(last, sequence);
+            }
+            return last;
+        }
+
+        // Phase 1: parse contiguous chunks
+        int chunkSize = (records.size() + parallelism - 1) / parallelism;
+        List<Future<Chunk>> parsing = new ArrayList<>();
+        for (int from = 0; from < records.size(); from += chunkSize) {
+            List<String> slice = records.subList(from, Math.min(records.size(), from + chunkSize));
+            parsing.add(executor.submit(() -> Chunk.parse(slice)));
+        }
+        List<Chunk> chunks = new ArrayList<>();
+        long last = -1;
+        for (Chunk chunk : await(parsing)) {
+            if (chunk.malformed != null) {
+                throw malformed(chunk.malformed);
+            }
+            chunks.add(chunk);
+            last = Math.max(last, chunk.lastSequence);
+        }
+
+        // Phase 2: one worker per key partition, chunks in log order
+        List<Future<Void>> applying = new ArrayList<>();
+        for (int p = 0; p < parallelism; p++) {
+            int partition = p;
+            applying.add(executor.submit(() -> {
+                for (Chunk chunk : chunks) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        String key = chunk.keys.get(i);
+                        if (Math.floorMod(key.hashCode(), parallelism) == partition) {
+                            memTable.put(chunk.sequences[i], key, chunk.values.get(i));
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        await(applying);
+        return last;
+    }
+
+    /**
+     * Rewrites the unframed records an earlier version left at the head of a log, "PUT key value"
+     * and "DELETE key" without sequence numbers, as current records. They are numbered after
+     * {@code lastSequence}, the highest sequence number already on disk, which does not change
+     * until a flush clears the log, so every replay numbers them alike. Records that version
+     * skipped are skipped.
+     *
+     * @param records      The records, in log order.
+     * @param legacy       The number of unframed records at their head.
+     * @param lastSequence The highest sequence number in the SSTables.
+     * @return The records with the unframed ones rewritten.
+     */
+    static List<String> upgradeLegacy(List<String> records, int legacy, long lastSequence) {
+        if (legacy == 0) {
+            return records;
+        }
+        List<String> upgraded = new ArrayList<>(records.size());
+        long sequence = lastSequence;
+        for (String record : records.subList(0, legacy)) {
+            if (record.startsWith("PUT")) {
+                String[] parts = record.split(" ", 3);
+                if (parts.length == 3) {
+                    upgraded.add(WriteAheadLog.putRecord(++sequence, parts[1], parts[2]));
+                }
+            } else if (record.startsWith("DELETE")) {
+                String[] parts = record.split(" ", 2);
+                if (parts.length == 2) {
+                    upgraded.add(WriteAheadLog.deleteRecord(++sequence, parts[1]));
+                }
+            }
+        }
+        upgraded.addAll(records.subList(legacy, records.size()));
+        return upgraded;
+    }
+
+    private static IOException malformed(String record) {
+        return new IOException("Malformed WAL record: " + record);
+    }
+
+    private static <T> List<T> await(List<Future<T>> futures) throws IOException {
+        List<T> results = new ArrayList<>();
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while replaying the WAL", e);
+        } catch (ExecutionException e) {
+            throw new IOException("WAL replay failed", e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * Parses one record.
+     *
+     * @return The last sequence number of the record, or -1 if it is malformed.
+     */
+    private static long parse(String record, Sink sink) {
+        try {
+            if (record.startsWith("PUT")) {
+                String[] parts = record.split(" ", 3);
+                int colon = parts.length == 3 ? parts[2].indexOf(':') : -1;
+                if (colon > 0) {
+                    long sequence = Long.parseLong(parts[1]);
+                    int keyEnd = colon + 1 + Integer.parseInt(parts[2].substring(0, colon));
+                    if (keyEnd <= parts[2].length()) {
+                        sink.accept(sequence, parts[2].substring(colon + 1, keyEnd), parts[2].substring(keyEnd));
+                        return sequence;
+                    }
+                }
+            } else if (record.startsWith("DELETE")) {
+                String[] parts = record.split(" ", 3);
+                if (parts.length == 3) {
+                    long sequence = Long.parseLong(parts[1]);
+                    sink.accept(sequence, parts[2], MemTable.TOMBSTONE);
+                    return sequence;
+                }
+            } else if (record.startsWith("BATCH")) {
+                String[] parts = record.split(" ", 3);
+                WriteBatch batch = parts.length == 3 ? WriteBatch.decode(parts[2]) : null;
+                if (batch != null) {
+                    long baseSequence = Long.parseLong(parts[1]);
+                    batch.applyTo(sink, baseSequence);
+                    return baseSequence + batch.size() - 1;
+                }
+            }
+        } catch (NumberFormatException e) {
+            // Malformed sequence number
+        }
+        return -1;
+    }
+
+    /**
+     * The operations of a run of records, in log order.
+     */
+    private static final class Chunk implements Sink {
+        final List<String> keys = new ArrayList<>();
+        final List<String> values = new ArrayList<>();
+        long[] sequences = new long[16];
+        long lastSequence = -1;
+        String malformed; // First record that failed to parse
+
+        static Chunk parse(List<String> records) {
+            Chunk chunk = new Chunk();
+            for (String record : records) {
+                long sequence = WalReplay.parse(record, chunk);
+                if (sequence < 0) {
+                    chunk.malformed = record;
+                    break;
+                }
+                chunk.lastSequence = Math.max(chunk.lastSequence, sequence);
+            }
+            return chunk;
+        }
+
+        @Override
+        public void accept(long sequence, String key, String value) {
+            if (keys.size() == sequences.length) {
+                sequences = Arrays.copyOf(sequences, sequences.length * 2);
+            }
+            sequences[keys.size()] = sequence;
+            keys.add(key);
+            values.add(value);
+        }
+
+        int size() {
+            return keys.size();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+// Groups several writes into one atomic update
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Accumulates puts and deletes that {@link LSMTree#write(WriteBatch)} applies atomically:
+ * one WAL record, one MemTable pass, and readers see either all of the batch or none of it.
+ */
+public class WriteBatch {
+
+    private static final char PUT = 'P';
+    private static final char DELETE = 'D';
+
+    private final List<Character> kinds = new ArrayList<>();
+    private final List<String> keys = new ArrayList<>();
+    private final List<String> values = new ArrayList<>();
+
+    /**
+     * Adds a put to the batch.
+     *
+     * @param key   The key to insert/update.
+     * @param value The value associated with the key.
+     * @return This batch.
+     */
+    public WriteBatch put(String key, String value) {
+        return putStored(key, StoredValue.wrap(value, StoredValue.NEVER));
+    }
+
+    /**
+     * Adds a put that expires after a time to live (see {@link LSMTree#put(String, String, long)}).
+     * The TTL starts when the put is added to the batch.
+     *
+     * @param key       The key to insert/update.
+     * @param value     The value associated with the key.
+     * @param ttlMillis The time to live in milliseconds.
+     * @return This batch.
+     */
+    public WriteBatch put(String key, String value, long ttlMillis) {
+        return putStored(key, StoredValue.expiring(value, ttlMillis));
+    }
+
+    private WriteBatch putStored(String key, String value) {
+        kinds.add(PUT);
+        keys.add(key);
+        values.add(value);
+        return this;
+    }
+
+    /**
+     * Adds a delete to the batch.
+     *
+     * @param key The key to delete.
+     * @return This batch.
+     */
+    public WriteBatch delete(String key) {
+        kinds.add(DELETE);
+        keys.add(key);
+        values.add(null);
+        return this;
+    }
+
+    /**
+     * Returns the number of operations in the batch.
+     *
+     * @return The size.
+     */
+    public int size() {
+        return keys.size();
+    }
+
+    /**
+     * Removes all operations so the batch can be reused.
+     */
+    public void clear() {
+        kinds.clear();
+        keys.clear();
+        values.clear();
+    }
+
+    /**
+     * Replays the operations in order, for engines other than the LSM Tree. TTLs are not
+     * passed on.
+     *
+     * @param handler Receives every operation.
+     * @throws IOException If the handler fails.
+     */
+    public void forEach(Handler handler) throws IOException {
+        for (int i = 0; i < keys.size(); i++) {
+            if (kinds.get(i) == PUT) {
+                handler.put(keys.get(i), StoredValue.value(values.get(i)));
+            } else {
+                handler.delete(keys.get(i));
+            }
+        }
+    }
+
+    /**
+     * Receives the operations of a batch.
+     */
+    public interface Handler {
+        void put(String key, String value) throws IOException;
+
+        void delete(String key) throws IOException;
+    }
+
+    /**
+     * Applies the operations to a MemTable with consecutive sequence numbers.
+     *
+     * @param memTable     The MemTable to write to.
+     * @param baseSequence The sequence number of the first operation.
+     */
+    void applyTo(MemTable memTable, long baseSequence) {
+        applyTo(memTable::put, baseSequence);
+    }
+
+    /**
+     * Passes the operations to a sink with consecutive sequence numbers, deletes as tombstones.
+     *
+     * @param sink         Receives each operation.
+     * @param baseSequence The sequence number of the first operation.
+     */
+    void applyTo(WalReplay.Sink sink, long baseSequence) {
+        for (int i = 0; i < keys.size(); i++) {
+            sink.accept(baseSequence + i, keys.get(i), kinds.get(i) == PUT ? values.get(i) : MemTable.TOMBSTONE);
+        }
+    }
+
+    /**
+     * Encodes the operations for a single WAL record: the count followed by length-prefixed
+     * fields, e.g. "2 P3:foo5:helloD3:bar", so keys and values may hold any character.
+     *
+     * @return The encoded operations.
+     */
+    String encode() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(keys.size()).append(' ');
+        for (int i = 0; i < keys.size(); i++) {
+            sb.append(kinds.get(i));
+            appendField(sb, keys.get(i));
+            if (kinds.get(i) == PUT) {
+                appendField(sb, values.get(i));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void appendField(StringBuilder sb, String field) {
+        sb.append(field.length()).append(':').append(field);
+    }
+
+    /**
+     * Decodes a batch written by {@link #encode()}.
+     *
+     * @param encoded The encoded operations.
+     * @return The batch, or null if the record is malformed.
+     */
+    static WriteBatch decode(String encoded) {
+        try {
+            int space = encoded.indexOf(' ');
+            int count = Integer.parseInt(encoded.substring(0, space));
+            WriteBatch batch = new WriteBatch();
+            int[] pos = {space + 1};
+
+            for (int i = 0; i < count; i++) {
+                char kind = encoded.charAt(pos[0]++);
+                String key = readField(encoded, pos);
+                if (kind == PUT) {
+                    batch.putStored(key, readField(encoded, pos)); // Already carries its TTL
+                } else if (kind == DELETE) {
+                    batch.delete(key);
+                } else {
+                    return null;
+                }
+            }
+            return pos[0] == encoded.length() ? batch : null;
+        } catch (RuntimeException e) {
+            return null; // Malformed record
+        }
+    }
+
+    private static String readField(String encoded, int[] pos) {
+        int colon = encoded.indexOf(':', pos[0]);
+        int length = Integer.parseInt(encoded.substring(pos[0], colon));
+        int start = colon + 1;
+        pos[0] = start + length;
+        if (pos[0] > encoded.length()) {
+            throw new IllegalArgumentException("Truncated field");
+        }
+        return encoded.substring(start, pos[0]);
+    }
+}
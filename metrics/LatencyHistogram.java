@@ -0,0 +1,119 @@
+// Log-linear latency histogram
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe latency histogram with log-linear buckets (HdrHistogram layout, 64 sub-buckets
+ * per power of two), so percentiles are within about 1.5% of the recorded values at any scale.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 64;
+    private static final int BUCKETS = 2 * SUB_BUCKETS + 57 * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Records a value.
+     *
+     * @param value The value, e.g. a latency in nanoseconds; negative values count as 0.
+     */
+    public void record(long value) {
+        counts.incrementAndGet(index(Math.max(0, value)));
+    }
+
+    /**
+     * Adds every value of another histogram.
+     *
+     * @param other The histogram to add.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long c = other.counts.get(i);
+            if (c != 0) {
+                counts.addAndGet(i, c);
+            }
+        }
+    }
+
+    /**
+     * Clears the histogram.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    /**
+     * @return The number of recorded values.
+     */
+    public long count() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Returns the value at a percentile.
+     *
+     * @param percentile The percentile, 0 to 100.
+     * @return The lower bound of the bucket holding it, 0 if empty.
+     */
+    public long percentile(double percentile) {
+        long total = count();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return valueOf(i);
+            }
+        }
+        return valueOf(BUCKETS - 1);
+    }
+
+    /**
+     * @return The lower bound of the highest bucket recorded, 0 if empty.
+     */
+    public long max() {
+        for (int i = BUCKETS - 1; i >= 0; i--) {
+            if (counts.get(i) != 0) {
+                return valueOf(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Formats the usual percentiles of latencies recorded in nanoseconds, in microseconds.
+     *
+     * @return The summary line.
+     */
+    public String summary() {
+        return String.format("p50 %8.1f  p90 %8.1f  p99 %8.1f  p99.9 %8.1f  max %9.1f us",
+                percentile(50) / 1e3, percentile(90) / 1e3, percentile(99) / 1e3,
+                percentile(99.9) / 1e3, max() / 1e3);
+    }
+
+    private static int index(long value) {
+        int magnitude = 64 - Long.numberOfLeadingZeros(value | (2 * SUB_BUCKETS - 1)) - 7;
+        if (magnitude == 0) {
+            return (int) value;
+        }
+        return (magnitude << 6) + (int) (value >>> magnitude);
+    }
+
+    private static long valueOf(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int magnitude = (index >> 6) - 1;
+        return (long) (index - (magnitude << 6)) << magnitude;
+    }
+}
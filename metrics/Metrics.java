@@ -0,0 +1,302 @@
+// Counters, gauges and timers of one engine, exposed through JMX
+
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Metrics registry of one engine instance. Counters are striped {@link LongAdder}s, so
+ * concurrent writers do not contend on a cache line; timers record durations into a
+ * {@link LatencyHistogram}; gauges are sampled only when read. Everything can be read as a
+ * name-to-value map, formatted for a stats dump or published as a JMX MBean.
+ * <p>
+ * A registry created disabled (or with {@code -Doltp.metrics=false}) hands out counters and
+ * timers that record nothing, to measure the instrumentation's own overhead.
+ */
+public class Metrics {
+
+    private final boolean enabled;
+    private final Map<String, Counter> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, Timer> timers = new ConcurrentSkipListMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+    private ObjectName objectName;
+
+    /**
+     * Creates a registry, enabled unless the {@code oltp.metrics} system property is "false".
+     */
+    public Metrics() {
+        this(!"false".equalsIgnoreCase(System.getProperty("oltp.metrics")));
+    }
+
+    /**
+     * @param enabled Whether counters and timers record.
+     */
+    public Metrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return Whether counters and timers record.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the counter of a name, creating it on first use.
+     *
+     * @param name The metric name.
+     * @return The counter.
+     */
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, n -> new Counter(enabled));
+    }
+
+    /**
+     * Returns the timer of a name, creating it on first use.
+     *
+     * @param name The metric name.
+     * @return The timer.
+     */
+    public Timer timer(String name) {
+        return timers.computeIfAbsent(name, n -> new Timer(enabled));
+    }
+
+    /**
+     * Registers a value computed when read, replacing any gauge of the same name.
+     *
+     * @param name  The metric name.
+     * @param value Computes the value; must be cheap and thread-safe.
+     */
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Reads every metric. A timer contributes its count, total and percentiles in microseconds
+     * as {@code name.count}, {@code name.total_us}, {@code name.p50_us}, {@code name.p99_us} and
+     * {@code name.max_us}.
+     *
+     * @return The values by name.
+     */
+    public SortedMap<String, Long> snapshot() {
+        SortedMap<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().get());
+        }
+        for (Map.Entry<String, LongSupplier> entry : gauges.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().getAsLong());
+        }
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            Timer timer = entry.getValue();
+            String name = entry.getKey();
+            values.put(name + ".count", timer.count());
+            values.put(name + ".total_us", timer.totalNanos() / 1000);
+            values.put(name + ".p50_us", timer.histogram.percentile(50) / 1000);
+            values.put(name + ".p99_us", timer.histogram.percentile(99) / 1000);
+            values.put(name + ".max_us", timer.histogram.max() / 1000);
+        }
+        return values;
+    }
+
+    /**
+     * Formats every metric, one {@code name value} line each.
+     *
+     * @return The dump.
+     */
+    public String format() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Long> entry : snapshot().entrySet()) {
+            sb.append(String.format("%-36s %,d%n", entry.getKey(), entry.getValue()));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Publishes the metrics as an MBean {@code oltp:type=<type>,name=<name>} on the platform
+     * MBean server, each metric a read-only {@code long} attribute. Does nothing if an MBean of
+     * that name already exists, e.g. the same directory opened twice.
+     *
+     * @param type The engine type, e.g. "LSMTree".
+     * @param name Identifies the instance, e.g. its directory.
+     */
+    public void registerMBean(String type, String name) {
+        try {
+            ObjectName objectName = new ObjectName("oltp:type=" + type + ",name=" + ObjectName.quote(name));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(new MetricsMBean(), objectName);
+                this.objectName = objectName;
+            }
+        } catch (JMException e) {
+            System.err.println("Metrics MBean not registered: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Removes the MBean registered by {@link #registerMBean}, if any.
+     */
+    public void unregisterMBean() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            // Already gone
+        }
+        objectName = null;
+    }
+
+    /**
+     * A monotonically increasing count.
+     */
+    public static final class Counter {
+        private final LongAdder adder = new LongAdder();
+        private final boolean enabled;
+
+        Counter(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public void increment() {
+            if (enabled) {
+                adder.increment();
+            }
+        }
+
+        public void add(long delta) {
+            if (enabled) {
+                adder.add(delta);
+            }
+        }
+
+        public long get() {
+            return adder.sum();
+        }
+    }
+
+    /**
+     * Durations of an operation.
+     */
+    public static final class Timer {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final LongAdder total = new LongAdder();
+        private final boolean enabled;
+
+        Timer(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        /**
+         * @return The start time to pass to {@link #stop}, 0 if the timer is disabled.
+         */
+        public long start() {
+            return enabled ? System.nanoTime() : 0;
+        }
+
+        /**
+         * Records the time elapsed since {@link #start}.
+         *
+         * @param start The value returned by {@link #start}.
+         */
+        public void stop(long start) {
+            if (enabled) {
+                record(System.nanoTime() - start);
+            }
+        }
+
+        /**
+         * Records a duration.
+         *
+         * @param nanos The duration in nanoseconds.
+         */
+        public void record(long nanos) {
+            if (enabled) {
+                histogram.record(nanos);
+                total.add(nanos);
+            }
+        }
+
+        public long count() {
+            return histogram.count();
+        }
+
+        public long totalNanos() {
+            return total.sum();
+        }
+
+        public LatencyHistogram getHistogram() {
+            return histogram;
+        }
+    }
+
+    /**
+     * Exposes the snapshot as MBean attributes; the attribute list follows the metrics
+     * registered when {@link #getMBeanInfo()} is called.
+     */
+    private final class MetricsMBean implements DynamicMBean {
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Long value = snapshot().get(attribute);
+            if (value == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            return value;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            SortedMap<String, Long> values = snapshot();
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                Long value = values.get(attribute);
+                if (value != null) {
+                    list.add(new Attribute(attribute, value));
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            throw new UnsupportedOperationException(actionName);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            ArrayList<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (String name : snapshot().keySet()) {
+                attributes.add(new MBeanAttributeInfo(name, "long", name, true, false, false));
+            }
+            return new MBeanInfo(Metrics.class.getName(), "Engine metrics", attributes.toArray(new MBeanAttributeInfo[0]),
+                    null, null, null);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+// Per-operation trace context, filled by the layers an operation passes through
+
+
+/**
+ * Collects what one traced operation cost on its way through the engine: tables probed,
+ * file reads, cache accesses and time spent waiting for locks, the WAL and inline flushes.
+ * The context is bound to the calling thread between {@link #begin()} and {@link #end()};
+ * lower layers find it through {@link #current()} and do nothing when it is absent, so
+ * untraced operations pay one thread-local read where a layer reports.
+ */
+public final class OperationTrace {
+
+    private static final ThreadLocal<OperationTrace> CURRENT = new ThreadLocal<>();
+
+    int memTablesProbed;
+    int sstablesProbed;
+    int diskReads;
+    long bytesRead;
+    int cacheHits;
+    int cacheMisses;
+    long cacheWaitNanos;
+    long lockWaitNanos;
+    long walNanos;
+    long flushNanos;
+
+    private OperationTrace() {
+    }
+
+    /**
+     * Starts tracing an operation on the calling thread.
+     *
+     * @return The new context.
+     */
+    public static OperationTrace begin() {
+        OperationTrace trace = new OperationTrace();
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    /**
+     * Stops tracing on the calling thread.
+     *
+     * @return The finished context, or null if none was active.
+     */
+    public static OperationTrace end() {
+        OperationTrace trace = CURRENT.get();
+        CURRENT.remove();
+        return trace;
+    }
+
+    /**
+     * @return The context of the operation running on this thread, or null if it is not traced.
+     */
+    public static OperationTrace current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Reports a read from a file, if the current operation is traced.
+     *
+     * @param bytes The number of bytes read.
+     */
+    public static void diskRead(long bytes) {
+        OperationTrace trace = CURRENT.get();
+        if (trace != null) {
+            trace.diskReads++;
+            trace.bytesRead += bytes;
+        }
+    }
+
+    /**
+     * Records a block cache access, including the time waiting for the cache's lock.
+     *
+     * @param hit   Whether the block was cached.
+     * @param nanos The time spent in the cache.
+     */
+    public void cacheAccess(boolean hit, long nanos) {
+        if (hit) {
+            cacheHits++;
+        } else {
+            cacheMisses++;
+        }
+        cacheWaitNanos += nanos;
+    }
+
+    /**
+     * Records the components a lookup consulted.
+     *
+     * @param memTables The MemTables probed.
+     * @param sstables  The SSTables probed.
+     */
+    public void probed(int memTables, int sstables) {
+        memTablesProbed += memTables;
+        sstablesProbed += sstables;
+    }
+
+    public void addLockWait(long nanos) {
+        lockWaitNanos += nanos;
+    }
+
+    public void addWal(long nanos) {
+        walNanos += nanos;
+    }
+
+    public void addFlush(long nanos) {
+        flushNanos += nanos;
+    }
+
+    public int getMemTablesProbed() {
+        return memTablesProbed;
+    }
+
+    public int getSstablesProbed() {
+        return sstablesProbed;
+    }
+
+    public int getDiskReads() {
+        return diskReads;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public int getCacheHits() {
+        return cacheHits;
+    }
+
+    public int getCacheMisses() {
+        return cacheMisses;
+    }
+
+    public long getCacheWaitNanos() {
+        return cacheWaitNanos;
+    }
+
+    public long getLockWaitNanos() {
+        return lockWaitNanos;
+    }
+
+    public long getWalNanos() {
+        return walNanos;
+    }
+
+    public long getFlushNanos() {
+        return flushNanos;
+    }
+}
@@ -0,0 +1,118 @@
+// KeyValueEngine over a B-Tree
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Exposes a concurrent {@link BTree} as a {@link KeyValueEngine}. The B-Tree is a set of int
+ * keys: keys must be decimal integers, put stores the key only and get returns the key
+ * itself when present. Scans are in numeric order.
+ *
+ * Writes and scans hold one lock (put checks for the key before inserting it and cursors are
+ * not latched); point reads run concurrently on the latched tree. Batches are applied under
+ * the lock, but are not atomic across a crash.
+ */
+public class BTreeEngine implements KeyValueEngine {
+
+    private final BTree tree;
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    /**
+     * @param tree The tree, created in concurrent mode; closed together with the engine.
+     */
+    public BTreeEngine(BTree tree) {
+        this.tree = tree;
+    }
+
+    @Override
+    public String name() {
+        return "btree";
+    }
+
+    @Override
+    public String get(String key) {
+        int k = parse(key);
+        return tree.search(k) == null ? null : key;
+    }
+
+    @Override
+    public void put(String key, String value) throws IOException {
+        int k = parse(key);
+        writeLock.lock();
+        try {
+            if (tree.search(k) == null) {
+                tree.insert(k);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        int k = parse(key);
+        writeLock.lock();
+        try {
+            if (tree.search(k) != null) {
+                tree.delete(k);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public SortedMap<String, String> scan(String startKey, String endKey, int limit) {
+        SortedMap<String, String> results = new TreeMap<>(Comparator.comparingInt(Integer::parseInt));
+        writeLock.lock();
+        try {
+            BTreeCursor cursor = tree.cursor();
+            boolean positioned = startKey == null ? cursor.seekFirst() : (cursor.seek(parse(startKey)) || cursor.isValid());
+            Integer end = endKey == null ? null : parse(endKey);
+            while (positioned && results.size() < limit && (end == null || cursor.key() < end)) {
+                String key = String.valueOf(cursor.key());
+                results.put(key, key);
+                positioned = cursor.next();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        return results;
+    }
+
+    @Override
+    public void write(WriteBatch batch) throws IOException {
+        writeLock.lock();
+        try {
+            batch.forEach(new WriteBatch.Handler() {
+                @Override
+                public void put(String key, String value) throws IOException {
+                    BTreeEngine.this.put(key, value);
+                }
+
+                @Override
+                public void delete(String key) throws IOException {
+                    BTreeEngine.this.delete(key);
+                }
+            });
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        tree.close();
+    }
+
+    private static int parse(String key) {
+        try {
+            return Integer.parseInt(key);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("B-Tree keys must be integers: " + key);
+        }
+    }
+}
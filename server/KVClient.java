@@ -0,0 +1,310 @@
+// Client of KVServer
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Client of a {@link KVServer}. The *Async methods pipeline: they send the request and return
+ * at once, and a reader thread completes the futures as responses arrive. The blocking
+ * methods wait for their own response. One client may be shared by many threads.
+ */
+public class KVClient implements Closeable {
+
+    private final Socket socket;
+    private final DataOutputStream out;
+    private final DataInputStream in;
+    private final ReentrantLock sendLock = new ReentrantLock();
+    private final Queue<Pending> pending = new ConcurrentLinkedQueue<>(); // In send order
+    private int nextId; // Guarded by sendLock
+    private volatile IOException failure;
+
+    /**
+     * Connects to a server on the loopback interface.
+     *
+     * @param port The server port.
+     * @throws IOException If the connection fails.
+     */
+    public KVClient(int port) throws IOException {
+        this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /**
+     * Connects to a server.
+     *
+     * @param address The server address.
+     * @throws IOException If the connection fails.
+     */
+    public KVClient(InetSocketAddress address) throws IOException {
+        this.socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.connect(address);
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+        Thread reader = new Thread(this::readLoop, "kv-client-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Sends a GET.
+     *
+     * @param key The key.
+     * @return A future completed with the value, or null if the key does not exist.
+     */
+    public CompletableFuture<String> getAsync(String key) {
+        return send(KVProtocol.GET, o -> KVProtocol.writeString(o, key));
+    }
+
+    /**
+     * Sends a PUT.
+     *
+     * @param key   The key.
+     * @param value The value.
+     * @return A future completed once the server applied the write.
+     */
+    public CompletableFuture<Void> putAsync(String key, String value) {
+        return send(KVProtocol.PUT, o -> {
+            KVProtocol.writeString(o, key);
+            KVProtocol.writeString(o, value);
+        });
+    }
+
+    /**
+     * Sends a DELETE.
+     *
+     * @param key The key.
+     * @return A future completed once the server applied the deletion.
+     */
+    public CompletableFuture<Void> deleteAsync(String key) {
+        return send(KVProtocol.DELETE, o -> KVProtocol.writeString(o, key));
+    }
+
+    /**
+     * Sends a SCAN.
+     *
+     * @param startKey The first key (inclusive), or null to start at the smallest key.
+     * @param endKey   The end key (exclusive), or null for no upper bound.
+     * @param limit    The maximum number of keys.
+     * @return A future completed with the entries, in the server's key order.
+     */
+    public CompletableFuture<List<Map.Entry<String, String>>> scanAsync(String startKey, String endKey, int limit) {
+        return send(KVProtocol.SCAN, o -> {
+            KVProtocol.writeString(o, startKey);
+            KVProtocol.writeString(o, endKey);
+            o.writeInt(limit);
+        });
+    }
+
+    /**
+     * Sends a BATCH.
+     *
+     * @param batch The writes; encoded before this method returns.
+     * @return A future completed once the server applied the batch.
+     */
+    public CompletableFuture<Void> writeAsync(WriteBatch batch) {
+        return send(KVProtocol.BATCH, o -> {
+            o.writeInt(batch.size());
+            batch.forEach(new WriteBatch.Handler() {
+                @Override
+                public void put(String key, String value) throws IOException {
+                    o.writeByte(KVProtocol.PUT);
+                    KVProtocol.writeString(o, key);
+                    KVProtocol.writeString(o, value);
+                }
+
+                @Override
+                public void delete(String key) throws IOException {
+                    o.writeByte(KVProtocol.DELETE);
+                    KVProtocol.writeString(o, key);
+                }
+            });
+        });
+    }
+
+    /**
+     * Reads a key.
+     *
+     * @param key The key.
+     * @return The value, or null if the key does not exist.
+     * @throws IOException If the request fails.
+     */
+    public String get(String key) throws IOException {
+        return await(getAsync(key));
+    }
+
+    /**
+     * Inserts or updates a key.
+     *
+     * @param key   The key.
+     * @param value The value.
+     * @throws IOException If the request fails.
+     */
+    public void put(String key, String value) throws IOException {
+        await(putAsync(key, value));
+    }
+
+    /**
+     * Deletes a key.
+     *
+     * @param key The key.
+     * @throws IOException If the request fails.
+     */
+    public void delete(String key) throws IOException {
+        await(deleteAsync(key));
+    }
+
+    /**
+     * Scans a key range on the server.
+     *
+     * @param startKey The first key (inclusive), or null to start at the smallest key.
+     * @param endKey   The end key (exclusive), or null for no upper bound.
+     * @param limit    The maximum number of keys.
+     * @return The entries, in the server's key order.
+     * @throws IOException If the request fails.
+     */
+    public List<Map.Entry<String, String>> scan(String startKey, String endKey, int limit) throws IOException {
+        return await(scanAsync(startKey, endKey, limit));
+    }
+
+    /**
+     * Applies a batch of writes.
+     *
+     * @param batch The writes.
+     * @throws IOException If the request fails.
+     */
+    public void write(WriteBatch batch) throws IOException {
+        await(writeAsync(batch));
+    }
+
+    /**
+     * Writes a request. The stream is flushed unless another thread is waiting to send,
+     * in which case the last sender flushes for all of them.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> send(byte op, Operands operands) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        sendLock.lock();
+        try {
+            if (failure != null) {
+                future.completeExceptionally(failure);
+                return (CompletableFuture<T>) (CompletableFuture<?>) future;
+            }
+            int id = nextId++;
+            out.writeInt(id);
+            out.writeByte(op);
+            operands.write(out);
+            pending.add(new Pending(id, op, future));
+            if (!sendLock.hasQueuedThreads()) {
+                out.flush();
+            }
+        } catch (IOException e) {
+            fail(e);
+            future.completeExceptionally(failure); // Not queued yet, so not completed by fail
+        } finally {
+            sendLock.unlock();
+        }
+        return (CompletableFuture<T>) (CompletableFuture<?>) future;
+    }
+
+    private void readLoop() {
+        try {
+            while (true) {
+                int id = in.readInt();
+                byte status = in.readByte();
+                Pending request = pending.poll();
+                if (request == null || request.id != id) {
+                    throw new IOException("Out of order response " + id);
+                }
+
+                if (status == KVProtocol.ERROR) {
+                    request.future.completeExceptionally(new IOException("Server error: " + KVProtocol.readString(in)));
+                } else if (request.op == KVProtocol.GET) {
+                    request.future.complete(KVProtocol.readString(in));
+                } else if (request.op == KVProtocol.SCAN) {
+                    request.future.complete(KVProtocol.readEntries(in));
+                } else {
+                    request.future.complete(null);
+                }
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void fail(IOException e) {
+        sendLock.lock(); // No request is queued after the drain
+        try {
+            if (failure == null) {
+                failure = e;
+            }
+            Pending request;
+            while ((request = pending.poll()) != null) {
+                request.future.completeExceptionally(failure);
+            }
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Closes the connection; requests still in flight fail.
+     *
+     * @throws IOException If the socket cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    /**
+     * Writes the operands of a request.
+     */
+    private interface Operands {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * A request waiting for its response.
+     */
+    private static final class Pending {
+        final int id;
+        final byte op;
+        final CompletableFuture<Object> future;
+
+        Pending(int id, byte op, CompletableFuture<Object> future) {
+            this.id = id;
+            this.op = op;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+// Binary wire format shared by KVServer and KVClient
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Wire format of the key-value server. Every frame starts with a request id echoed by the
+ * response, so a client may pipeline many requests on one connection; responses come back
+ * in request order.
+ *
+ * Request:  [int id][byte op][operands]
+ * Response: [int id][byte status][result]
+ *
+ * Strings are [int length][UTF-8 bytes], length -1 meaning null.
+ *   GET    key                                  -> value
+ *   PUT    key value                            -> (nothing)
+ *   DELETE key                                  -> (nothing)
+ *   SCAN   start end [int limit]                -> [int n] n x (key value)
+ *   BATCH  [int n] n x ([byte op] key [value])  -> (nothing)
+ * An ERROR response carries the message as a string.
+ */
+final class KVProtocol {
+
+    static final byte GET = 1;
+    static final byte PUT = 2;
+    static final byte DELETE = 3;
+    static final byte SCAN = 4;
+    static final byte BATCH = 5;
+
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    // Guards against a corrupted length allocating the heap away
+    private static final int MAX_STRING = 64 << 20;
+
+    private KVProtocol() {
+    }
+
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > MAX_STRING) {
+            throw new IOException("Invalid string length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeEntries(DataOutputStream out, SortedMap<String, String> entries) throws IOException {
+        out.writeInt(entries.size());
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            writeString(out, entry.getKey());
+            writeString(out, entry.getValue());
+        }
+    }
+
+    /**
+     * Reads scan results, in the server's key order (numeric for the B-Tree).
+     */
+    static List<Map.Entry<String, String>> readEntries(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<Map.Entry<String, String>> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String key = readString(in);
+            entries.add(new AbstractMap.SimpleImmutableEntry<>(key, readString(in)));
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,205 @@
+// TCP server exposing a KeyValueEngine
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Serves a {@link KeyValueEngine} over TCP with the {@link KVProtocol} wire format. Each
+ * connection is handled by one thread (virtual when the JDK has them) that reads requests,
+ * runs them against the engine and writes the responses in order. Responses are flushed
+ * only when no further request is already buffered, so pipelined requests share packets.
+ */
+public class KVServer implements Closeable {
+
+    private final KeyValueEngine engine;
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections;
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+    private volatile boolean running = true;
+
+    /**
+     * Binds the server and starts accepting connections.
+     *
+     * @param engine The engine to serve.
+     * @param port   The port on the loopback interface, 0 for an ephemeral one.
+     * @throws IOException If the port cannot be bound.
+     */
+    public KVServer(KeyValueEngine engine, int port) throws IOException {
+        this(engine, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /**
+     * Binds the server and starts accepting connections.
+     *
+     * @param engine  The engine to serve.
+     * @param address The address to bind.
+     * @throws IOException If the address cannot be bound.
+     */
+    public KVServer(KeyValueEngine engine, InetSocketAddress address) throws IOException {
+        this.engine = engine;
+        this.serverSocket = new ServerSocket();
+        serverSocket.bind(address);
+        this.connections = VirtualThreads.newPerTaskExecutor("kv-server-connection");
+        Thread acceptor = new Thread(this::acceptLoop, "kv-server-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * @return The bound port.
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                sockets.add(socket);
+                connections.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), 1 << 16));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream(), 1 << 16))) {
+            while (running) {
+                int id;
+                try {
+                    id = in.readInt();
+                } catch (EOFException e) {
+                    return; // Client closed the connection
+                }
+                handle(id, in, out);
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+        } catch (SocketException e) {
+            // Connection reset or server closing
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("Connection failed: " + e.getMessage());
+            }
+        } finally {
+            sockets.remove(socket);
+        }
+    }
+
+    /**
+     * Reads the rest of one request, runs it and writes the response. Engine failures are
+     * reported to the client; protocol errors close the connection.
+     */
+    private void handle(int id, DataInputStream in, DataOutputStream out) throws IOException {
+        byte op = in.readByte();
+        String key = null;
+        String value = null;
+        String endKey = null;
+        int limit = 0;
+        WriteBatch batch = null;
+
+        switch (op) {
+            case KVProtocol.GET:
+            case KVProtocol.DELETE:
+                key = KVProtocol.readString(in);
+                break;
+            case KVProtocol.PUT:
+                key = KVProtocol.readString(in);
+                value = KVProtocol.readString(in);
+                break;
+            case KVProtocol.SCAN:
+                key = KVProtocol.readString(in);
+                endKey = KVProtocol.readString(in);
+                limit = in.readInt();
+                break;
+            case KVProtocol.BATCH:
+                batch = new WriteBatch();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    byte kind = in.readByte();
+                    String batchKey = KVProtocol.readString(in);
+                    if (kind == KVProtocol.PUT) {
+                        batch.put(batchKey, KVProtocol.readString(in));
+                    } else if (kind == KVProtocol.DELETE) {
+                        batch.delete(batchKey);
+                    } else {
+                        throw new IOException("Invalid batch operation: " + kind);
+                    }
+                }
+                break;
+            default:
+                throw new IOException("Invalid operation: " + op);
+        }
+
+        try {
+            switch (op) {
+                case KVProtocol.GET: {
+                    String result = engine.get(key);
+                    out.writeInt(id);
+                    out.writeByte(KVProtocol.OK);
+                    KVProtocol.writeString(out, result);
+                    return;
+                }
+                case KVProtocol.PUT:
+                    engine.put(key, value);
+                    break;
+                case KVProtocol.DELETE:
+                    engine.delete(key);
+                    break;
+                case KVProtocol.SCAN: {
+                    SortedMap<String, String> entries = engine.scan(key, endKey, limit);
+                    out.writeInt(id);
+                    out.writeByte(KVProtocol.OK);
+                    KVProtocol.writeEntries(out, entries);
+                    return;
+                }
+                default:
+                    engine.write(batch);
+                    break;
+            }
+            out.writeInt(id);
+            out.writeByte(KVProtocol.OK);
+        } catch (IOException | RuntimeException e) {
+            out.writeInt(id);
+            out.writeByte(KVProtocol.ERROR);
+            KVProtocol.writeString(out, String.valueOf(e.getMessage()));
+        }
+    }
+
+    /**
+     * Stops accepting connections and closes the open ones. The engine is left open.
+     *
+     * @throws IOException If the server socket cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverSocket.close();
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        connections.shutdown();
+    }
+}
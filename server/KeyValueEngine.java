@@ -0,0 +1,62 @@
+// Common interface of the storage engines
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.SortedMap;
+
+/**
+ * A key-value storage engine, so servers and benchmarks can drive the LSM Tree and the
+ * B-Tree through the same calls.
+ */
+public interface KeyValueEngine extends Closeable {
+
+    /**
+     * @return A short name for reports.
+     */
+    String name();
+
+    /**
+     * Reads a key.
+     *
+     * @param key The key.
+     * @return The value, or null if the key does not exist.
+     * @throws IOException If an I/O error occurs.
+     */
+    String get(String key) throws IOException;
+
+    /**
+     * Inserts or updates a key.
+     *
+     * @param key   The key.
+     * @param value The value.
+     * @throws IOException If an I/O error occurs.
+     */
+    void put(String key, String value) throws IOException;
+
+    /**
+     * Deletes a key.
+     *
+     * @param key The key.
+     * @throws IOException If an I/O error occurs.
+     */
+    void delete(String key) throws IOException;
+
+    /**
+     * Returns at most {@code limit} keys of a range, in the engine's key order.
+     *
+     * @param startKey The first key (inclusive), or null to start at the smallest key.
+     * @param endKey   The end key (exclusive), or null for no upper bound.
+     * @param limit    The maximum number of keys.
+     * @return The keys and values.
+     * @throws IOException If an I/O error occurs.
+     */
+    SortedMap<String, String> scan(String startKey, String endKey, int limit) throws IOException;
+
+    /**
+     * Applies a batch of writes.
+     *
+     * @param batch The writes.
+     * @throws IOException If an I/O error occurs.
+     */
+    void write(WriteBatch batch) throws IOException;
+}
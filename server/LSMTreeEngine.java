@@ -0,0 +1,54 @@
+// KeyValueEngine over an LSM Tree
+
+import java.io.IOException;
+import java.util.SortedMap;
+
+/**
+ * Exposes an {@link LSMTree} as a {@link KeyValueEngine}. Batches are atomic.
+ */
+public class LSMTreeEngine implements KeyValueEngine {
+
+    private final LSMTree tree;
+
+    /**
+     * @param tree The tree, closed together with the engine.
+     */
+    public LSMTreeEngine(LSMTree tree) {
+        this.tree = tree;
+    }
+
+    @Override
+    public String name() {
+        return "lsmtree";
+    }
+
+    @Override
+    public String get(String key) throws IOException {
+        return tree.search(key);
+    }
+
+    @Override
+    public void put(String key, String value) throws IOException {
+        tree.put(key, value);
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        tree.delete(key);
+    }
+
+    @Override
+    public SortedMap<String, String> scan(String startKey, String endKey, int limit) throws IOException {
+        return tree.scan(startKey, endKey, limit);
+    }
+
+    @Override
+    public void write(WriteBatch batch) throws IOException {
+        tree.write(batch);
+    }
+
+    @Override
+    public void close() throws IOException {
+        tree.close();
+    }
+}
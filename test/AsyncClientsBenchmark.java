@@ -0,0 +1,87 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 10,000 concurrent clients against one LSMTree, 90% reads and 10% writes: each client on its
+ * own virtual thread calling the blocking API, then all clients through the async API.
+ * On JDKs without virtual threads both fall back to a platform thread pool.
+ */
+public class AsyncClientsBenchmark {
+    public static void main(String[] args) throws Exception {
+        final int NUM_KEYS = 50_000;
+        final int MEMTABLE_SIZE = 5_000;
+        final int CLIENTS = 10_000;
+        final int OPS_PER_CLIENT = 20;
+
+        Path dir = Files.createTempDirectory("lsm_async");
+        LSMTree lsmTree = new LSMTree(MEMTABLE_SIZE, dir.resolve("lsm_wal.log").toString(),
+                dir.resolve("sstables").toString());
+        for (int i = 0; i < NUM_KEYS; i++) {
+            lsmTree.put("key" + i, "v" + i);
+        }
+
+        System.out.println("\n=== LSM Tree Async Clients Benchmark ===");
+        System.out.println("Clients: " + CLIENTS + ", ops per client: " + OPS_PER_CLIENT
+                + ", virtual threads: " + (VirtualThreads.isAvailable() ? "yes" : "no (platform pool)") + "\n");
+
+        for (int round = 0; round < 2; round++) {
+            String label = round == 0 ? "(warmup) " : "";
+
+            // Blocking calls, one client thread each
+            ExecutorService clients = VirtualThreads.newExecutor(200);
+            long start = System.nanoTime();
+            for (int c = 0; c < CLIENTS; c++) {
+                clients.execute(() -> {
+                    try {
+                        runClient(lsmTree, NUM_KEYS, OPS_PER_CLIENT);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+            }
+            clients.shutdown();
+            clients.awaitTermination(10, TimeUnit.MINUTES);
+            report(label + "blocking API, client threads", start, CLIENTS * OPS_PER_CLIENT);
+
+            // Async API, every client issues its operations without waiting for each one
+            start = System.nanoTime();
+            List<CompletableFuture<?>> pending = new ArrayList<>();
+            for (int c = 0; c < CLIENTS; c++) {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int op = 0; op < OPS_PER_CLIENT; op++) {
+                    String key = "key" + random.nextInt(NUM_KEYS);
+                    pending.add(random.nextInt(10) == 0 ? lsmTree.putAsync(key, "v" + op) : lsmTree.searchAsync(key));
+                }
+            }
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).join();
+            report(label + "async API", start, CLIENTS * OPS_PER_CLIENT);
+        }
+
+        lsmTree.close();
+        System.out.println("\n=== Benchmark Completed ===");
+    }
+
+    private static void runClient(LSMTree lsmTree, int numKeys, int ops) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int op = 0; op < ops; op++) {
+            String key = "key" + random.nextInt(numKeys);
+            if (random.nextInt(10) == 0) {
+                lsmTree.put(key, "v" + op);
+            } else {
+                lsmTree.search(key);
+            }
+        }
+    }
+
+    private static void report(String name, long start, int ops) {
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-40s %10.0f ops/s  (%.1f ms)%n", name, ops / (elapsed / 1e9), elapsed / 1e6);
+    }
+}
@@ -0,0 +1,84 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Measures lookup throughput and bytes allocated per lookup for BTree.search() and a
+ * reused BTreeCursor (point seeks and short range scans). Allocation is read from the
+ * per-thread allocation counter of the JVM, after a warmup round so JIT effects settle.
+ */
+public class BTreeCursorBenchmark {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws IOException {
+        final int NUM_KEYS = 1_000_000;
+        final int NUM_LOOKUPS = 2_000_000;
+        final int SCAN_LENGTH = 16;
+
+        BTree btree = new BTree(32, Files.createTempDirectory("btree_cursor").resolve("wal.log").toString());
+        btree.bulkLoad(java.util.stream.IntStream.range(0, NUM_KEYS).map(i -> i * 2).iterator(), 0.9);
+
+        int[] lookups = new int[NUM_LOOKUPS];
+        Random random = new Random(42);
+        for (int i = 0; i < NUM_LOOKUPS; i++) {
+            lookups[i] = random.nextInt(NUM_KEYS * 2);
+        }
+
+        BTreeCursor cursor = btree.cursor();
+
+        System.out.println("\n=== B-Tree Cursor Benchmark ===");
+        System.out.println("Keys: " + NUM_KEYS + ", lookups per round: " + NUM_LOOKUPS + "\n");
+
+        for (int round = 0; round < 2; round++) {
+            String label = round == 0 ? "(warmup) " : "";
+
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            long found = 0;
+            for (int key : lookups) {
+                if (btree.search(key) != null) {
+                    found++;
+                }
+            }
+            report(label + "search()", start, allocated, NUM_LOOKUPS, found);
+
+            allocated = allocatedBytes();
+            start = System.nanoTime();
+            found = 0;
+            for (int key : lookups) {
+                if (cursor.seek(key)) {
+                    found++;
+                }
+            }
+            report(label + "cursor.seek()", start, allocated, NUM_LOOKUPS, found);
+
+            allocated = allocatedBytes();
+            start = System.nanoTime();
+            long sum = 0;
+            for (int key : lookups) {
+                cursor.seek(key);
+                for (int j = 0; j < SCAN_LENGTH && cursor.isValid(); j++) {
+                    sum += cursor.key();
+                    cursor.next();
+                }
+            }
+            report(label + "seek+next x" + SCAN_LENGTH, start, allocated, NUM_LOOKUPS, sum);
+        }
+
+        btree.close();
+        System.out.println("\n=== Benchmark Completed ===");
+    }
+
+    private static long allocatedBytes() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static void report(String name, long start, long allocatedBefore, int ops, long checksum) {
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+        System.out.printf("%-28s %,12.0f ops/s  %8.3f bytes/op  (checksum %d)%n",
+                name, ops / (elapsed / 1_000_000_000.0), (double) allocated / ops, checksum);
+    }
+}
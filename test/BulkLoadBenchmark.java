@@ -0,0 +1,62 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.IntStream;
+
+/**
+ * Compares loading sorted keys with repeated insert() against bulkLoad().
+ * Usage: BulkLoadBenchmark [numKeys]
+ */
+public class BulkLoadBenchmark {
+    public static void main(String[] args) throws IOException {
+        final int NUM_KEYS = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        final int t = 32;
+        final double FILL_FACTOR = 0.9;
+
+        Path dir = Files.createTempDirectory("btree_bulk");
+
+        System.out.println("\n=== B-Tree Bulk Load Benchmark ===");
+        System.out.println("Number of keys: " + NUM_KEYS + "\n");
+
+        // a) Repeated insert
+        BTree inserted = new BTree(t, dir.resolve("insert_wal.log").toString());
+        long insertStart = System.nanoTime();
+        for (int key = 0; key < NUM_KEYS; key++) {
+            inserted.insert(key);
+        }
+        long insertEnd = System.nanoTime();
+        double insertTimeMs = (insertEnd - insertStart) / 1_000_000.0;
+        System.out.printf("Insert loop: %.2f ms (WAL: %d bytes)%n",
+                insertTimeMs, Files.size(dir.resolve("insert_wal.log")));
+        inserted.close();
+
+        // b) Bulk load
+        BTree loaded = new BTree(t, dir.resolve("bulk_wal.log").toString());
+        long bulkStart = System.nanoTime();
+        loaded.bulkLoad(IntStream.range(0, NUM_KEYS).iterator(), FILL_FACTOR);
+        long bulkEnd = System.nanoTime();
+        double bulkTimeMs = (bulkEnd - bulkStart) / 1_000_000.0;
+        System.out.printf("Bulk load:   %.2f ms (WAL: %d bytes)%n",
+                bulkTimeMs, Files.size(dir.resolve("bulk_wal.log")));
+        System.out.printf("Speedup:     %.1fx%n", insertTimeMs / bulkTimeMs);
+
+        for (int key = 0; key < NUM_KEYS; key++) {
+            if (loaded.search(key) == null) {
+                throw new IllegalStateException("Missing key " + key);
+            }
+        }
+        loaded.close();
+
+        // c) Recovery from the single BULKLOAD record
+        long recoverStart = System.nanoTime();
+        BTree recovered = new BTree(t, dir.resolve("bulk_wal.log").toString());
+        long recoverEnd = System.nanoTime();
+        System.out.printf("Recovery:    %.2f ms%n", (recoverEnd - recoverStart) / 1_000_000.0);
+        if (recovered.search(NUM_KEYS - 1) == null) {
+            throw new IllegalStateException("Recovered tree is missing keys");
+        }
+        recovered.close();
+
+        System.out.println("\n=== Benchmark Completed ===");
+    }
+}
@@ -0,0 +1,90 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * On-disk size, write throughput and point-read throughput of SSTables written with each
+ * compression codec, with and without the block cache.
+ */
+public class CompressionBenchmark {
+    public static void main(String[] args) throws IOException {
+        final int NUM_KEYS = 200_000;
+        final int NUM_READS = 50_000;
+
+        Path dir = Files.createTempDirectory("lsm_compression");
+        Random random = new Random(42);
+        String[] words = {"user", "order", "status", "pending", "shipped", "amount", "currency", "EUR", "USD"};
+
+        // Semi-structured values, like JSON documents: repetitive but not constant
+        List<SSTable.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < NUM_KEYS; i++) {
+            StringBuilder value = new StringBuilder("{");
+            for (int w = 0; w < 6; w++) {
+                value.append('"').append(words[random.nextInt(words.length)]).append("\":")
+                        .append(random.nextInt(10_000)).append(',');
+            }
+            value.append('}');
+            entries.add(new SSTable.Entry(String.format("key%08d", i), i + 1, value.toString()));
+        }
+
+        String[] lookups = new String[NUM_READS];
+        for (int i = 0; i < NUM_READS; i++) {
+            lookups[i] = String.format("key%08d", random.nextInt(NUM_KEYS));
+        }
+
+        System.out.println("\n=== SSTable Compression Benchmark ===");
+        System.out.println("Entries: " + NUM_KEYS + ", lookups: " + NUM_READS + "\n");
+        System.out.printf("%-10s %12s %8s %14s %16s %16s%n",
+                "codec", "bytes", "ratio", "write MB/s", "read us (none)", "read us (cache)");
+
+        long rawSize = 0;
+        for (CompressionCodec codec : new CompressionCodec[]{CompressionCodec.NONE, CompressionCodec.LZ, CompressionCodec.DEFLATE}) {
+            for (int round = 0; round < 2; round++) {
+                SSTableOptions options = new SSTableOptions().setCompression(codec);
+                long start = System.nanoTime();
+                SSTable uncached = SSTable.create(entries.iterator(), dir.toString(), options);
+                long writeNanos = System.nanoTime() - start;
+                if (codec == CompressionCodec.NONE) {
+                    rawSize = uncached.getDiskSize();
+                }
+
+                double uncachedRead = readAll(uncached, lookups);
+
+                options.setBlockCache(new BlockCache(64L << 20));
+                SSTable cached = SSTable.create(entries.iterator(), dir.toString(), options);
+                readAll(cached, lookups); // Fill the cache
+                double cachedRead = readAll(cached, lookups);
+
+                if (round == 1) {
+                    System.out.printf("%-10s %12d %7.2fx %14.1f %16.2f %16.2f%n", codec.name(),
+                            uncached.getDiskSize(), (double) rawSize / uncached.getDiskSize(),
+                            rawSize / 1e6 / (writeNanos / 1e9), uncachedRead, cachedRead);
+                }
+
+                uncached.ref();
+                uncached.unref();
+                cached.ref();
+                cached.unref();
+            }
+        }
+
+        System.out.println("\n=== Benchmark Completed ===");
+    }
+
+    private static double readAll(SSTable table, String[] keys) throws IOException {
+        long start = System.nanoTime();
+        int found = 0;
+        for (String key : keys) {
+            if (table.search(key) != null) {
+                found++;
+            }
+        }
+        if (found != keys.length) {
+            throw new IllegalStateException("Missing keys: " + (keys.length - found));
+        }
+        return (System.nanoTime() - start) / 1_000.0 / keys.length;
+    }
+}
@@ -0,0 +1,104 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Multi-threaded throughput of a shared concurrent BTree, from 1 thread up to all cores.
+ * Runs a read-only and a mixed (90% search, 10% insert/delete pairs) workload.
+ */
+public class ConcurrentBTreeBenchmark {
+    public static void main(String[] args) throws Exception {
+        final int PRELOAD_KEYS = 100_000;
+        final int KEY_RANGE = PRELOAD_KEYS * 2;
+        final int OPS_PER_THREAD = 200_000;
+        final int maxThreads = Runtime.getRuntime().availableProcessors();
+
+        Path dir = Files.createTempDirectory("btree_concurrent");
+        BTree btree = new BTree(16, dir.resolve("btree_wal.log").toString(), true);
+
+        for (int i = 0; i < PRELOAD_KEYS; i++) {
+            btree.insert(i * 2);
+        }
+
+        // Sanity check: every preloaded key must be visible
+        for (int i = 0; i < PRELOAD_KEYS; i++) {
+            if (btree.search(i * 2) == null) {
+                throw new IllegalStateException("Missing key " + (i * 2));
+            }
+        }
+
+        System.out.println("\n=== Concurrent B-Tree Benchmark ===");
+        System.out.println("Cores: " + maxThreads + ", preloaded keys: " + PRELOAD_KEYS + "\n");
+
+        for (int searchPct : new int[]{100, 90}) {
+            System.out.println("*** " + searchPct + "% search ***");
+            for (int threads = 1; threads <= maxThreads; threads = nextThreadCount(threads, maxThreads)) {
+                double opsPerSec = run(btree, threads, OPS_PER_THREAD, KEY_RANGE, searchPct);
+                System.out.printf("Threads: %3d  Throughput: %,.0f ops/s%n", threads, opsPerSec);
+            }
+            System.out.println();
+        }
+
+        btree.close();
+        System.out.println("=== Benchmark Completed ===");
+    }
+
+    private static int nextThreadCount(int threads, int maxThreads) {
+        if (threads == maxThreads) {
+            return maxThreads + 1;
+        }
+        return Math.min(threads * 2, maxThreads);
+    }
+
+    private static double run(BTree btree, int threads, int opsPerThread, int keyRange, int searchPct)
+            throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+
+        for (int w = 0; w < threads; w++) {
+            final int workerId = w;
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                    for (int i = 0; i < opsPerThread; i++) {
+                        if (random.nextInt(100) < searchPct) {
+                            btree.search(random.nextInt(keyRange));
+                        } else {
+                            // Odd keys owned by this worker: never preloaded and never shared,
+                            // so the delete always finds the key it just inserted
+                            int key = (random.nextInt(keyRange / 2 / threads) * threads + workerId) * 2 + 1;
+                            btree.insert(key);
+                            btree.delete(key);
+                            i++;
+                        }
+                    }
+                } catch (InterruptedException | IOException e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - startTime;
+
+        if (!failures.isEmpty()) {
+            throw new IllegalStateException("Worker failed", failures.get(0));
+        }
+
+        return (double) threads * opsPerThread / (elapsed / 1_000_000_000.0);
+    }
+}
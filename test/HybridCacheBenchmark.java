@@ -0,0 +1,81 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+/**
+ * Hybrid mode under a zipfian load: a small hot read set over a larger, write-heavy tree.
+ * The same tree is read without a hot key cache, with a plain LRU cache and with a TinyLFU
+ * cache of the same size. Every so often a batch job reads a run of cold keys, the scan
+ * pollution that flushes an LRU cache; TinyLFU admission keeps the hot set. The block cache
+ * stays at its default in all three runs.
+ */
+public class HybridCacheBenchmark {
+    public static void main(String[] args) throws Exception {
+        final int RECORDS = Integer.getInteger("records", 500_000);
+        final int OPERATIONS = Integer.getInteger("operations", 1_000_000);
+        final int UPDATE_PERCENT = 20;
+        final int SCAN_EVERY = 20_000;  // Operations between batch jobs
+        final int SCAN_LENGTH = 5_000;  // Cold keys read by a batch job
+        final long CACHE_BYTES = 4 << 20;
+        final int MEMTABLE_SIZE = 50_000;
+
+        System.out.println("\n=== LSM Tree Hybrid Hot Key Cache Benchmark ===");
+        System.out.println("Records: " + RECORDS + ", operations: " + OPERATIONS + " (" + UPDATE_PERCENT
+                + "% updates, zipfian), cache: " + (CACHE_BYTES >> 20) + " MB, batch job: " + SCAN_LENGTH
+                + " cold reads every " + SCAN_EVERY + " operations\n");
+
+        Path dir = Files.createTempDirectory("lsm_hybrid");
+        LSMTree tree = new LSMTree(MEMTABLE_SIZE, dir + "/wal.log", dir + "/sstables");
+        String value = "v".repeat(100);
+        for (int i = 0; i < RECORDS; i++) {
+            tree.put(String.valueOf(i), value);
+        }
+        tree.compact();
+
+        YCSBWorkload workload = new YCSBWorkload("hybrid", 100 - UPDATE_PERCENT, UPDATE_PERCENT, 0, 0,
+                YCSBWorkload.ZIPFIAN, RECORDS);
+        String[] modes = {"none", "LRU", "TinyLFU"};
+        for (int round = 0; round < 2; round++) { // The first round warms up the JIT and page cache
+            for (String mode : modes) {
+                tree.compact(); // Every mode starts from the same shape of tree
+                HotKeyCache cache = mode.equals("none") ? null : new HotKeyCache(CACHE_BYTES, mode.equals("TinyLFU"));
+                tree.setHotKeyCache(cache);
+                SplittableRandom random = new SplittableRandom(42);
+                LatencyHistogram reads = new LatencyHistogram();
+                int scanned = 0;
+                long scanHits = 0;
+
+                long start = System.nanoTime();
+                for (int i = 0; i < OPERATIONS; i++) {
+                    if (i % SCAN_EVERY == SCAN_EVERY - 1) {
+                        long hitsBefore = cache == null ? 0 : cache.getHits();
+                        int from = random.nextInt(RECORDS - SCAN_LENGTH);
+                        for (int k = from; k < from + SCAN_LENGTH; k++) {
+                            tree.search(String.valueOf(k));
+                        }
+                        scanned += SCAN_LENGTH;
+                        scanHits += cache == null ? 0 : cache.getHits() - hitsBefore;
+                    }
+                    String key = workload.nextKey(random);
+                    if (workload.nextOperation(random) == YCSBWorkload.Operation.UPDATE) {
+                        tree.put(key, value);
+                    } else {
+                        long readStart = System.nanoTime();
+                        tree.search(key);
+                        reads.record(System.nanoTime() - readStart);
+                    }
+                }
+                long elapsed = System.nanoTime() - start;
+
+                if (round == 1) {
+                    // Hit rate of the zipfian reads alone, batch job reads left out
+                    double hitRate = cache == null ? 0
+                            : 100.0 * (cache.getHits() - scanHits) / (cache.getHits() + cache.getMisses() - scanned);
+                    System.out.printf("%-8s %,9.0f ops/s  hit rate %5.1f%%  reads: %s%n",
+                            mode, (OPERATIONS + scanned) / (elapsed / 1e9), hitRate, reads.summary());
+                }
+            }
+        }
+        tree.close();
+    }
+}
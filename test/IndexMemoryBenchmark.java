@@ -0,0 +1,80 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Heap used by the SSTable index: the former TreeMap of every 10th key against the compact
+ * resident index and the partitioned index, with the lookup cost of each.
+ */
+public class IndexMemoryBenchmark {
+    public static void main(String[] args) throws IOException {
+        final int NUM_KEYS = 1_000_000;
+        final int NUM_READS = 50_000;
+
+        Path dir = Files.createTempDirectory("lsm_index");
+        Random random = new Random(42);
+        List<SSTable.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < NUM_KEYS; i++) {
+            entries.add(new SSTable.Entry(String.format("tenant-%03d/orders/%012d", i % 100, i), i + 1, "v" + i));
+        }
+        entries.sort((a, b) -> a.key.compareTo(b.key));
+
+        String[] lookups = new String[NUM_READS];
+        for (int i = 0; i < NUM_READS; i++) {
+            lookups[i] = entries.get(random.nextInt(NUM_KEYS)).key;
+        }
+
+        System.out.println("\n=== SSTable Index Memory Benchmark ===");
+        System.out.println("Keys: " + NUM_KEYS + "\n");
+        System.out.printf("%-28s %14s %16s %14s%n", "index", "heap bytes", "MB per 1B keys", "read us/key");
+
+        // Former layout: TreeMap<String, Long> holding every 10th key
+        long before = usedHeap();
+        TreeMap<String, Long> sparse = new TreeMap<>();
+        for (int i = 0; i < NUM_KEYS; i += 10) {
+            sparse.put(new String(entries.get(i).key), (long) i * 40);
+        }
+        long treeMapBytes = usedHeap() - before;
+        report("TreeMap, every 10th key", treeMapBytes, NUM_KEYS, "-");
+        sparse = null;
+
+        for (int partitionSize : new int[]{0, 16, 128}) {
+            SSTableOptions options = new SSTableOptions().setIndexPartitionSize(partitionSize)
+                    .setBlockCache(new BlockCache(4L << 20));
+            SSTable table = SSTable.create(entries.iterator(), dir.toString(), options);
+            readAll(table, lookups); // Warmup
+            String name = partitionSize == 0 ? "compact, resident" : "partitioned, " + partitionSize + " blocks";
+            report(name, table.getIndexMemoryUsage(), NUM_KEYS, String.format("%.2f", readAll(table, lookups)));
+            table.ref();
+            table.unref();
+        }
+
+        System.out.println("\n=== Benchmark Completed ===");
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void report(String name, long bytes, int keys, String readMicros) {
+        System.out.printf("%-28s %14d %16.1f %14s%n", name, bytes, bytes * (1e9 / keys) / (1 << 20), readMicros);
+    }
+
+    private static double readAll(SSTable table, String[] keys) throws IOException {
+        long start = System.nanoTime();
+        for (String key : keys) {
+            if (table.search(key) == null) {
+                throw new IllegalStateException("Missing key: " + key);
+            }
+        }
+        return (System.nanoTime() - start) / 1_000.0 / keys.length;
+    }
+}
@@ -0,0 +1,108 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load generator for KVServer over loopback, against the LSM Tree and the B-Tree engines.
+ * Several connections each keep a fixed number of pipelined requests in flight; the mix is
+ * 70% get, 20% put, 5% scan (10 keys) and 5% batch (10 puts). Reports throughput and
+ * latency percentiles per engine.
+ *
+ * Usage: KVLoadGenerator [connections] [pipeline depth] [requests per connection]
+ */
+public class KVLoadGenerator {
+    public static void main(String[] args) throws Exception {
+        final int CONNECTIONS = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        final int DEPTH = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        final int REQUESTS = args.length > 2 ? Integer.parseInt(args[2]) : 50_000;
+        final int NUM_KEYS = 100_000;
+
+        System.out.println("\n=== Key-Value Server Load Generator ===");
+        System.out.println("Connections: " + CONNECTIONS + ", pipeline depth: " + DEPTH
+                + ", requests per connection: " + REQUESTS + "\n");
+
+        for (String engineName : new String[]{"lsmtree", "btree"}) {
+            Path dir = Files.createTempDirectory("kv_load");
+            KeyValueEngine engine = engineName.equals("lsmtree")
+                    ? new LSMTreeEngine(new LSMTree(10_000, dir.resolve("lsm_wal.log").toString(), dir.resolve("sstables").toString()))
+                    : new BTreeEngine(new BTree(32, dir.resolve("btree_wal.log").toString(), true));
+            for (int i = 0; i < NUM_KEYS; i += 2) {
+                engine.put(String.valueOf(i), "value" + i);
+            }
+
+            try (KVServer server = new KVServer(engine, 0)) {
+                for (int round = 0; round < 2; round++) {
+                    LatencyHistogram histogram = new LatencyHistogram();
+                    AtomicLong errors = new AtomicLong();
+                    List<Thread> drivers = new ArrayList<>();
+                    List<KVClient> clients = new ArrayList<>();
+                    for (int c = 0; c < CONNECTIONS; c++) {
+                        KVClient client = new KVClient(server.getPort());
+                        clients.add(client);
+                        drivers.add(new Thread(() -> drive(client, REQUESTS, DEPTH, NUM_KEYS, histogram, errors)));
+                    }
+
+                    long start = System.nanoTime();
+                    drivers.forEach(Thread::start);
+                    for (Thread driver : drivers) {
+                        driver.join();
+                    }
+                    long elapsed = System.nanoTime() - start;
+                    for (KVClient client : clients) {
+                        client.close();
+                    }
+
+                    System.out.printf("%-8s %s%10.0f req/s  %s  errors %d%n", engineName, round == 0 ? "(warmup) " : "",
+                            CONNECTIONS * (double) REQUESTS / (elapsed / 1e9), histogram.summary(), errors.get());
+                }
+            }
+            engine.close();
+        }
+
+        System.out.println("\n=== Load Generation Completed ===");
+    }
+
+    private static void drive(KVClient client, int requests, int depth, int numKeys,
+                              LatencyHistogram histogram, AtomicLong errors) {
+        Semaphore inFlight = new Semaphore(depth);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try {
+            for (int i = 0; i < requests; i++) {
+                inFlight.acquire();
+                String key = String.valueOf(random.nextInt(numKeys));
+                int op = random.nextInt(100);
+                long start = System.nanoTime();
+
+                CompletableFuture<?> request;
+                if (op < 70) {
+                    request = client.getAsync(key);
+                } else if (op < 90) {
+                    request = client.putAsync(key, "value" + i);
+                } else if (op < 95) {
+                    request = client.scanAsync(key, null, 10);
+                } else {
+                    WriteBatch batch = new WriteBatch();
+                    for (int b = 0; b < 10; b++) {
+                        batch.put(String.valueOf(random.nextInt(numKeys)), "batch" + i);
+                    }
+                    request = client.writeAsync(batch);
+                }
+                request.whenComplete((result, error) -> {
+                    histogram.record(System.nanoTime() - start);
+                    if (error != null) {
+                        errors.incrementAndGet();
+                    }
+                    inFlight.release();
+                });
+            }
+            inFlight.acquire(depth); // Wait for the tail
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
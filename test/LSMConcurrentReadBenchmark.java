@@ -0,0 +1,101 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Read throughput of a shared LSMTree from 1 thread up to all cores, while a background
+ * thread keeps writing and compacting.
+ */
+public class LSMConcurrentReadBenchmark {
+    public static void main(String[] args) throws Exception {
+        final int NUM_KEYS = 20_000;
+        final int MEMTABLE_SIZE = 1000;
+        final int READS_PER_THREAD = 20_000;
+        final int maxThreads = Runtime.getRuntime().availableProcessors();
+
+        Path dir = Files.createTempDirectory("lsm_concurrent");
+        LSMTree lsmTree = new LSMTree(MEMTABLE_SIZE, dir.resolve("lsm_wal.log").toString(),
+                dir.resolve("sstables").toString());
+        for (int i = 0; i < NUM_KEYS; i++) {
+            lsmTree.put("key" + i, "v" + i);
+        }
+        lsmTree.compact();
+
+        // Background writer: overwrites keys and compacts after every few flushes
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger compactions = new AtomicInteger();
+        Thread background = new Thread(() -> {
+            int i = 0;
+            try {
+                while (running.get()) {
+                    lsmTree.put("key" + (i % NUM_KEYS), "v" + i);
+                    if (++i % (MEMTABLE_SIZE * 3) == 0) {
+                        lsmTree.compact();
+                        compactions.incrementAndGet();
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        background.start();
+
+        System.out.println("\n=== LSM Tree Concurrent Read Benchmark ===");
+        System.out.println("Cores: " + maxThreads + ", keys: " + NUM_KEYS + " (writes + compaction running)\n");
+
+        for (int threads = 1; threads <= maxThreads; threads = threads == maxThreads ? threads + 1 : Math.min(threads * 2, maxThreads)) {
+            double opsPerSec = run(lsmTree, threads, READS_PER_THREAD, NUM_KEYS);
+            System.out.printf("Threads: %3d  Reads: %,.0f ops/s%n", threads, opsPerSec);
+        }
+
+        running.set(false);
+        background.join();
+        System.out.println("\nCompactions during run: " + compactions.get());
+
+        lsmTree.close();
+        System.out.println("=== Benchmark Completed ===");
+    }
+
+    private static double run(LSMTree lsmTree, int threads, int readsPerThread, int numKeys)
+            throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        AtomicInteger missing = new AtomicInteger();
+
+        for (int w = 0; w < threads; w++) {
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                    for (int i = 0; i < readsPerThread; i++) {
+                        if (lsmTree.search("key" + random.nextInt(numKeys)) == null) {
+                            missing.incrementAndGet();
+                        }
+                    }
+                } catch (InterruptedException | IOException e) {
+                    e.printStackTrace();
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - startTime;
+
+        if (missing.get() > 0) {
+            throw new IllegalStateException(missing.get() + " reads missed an existing key");
+        }
+        return (double) threads * readsPerThread / (elapsed / 1_000_000_000.0);
+    }
+}
@@ -24,10 +24,14 @@ public class LSMTreeTest {
             System.out.println("banana -> " + lsmTree.search("banana"));
             System.out.println("kiwi -> " + lsmTree.search("kiwi"));   // not inserted, should be null
 
+            // Snapshot before the delete keeps seeing the old value
+            Snapshot snapshot = lsmTree.getSnapshot();
+
             System.out.println("\nDeleting 'banana' from LSM Tree.");
             lsmTree.delete("banana");
 
             System.out.println("banana -> " + lsmTree.search("banana")); // should be null after deletion
+            System.out.println("banana (snapshot) -> " + lsmTree.search("banana", snapshot)); // still yellow
 
             // 5. Compact the SSTables
             System.out.println("\nPerforming compaction...");
@@ -36,6 +40,8 @@ public class LSMTreeTest {
             // 6. Search again after compaction
             System.out.println("apple -> " + lsmTree.search("apple"));
             System.out.println("banana -> " + lsmTree.search("banana"));
+            System.out.println("banana (snapshot) -> " + lsmTree.search("banana", snapshot));
+            snapshot.close();
 
             lsmTree.close();
         } catch (IOException e) {
@@ -0,0 +1,87 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Concurrent counter increments: a blind put per increment (the throughput to aim for, but
+ * wrong), a search followed by a put (the read path on every write, and increments lost to
+ * races), and a merge with an adding {@link MergeOperator}. Then the cost of reading the
+ * counters while their operands pile up, and after a compaction folded them.
+ */
+public class MergeBenchmark {
+    public static void main(String[] args) throws Exception {
+        final int THREADS = 4;
+        final int INCREMENTS = 100_000; // Per thread
+        final int COUNTERS = 1_000;
+        final int MEMTABLE_SIZE = 20_000;
+
+        System.out.println("\n=== LSM Tree Merge Operator Benchmark ===");
+        System.out.println("Threads: " + THREADS + ", increments: " + THREADS * INCREMENTS + ", counters: " + COUNTERS + "\n");
+
+        MergeOperator add = (key, existing, operand) ->
+                Long.toString((existing == null ? 0 : Long.parseLong(existing)) + Long.parseLong(operand));
+        for (String mode : new String[]{"put", "search+put", "merge", "put", "search+put", "merge"}) {
+            Path dir = Files.createTempDirectory("lsm_merge");
+            LSMTree tree = new LSMTree(MEMTABLE_SIZE, dir + "/wal.log", dir + "/sstables");
+            tree.setMergeOperator(add);
+
+            List<Thread> threads = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int t = 0; t < THREADS; t++) {
+                Thread thread = new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    try {
+                        for (int i = 0; i < INCREMENTS; i++) {
+                            String key = counter(random.nextInt(COUNTERS));
+                            if (mode.equals("put")) {
+                                tree.put(key, "1");
+                            } else if (mode.equals("search+put")) {
+                                String value = tree.search(key);
+                                tree.put(key, Long.toString((value == null ? 0 : Long.parseLong(value)) + 1));
+                            } else {
+                                tree.merge(key, "1");
+                            }
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            long elapsed = System.nanoTime() - start;
+
+            long readStart = System.nanoTime();
+            long total = sum(tree, COUNTERS);
+            long read = System.nanoTime() - readStart;
+            System.out.printf("%-11s %,10.0f increments/s  counted %,9d of %,d  read all %,7.1f ms",
+                    mode, THREADS * (double) INCREMENTS / (elapsed / 1e9), total, THREADS * INCREMENTS, read / 1e6);
+            if (mode.equals("merge")) {
+                tree.compact();
+                readStart = System.nanoTime();
+                sum(tree, COUNTERS);
+                System.out.printf(", %,5.1f ms after compaction", (System.nanoTime() - readStart) / 1e6);
+            }
+            System.out.println();
+            tree.close();
+        }
+    }
+
+    private static long sum(LSMTree tree, int counters) throws Exception {
+        long total = 0;
+        for (int i = 0; i < counters; i++) {
+            String value = tree.search(counter(i));
+            total += value == null ? 0 : Long.parseLong(value);
+        }
+        return total;
+    }
+
+    private static String counter(int i) {
+        return "counter/" + i;
+    }
+}
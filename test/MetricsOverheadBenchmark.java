@@ -0,0 +1,61 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Put and search throughput of an LSM Tree with metrics enabled and disabled
+ * ({@code oltp.metrics=false}), alternating rounds in one JVM so both see the same JIT state.
+ * Prints the tree's stats dump at the end.
+ */
+public class MetricsOverheadBenchmark {
+    public static void main(String[] args) throws Exception {
+        final int OPERATIONS = 200_000;
+        final int MEMTABLE_SIZE = 10_000;
+        final int ROUNDS = 4;
+
+        System.out.println("\n=== Metrics Overhead Benchmark ===");
+        System.out.println("Operations per round: " + OPERATIONS + "\n");
+
+        double[] putRates = new double[2];
+        double[] searchRates = new double[2];
+        String stats = null;
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int mode = 0; mode < 2; mode++) {
+                boolean enabled = mode == 0;
+                System.setProperty("oltp.metrics", String.valueOf(enabled));
+                Path dir = Files.createTempDirectory("lsm_metrics");
+                LSMTree tree = new LSMTree(MEMTABLE_SIZE, dir.resolve("wal.log").toString(), dir.resolve("sstables").toString());
+
+                long start = System.nanoTime();
+                for (int i = 0; i < OPERATIONS; i++) {
+                    tree.put("key" + i, "value" + i);
+                }
+                double putRate = OPERATIONS / ((System.nanoTime() - start) / 1e9);
+
+                start = System.nanoTime();
+                for (int i = 0; i < OPERATIONS; i++) {
+                    tree.search("key" + (i * 7919 % OPERATIONS));
+                }
+                double searchRate = OPERATIONS / ((System.nanoTime() - start) / 1e9);
+
+                if (round > 0) { // First round is warmup
+                    putRates[mode] += putRate / (ROUNDS - 1);
+                    searchRates[mode] += searchRate / (ROUNDS - 1);
+                }
+                if (enabled) {
+                    tree.compact();
+                    stats = tree.getStats();
+                }
+                tree.close();
+            }
+        }
+        System.clearProperty("oltp.metrics");
+
+        System.out.printf("Put:    enabled %,10.0f ops/s   disabled %,10.0f ops/s   overhead %5.1f%%%n",
+                putRates[0], putRates[1], 100 * (1 - putRates[0] / putRates[1]));
+        System.out.printf("Search: enabled %,10.0f ops/s   disabled %,10.0f ops/s   overhead %5.1f%%%n",
+                searchRates[0], searchRates[1], 100 * (1 - searchRates[0] / searchRates[1]));
+        System.out.println("\n" + stats);
+
+        System.out.println("=== Benchmark Completed ===");
+    }
+}
@@ -0,0 +1,85 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Per-key cost of LSMTree.search in a loop against multiGet (sequential and parallel block reads),
+ * for requests of a few hundred keys spread over several SSTables.
+ */
+public class MultiGetBenchmark {
+    public static void main(String[] args) throws IOException {
+        final int NUM_KEYS = 50_000;
+        final int MEMTABLE_SIZE = 5_000;
+        final int KEYS_PER_REQUEST = 300;
+        final int REQUESTS = 50;
+
+        Path dir = Files.createTempDirectory("lsm_multiget");
+        LSMTree lsmTree = new LSMTree(MEMTABLE_SIZE, dir.resolve("lsm_wal.log").toString(),
+                dir.resolve("sstables").toString());
+        Random random = new Random(42);
+        for (int i = 0; i < NUM_KEYS; i++) {
+            int key = random.nextInt(NUM_KEYS);
+            lsmTree.put("key" + key, "v" + i);
+        }
+
+        List<List<String>> requests = new ArrayList<>();
+        for (int r = 0; r < REQUESTS; r++) {
+            List<String> keys = new ArrayList<>();
+            for (int i = 0; i < KEYS_PER_REQUEST; i++) {
+                keys.add("key" + random.nextInt(NUM_KEYS));
+            }
+            requests.add(keys);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+        System.out.println("\n=== LSM Tree MultiGet Benchmark ===");
+        System.out.println("Keys: " + NUM_KEYS + ", keys per request: " + KEYS_PER_REQUEST + "\n");
+
+        for (int round = 0; round < 2; round++) {
+            String label = round == 0 ? "(warmup) " : "";
+
+            long start = System.nanoTime();
+            long found = 0;
+            for (List<String> keys : requests) {
+                for (String key : keys) {
+                    if (lsmTree.search(key) != null) {
+                        found++;
+                    }
+                }
+            }
+            report(label + "search() loop", start, REQUESTS * KEYS_PER_REQUEST, found);
+
+            start = System.nanoTime();
+            found = 0;
+            for (List<String> keys : requests) {
+                Map<String, String> values = lsmTree.multiGet(keys);
+                found += keys.stream().filter(values::containsKey).count();
+            }
+            report(label + "multiGet()", start, REQUESTS * KEYS_PER_REQUEST, found);
+
+            start = System.nanoTime();
+            found = 0;
+            for (List<String> keys : requests) {
+                Map<String, String> values = lsmTree.multiGet(keys, executor);
+                found += keys.stream().filter(values::containsKey).count();
+            }
+            report(label + "multiGet(parallel)", start, REQUESTS * KEYS_PER_REQUEST, found);
+        }
+
+        executor.shutdown();
+        lsmTree.close();
+        System.out.println("\n=== Benchmark Completed ===");
+    }
+
+    private static void report(String name, long start, int keys, long found) {
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-30s %10.2f us/key  (found %d)%n", name, elapsed / 1_000.0 / keys, found);
+    }
+}
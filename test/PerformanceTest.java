@@ -1,5 +1,7 @@
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Random;
 
 public class PerformanceTest {
@@ -8,9 +10,10 @@ public class PerformanceTest {
         final int SEARCH_FRACTION = 30;
         final int DELETE_FRACTION = 20;
 
-        String btreeWalPath = "C:/Users/danie/Desktop/oltp/wal/btree_stress_wal.log";
-        String lsmWalPath   = "C:/Users/danie/Desktop/oltp/wal/lsm_stress_wal.log";
-        String sstableDir   = "C:/Users/danie/Desktop/oltp/sstables_stress/";
+        Path dir = Paths.get(System.getProperty("java.io.tmpdir"), "stress-" + System.nanoTime());
+        String btreeWalPath = dir.resolve("btree_stress_wal.log").toString();
+        String lsmWalPath   = dir.resolve("lsm_stress_wal.log").toString();
+        String sstableDir   = dir.resolve("sstables_stress").toString();
 
         // For LSM Tree
         int memTableSize = 1000;
@@ -94,7 +97,7 @@ public class PerformanceTest {
 
             // Reset or re-initialize data by creating a new LSM instance
             lsmTree.close();
-            Files.deleteIfExists(java.nio.file.Paths.get(lsmWalPath)); // Clear WAL
+            Files.deleteIfExists(Paths.get(lsmWalPath)); // Clear WAL
             lsmTree = new LSMTree(memTableSize, lsmWalPath, sstableDir);
 
             // a) Insert
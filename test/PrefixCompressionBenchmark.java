@@ -0,0 +1,73 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Size and lookup cost of SSTables with hierarchical "tenant/table/pk" keys, for several
+ * restart intervals. Interval 1 stores every key in full.
+ */
+public class PrefixCompressionBenchmark {
+    public static void main(String[] args) throws IOException {
+        final int TENANTS = 20;
+        final int TABLES = 10;
+        final int ROWS = 1_000;
+        final int NUM_READS = 50_000;
+
+        Path dir = Files.createTempDirectory("lsm_prefix");
+        Random random = new Random(42);
+
+        // Sorted like a MemTable flush: tenant, then table, then primary key
+        List<SSTable.Entry> entries = new ArrayList<>();
+        long textSize = 0;
+        long keyBytes = 0;
+        for (int tenant = 0; tenant < TENANTS; tenant++) {
+            for (int table = 0; table < TABLES; table++) {
+                for (int row = 0; row < ROWS; row++) {
+                    String key = String.format("tenant-%04d/table_%s/%010d", tenant, "orders_v" + table, row * 7L);
+                    String value = Integer.toHexString(random.nextInt());
+                    entries.add(new SSTable.Entry(key, entries.size() + 1, value));
+                    keyBytes += key.getBytes(StandardCharsets.UTF_8).length;
+                    textSize += (key + " " + entries.size() + " " + value + "\n").getBytes(StandardCharsets.UTF_8).length;
+                }
+            }
+        }
+        entries.sort((a, b) -> a.key.compareTo(b.key));
+
+        String[] lookups = new String[NUM_READS];
+        for (int i = 0; i < NUM_READS; i++) {
+            lookups[i] = entries.get(random.nextInt(entries.size())).key;
+        }
+
+        System.out.println("\n=== SSTable Prefix Compression Benchmark ===");
+        System.out.println("Entries: " + entries.size() + ", average key length: " + keyBytes / entries.size()
+                + " bytes, text format size: " + textSize + " bytes\n");
+        System.out.printf("%-10s %12s %12s %14s%n", "restart", "bytes", "vs text", "read us/key");
+
+        for (int interval : new int[]{1, 4, 16, 64}) {
+            SSTableOptions options = new SSTableOptions().setRestartInterval(interval);
+            SSTable table = SSTable.create(entries.iterator(), dir.toString(), options);
+            readAll(table, lookups); // Warmup
+            double read = readAll(table, lookups);
+            System.out.printf("%-10d %12d %11.1f%% %14.2f%n", interval, table.getDiskSize(),
+                    100.0 * table.getDiskSize() / textSize, read);
+            table.ref();
+            table.unref();
+        }
+
+        System.out.println("\n=== Benchmark Completed ===");
+    }
+
+    private static double readAll(SSTable table, String[] keys) throws IOException {
+        long start = System.nanoTime();
+        for (String key : keys) {
+            if (table.search(key) == null) {
+                throw new IllegalStateException("Missing key: " + key);
+            }
+        }
+        return (System.nanoTime() - start) / 1_000.0 / keys.length;
+    }
+}
@@ -0,0 +1,90 @@
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SortedMap;
+
+/**
+ * Replication lag of two read replicas, one in-process and one over TCP on localhost, while a
+ * writer loads the primary. The primary holds data before the log is attached, so both
+ * followers start from a snapshot. Checks at the end that both replicas equal the primary.
+ */
+public class ReplicationBenchmark {
+    public static void main(String[] args) throws Exception {
+        final int PRELOAD = 10_000;
+        final int WRITES = 100_000;
+        final int MEMTABLE_SIZE = 5_000;
+
+        System.out.println("\n=== LSM Tree Replication Benchmark ===");
+        System.out.println("Preloaded keys: " + PRELOAD + ", writes: " + WRITES + "\n");
+
+        Path dir = Files.createTempDirectory("lsm_replication");
+        LSMTree primary = new LSMTree(MEMTABLE_SIZE, dir + "/primary/wal.log", dir + "/primary/sstables");
+        for (int i = 0; i < PRELOAD; i++) {
+            primary.put("key" + i, "initial" + i);
+        }
+
+        ReplicationLog log = new ReplicationLog(primary, 200_000);
+        ReplicationServer server = new ReplicationServer(log, 0);
+        LSMTree localReplica = new LSMTree(MEMTABLE_SIZE, dir + "/local/wal.log", dir + "/local/sstables");
+        LSMTree remoteReplica = new LSMTree(MEMTABLE_SIZE, dir + "/remote/wal.log", dir + "/remote/sstables");
+        Follower local = Follower.local(log, localReplica);
+        Follower remote = Follower.remote(new InetSocketAddress("localhost", server.getPort()), remoteReplica);
+
+        Thread writer = new Thread(() -> {
+            try {
+                for (int i = 0; i < WRITES; i++) {
+                    String key = "key" + (i % (PRELOAD * 2));
+                    if (i % 10 == 9) {
+                        primary.delete(key);
+                    } else if (i % 10 == 8) {
+                        WriteBatch batch = new WriteBatch();
+                        batch.put(key, "batched" + i);
+                        batch.put(key + "_b", "batched" + i);
+                        primary.write(batch);
+                    } else {
+                        primary.put(key, "value" + i);
+                    }
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        long begin = System.nanoTime();
+        writer.start();
+        while (writer.isAlive()) {
+            Thread.sleep(200);
+            System.out.printf("%6d ms  primary seq %,9d  local lag %,7d seq / %4d ms  remote lag %,7d seq / %4d ms%n",
+                    (System.nanoTime() - begin) / 1_000_000, primary.getSequence(),
+                    local.getLagSequences(), local.getLagMillis(),
+                    remote.getLagSequences(), remote.getLagMillis());
+        }
+        long written = System.nanoTime() - begin;
+
+        long target = primary.getSequence();
+        while ((local.getAppliedSequence() < target || remote.getAppliedSequence() < target)
+                && local.getFailure() == null && remote.getFailure() == null) {
+            Thread.sleep(10);
+        }
+        long converged = System.nanoTime() - begin;
+
+        System.out.printf("%nPrimary writes:     %,10.0f ops/s%n", WRITES / (written / 1e9));
+        System.out.printf("Both replicas caught up %d ms after the last write%n", (converged - written) / 1_000_000);
+
+        SortedMap<String, String> expected = primary.scan(null, null, Integer.MAX_VALUE);
+        boolean localMatches = expected.equals(localReplica.scan(null, null, Integer.MAX_VALUE));
+        boolean remoteMatches = expected.equals(remoteReplica.scan(null, null, Integer.MAX_VALUE));
+        System.out.println("Live keys: " + expected.size() + ", local replica matches: " + localMatches
+                + ", remote replica matches: " + remoteMatches);
+
+        local.close();
+        remote.close();
+        server.close();
+        log.detach();
+        localReplica.close();
+        remoteReplica.close();
+        primary.close();
+
+        System.out.println("\n=== Benchmark Completed ===");
+    }
+}
@@ -0,0 +1,57 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Write throughput of a ShardedLSMTree with 1 to 8 hash-partitioned shards, with a fixed
+ * number of writer threads.
+ */
+public class ShardedWriteBenchmark {
+    public static void main(String[] args) throws Exception {
+        final int WRITES_PER_THREAD = 25_000;
+        final int MEMTABLE_SIZE = 5_000;
+        final int THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+        System.out.println("\n=== Sharded LSM Tree Write Benchmark ===");
+        System.out.println("Writer threads: " + THREADS + ", writes per thread: " + WRITES_PER_THREAD
+                + ", cores: " + Runtime.getRuntime().availableProcessors() + "\n");
+
+        for (int shardCount : new int[]{1, 2, 4, 8}) {
+            Path dir = Files.createTempDirectory("lsm_sharded");
+            ShardedLSMTree tree = new ShardedLSMTree(shardCount, MEMTABLE_SIZE, dir.toString());
+
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> writers = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                final int id = t;
+                Thread writer = new Thread(() -> {
+                    try {
+                        start.await();
+                        for (int i = 0; i < WRITES_PER_THREAD; i++) {
+                            tree.put("key" + id + "_" + i, "value" + i);
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+                writer.start();
+                writers.add(writer);
+            }
+
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Thread writer : writers) {
+                writer.join();
+            }
+            long elapsed = System.nanoTime() - begin;
+
+            System.out.printf("Shards: %2d  Writes: %,10.0f ops/s%n", shardCount,
+                    (double) THREADS * WRITES_PER_THREAD / (elapsed / 1e9));
+            tree.close();
+        }
+
+        System.out.println("\n=== Benchmark Completed ===");
+    }
+}
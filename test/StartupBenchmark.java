@@ -0,0 +1,67 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SortedMap;
+
+/**
+ * Time to reopen an LSM Tree directory holding many SSTables and a large unflushed WAL, with
+ * recovery on one thread and on {@code oltp.recovery.threads} (default: one per core). Checks
+ * that every reopen restores the same sequence number and contents.
+ */
+public class StartupBenchmark {
+    public static void main(String[] args) throws Exception {
+        final int TABLES = 200;
+        final int KEYS_PER_TABLE = 2_000;
+        final int WAL_RECORDS = 300_000;
+        final int RUNS = 3;
+        int threads = Integer.getInteger("oltp.recovery.threads", Runtime.getRuntime().availableProcessors());
+
+        System.out.println("\n=== LSM Tree Startup Benchmark ===");
+        System.out.println("SSTables: " + TABLES + " x " + KEYS_PER_TABLE + " keys, WAL records: " + WAL_RECORDS + "\n");
+
+        Path dir = Files.createTempDirectory("lsm_startup");
+        String wal = dir + "/wal.log";
+        String sstables = dir + "/sstables";
+
+        // Small memtable: every KEYS_PER_TABLE writes flush a table; no compaction runs unasked
+        LSMTree tree = new LSMTree(KEYS_PER_TABLE, wal, sstables);
+        for (int i = 0; i < TABLES * KEYS_PER_TABLE; i++) {
+            tree.put("key" + (i % (TABLES * KEYS_PER_TABLE / 2)), "table" + i);
+        }
+        tree.close();
+
+        // Large memtable abandoned without close: its writes survive only in the WAL
+        LSMTree crashed = new LSMTree(Integer.MAX_VALUE, wal, sstables);
+        for (int i = 0; i < WAL_RECORDS; i++) {
+            String key = "key" + (i * 7 % (TABLES * KEYS_PER_TABLE));
+            if (i % 10 == 9) {
+                crashed.delete(key);
+            } else {
+                crashed.put(key, "wal" + i);
+            }
+        }
+        long expectedSequence = crashed.getSequence();
+        SortedMap<String, String> expected = crashed.scan("key", "key~");
+
+        String saved = System.getProperty("oltp.recovery.threads");
+        for (int threadCount : new int[]{1, threads}) {
+            System.setProperty("oltp.recovery.threads", String.valueOf(threadCount));
+            long best = Long.MAX_VALUE;
+            for (int run = 0; run < RUNS; run++) {
+                long start = System.nanoTime();
+                LSMTree reopened = new LSMTree(Integer.MAX_VALUE, wal, sstables);
+                best = Math.min(best, System.nanoTime() - start);
+                // Not closed, so the WAL is not flushed away for the next run
+                if (reopened.getSequence() != expectedSequence || !reopened.scan("key", "key~").equals(expected)) {
+                    throw new AssertionError("Reopened tree differs with " + threadCount + " threads");
+                }
+            }
+            System.out.printf("%2d thread(s): %,8.1f ms%n", threadCount, best / 1e6);
+        }
+        if (saved == null) {
+            System.clearProperty("oltp.recovery.threads");
+        } else {
+            System.setProperty("oltp.recovery.threads", saved);
+        }
+        System.out.println("\nSequence " + expectedSequence + " and " + expected.size() + " keys restored on every reopen");
+    }
+}
@@ -0,0 +1,101 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Cost of per-operation tracing and what the traces show. Runs puts and searches against an
+ * LSM Tree whose SSTables pile up uncompacted, under a JFR recording, with trace sampling off,
+ * at 1 in 100 and on every operation, then summarizes the recorded events.
+ */
+public class TracingBenchmark {
+    public static void main(String[] args) throws Exception {
+        final int OPERATIONS = 100_000;
+        final int MEMTABLE_SIZE = 5_000;
+
+        System.out.println("\n=== LSM Tree Tracing Benchmark ===");
+        System.out.println("Operations per phase: " + OPERATIONS + "\n");
+
+        Path dir = Files.createTempDirectory("lsm_tracing");
+        Path jfr = dir.resolve("trace.jfr");
+        try (Recording recording = new Recording()) {
+            for (String event : new String[]{"oltp.LSMTree.Lookup", "oltp.LSMTree.Write",
+                    "oltp.LSMTree.Flush", "oltp.LSMTree.Compaction"}) {
+                recording.enable(event).withoutThreshold();
+            }
+            recording.start();
+
+            int[] phases = {0, 0, 100, 1, 0, 100, 1}; // The first one warms up the JIT
+            for (int phase = 0; phase < phases.length; phase++) {
+                int oneIn = phases[phase];
+                Path treeDir = Files.createTempDirectory(dir, "tree");
+                LSMTree tree = new LSMTree(MEMTABLE_SIZE, treeDir.resolve("wal.log").toString(), treeDir.resolve("sstables").toString());
+                tree.setTraceSampling(oneIn);
+
+                long start = System.nanoTime();
+                for (int i = 0; i < OPERATIONS; i++) {
+                    tree.put("key" + i, "value" + i);
+                }
+                double putRate = OPERATIONS / ((System.nanoTime() - start) / 1e9);
+
+                start = System.nanoTime();
+                for (int i = 0; i < OPERATIONS; i++) {
+                    tree.search("key" + (i * 7919 % (2 * OPERATIONS))); // Half the keys are absent
+                }
+                double searchRate = OPERATIONS / ((System.nanoTime() - start) / 1e9);
+                tree.compact();
+                tree.close();
+
+                System.out.printf("Sampling %-8s put %,10.0f ops/s   search %,10.0f ops/s%s%n",
+                        oneIn == 0 ? "off" : "1/" + oneIn, putRate, searchRate, phase == 0 ? "  (warmup)" : "");
+            }
+            recording.stop();
+            recording.dump(jfr);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(jfr);
+        long lookups = 0, probedTotal = 0, probedMax = 0, diskReads = 0, cacheWaitMax = 0;
+        long writes = 0, stalled = 0, stallMax = 0, lockWaitMax = 0, walMax = 0;
+        long flushes = 0, compactions = 0;
+        for (RecordedEvent event : events) {
+            switch (event.getEventType().getName()) {
+                case "oltp.LSMTree.Lookup":
+                    lookups++;
+                    probedTotal += event.getInt("sstablesProbed");
+                    probedMax = Math.max(probedMax, event.getInt("sstablesProbed"));
+                    diskReads += event.getInt("diskReads");
+                    cacheWaitMax = Math.max(cacheWaitMax, event.getDuration("cacheWait").toNanos());
+                    break;
+                case "oltp.LSMTree.Write":
+                    writes++;
+                    long stall = event.getDuration("flushStall").toNanos();
+                    if (stall > 0) {
+                        stalled++;
+                        stallMax = Math.max(stallMax, stall);
+                    }
+                    lockWaitMax = Math.max(lockWaitMax, event.getDuration("lockWait").toNanos());
+                    walMax = Math.max(walMax, event.getDuration("walAppend").toNanos());
+                    break;
+                case "oltp.LSMTree.Flush":
+                    flushes++;
+                    break;
+                case "oltp.LSMTree.Compaction":
+                    compactions++;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        System.out.printf("%nLookup events: %d, SSTables probed avg %.1f max %d, disk reads %d, max cache wait %.1f us%n",
+                lookups, lookups == 0 ? 0.0 : (double) probedTotal / lookups, probedMax, diskReads, cacheWaitMax / 1e3);
+        System.out.printf("Write events: %d, stalled on a flush %d (max %.1f ms), max lock wait %.1f us, max WAL append %.1f us%n",
+                writes, stalled, stallMax / 1e6, lockWaitMax / 1e3, walMax / 1e3);
+        System.out.println("Flush events: " + flushes + ", compaction events: " + compactions);
+
+        System.out.println("\n=== Benchmark Completed ===");
+    }
+}
@@ -0,0 +1,56 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SortedMap;
+
+/**
+ * Session-store workload: every session is written once and must disappear after a while.
+ * Compares expiring sessions with explicit deletes against putting them with a TTL, by WAL
+ * volume and by what the SSTables hold before and after a full compaction.
+ */
+public class TtlBenchmark {
+    public static void main(String[] args) throws Exception {
+        final int SESSIONS = 200_000;
+        final int MEMTABLE_SIZE = 10_000;
+        final long TTL_MILLIS = 1_000;
+
+        System.out.println("\n=== LSM Tree TTL Benchmark ===");
+        System.out.println("Sessions: " + SESSIONS + ", TTL: " + TTL_MILLIS + " ms\n");
+
+        String value = "user=alice;cart=3;token=" + "x".repeat(64);
+        for (boolean ttl : new boolean[]{false, true}) {
+            Path dir = Files.createTempDirectory("lsm_ttl");
+            LSMTree tree = new LSMTree(MEMTABLE_SIZE, dir + "/wal.log", dir + "/sstables");
+
+            long start = System.nanoTime();
+            for (int i = 0; i < SESSIONS; i++) {
+                if (ttl) {
+                    tree.put(session(i), value, TTL_MILLIS);
+                } else {
+                    tree.put(session(i), value);
+                }
+            }
+            Thread.sleep(TTL_MILLIS);
+            if (!ttl) {
+                for (int i = 0; i < SESSIONS; i++) {
+                    tree.delete(session(i));
+                }
+            }
+            long elapsed = System.nanoTime() - start - TTL_MILLIS * 1_000_000;
+
+            SortedMap<String, Long> before = tree.getMetrics().snapshot();
+            tree.compact();
+            SortedMap<String, Long> after = tree.getMetrics().snapshot();
+            System.out.printf("%-14s writes %,7.0f ms  WAL %,9d records %,12d bytes  SSTable entries %,9d -> %,d%n",
+                    ttl ? "TTL" : "explicit delete", elapsed / 1e6, before.get("wal.records"), before.get("wal.bytes"),
+                    before.get("lsm.sstables.entries"), after.get("lsm.sstables.entries"));
+            if (tree.search(session(0)) != null) {
+                throw new AssertionError("Session still visible");
+            }
+            tree.close();
+        }
+    }
+
+    private static String session(int i) {
+        return "session/" + i;
+    }
+}
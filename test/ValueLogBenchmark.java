@@ -0,0 +1,83 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.SortedMap;
+
+/**
+ * Write amplification and throughput of an overwrite workload with values kept in the
+ * SSTables and with values moved to the value log, from 1 KB to 1 MB per value. Each round
+ * writes the same volume over random keys; the MemTable holds about 16 MB of values and the
+ * tree is compacted every few flushes. Write amplification counts the bytes flushed, written
+ * by compaction and appended to the value log, against the bytes of the values put (the WAL,
+ * written the same either way, is left out). A value log GC run closes each separated round.
+ */
+public class ValueLogBenchmark {
+    public static void main(String[] args) throws Exception {
+        final long VOLUME = Long.getLong("volume", 128L << 20);
+        final long MEMTABLE_BYTES = 16 << 20;
+        final int KEY_SPACE_FLUSHES = 2; // Keys cover this many MemTables, so most writes overwrite
+        final int COMPACT_EVERY = 4;     // Flushes between compactions
+        final int THRESHOLD = 512;
+
+        System.out.println("\n=== LSM Tree Value Log Benchmark ===");
+        System.out.println("Volume per round: " + (VOLUME >> 20) + " MB, separation threshold: " + THRESHOLD + "\n");
+
+        Random random = new Random(42);
+        char[] pool = new char[(2 << 20) + 1];
+        for (int i = 0; i < pool.length; i++) {
+            pool[i] = (char) ('a' + random.nextInt(26)); // Random text, so block compression cannot hide the volume
+        }
+        String text = new String(pool);
+
+        for (int valueSize : new int[]{1 << 10, 16 << 10, 256 << 10, 1 << 20}) {
+            for (boolean separate : new boolean[]{false, true}) {
+                Path dir = Files.createTempDirectory("lsm_vlog");
+                int memTableSize = (int) Math.max(4, MEMTABLE_BYTES / valueSize);
+                int keys = memTableSize * KEY_SPACE_FLUSHES;
+                long writes = VOLUME / valueSize;
+                LSMTree tree = new LSMTree(memTableSize, dir + "/wal.log", dir + "/sstables");
+                tree.setTableOptions(new SSTableOptions().setValueSeparationThreshold(separate ? THRESHOLD : 0));
+
+                long start = System.nanoTime();
+                for (long i = 0; i < writes; i++) {
+                    tree.put(key(random.nextInt(keys)), value(text, random, valueSize));
+                    if ((i + 1) % ((long) memTableSize * COMPACT_EVERY) == 0) {
+                        tree.compact();
+                    }
+                }
+                tree.compact();
+                long elapsed = System.nanoTime() - start;
+
+                SortedMap<String, Long> stats = tree.getMetrics().snapshot();
+                long written = stats.get("lsm.flush.bytes") + stats.get("lsm.compaction.bytes_written")
+                        + stats.get("lsm.vlog.bytes_written");
+                System.out.printf("%,9d B %-8s %,8.1f MB/s  write amp %5.2f  SSTables %,7d KB  value log %,7d KB",
+                        valueSize, separate ? "vlog" : "inline", writes * (double) valueSize / (1 << 20) / (elapsed / 1e9),
+                        written / (double) (writes * valueSize), stats.get("lsm.sstables.bytes") >> 10,
+                        stats.get("lsm.vlog.bytes") >> 10);
+                if (separate) {
+                    long gcStart = System.nanoTime();
+                    int collected = tree.collectValueLog();
+                    System.out.printf("  GC %d files %,6.0f ms -> %,7d KB",
+                            collected, (System.nanoTime() - gcStart) / 1e6, tree.getMetrics().snapshot().get("lsm.vlog.bytes") >> 10);
+                }
+                System.out.println();
+
+                String read = tree.search(key(keys - 1));
+                if (read != null && read.length() != valueSize) {
+                    throw new AssertionError("Wrong value of " + key(keys - 1));
+                }
+                tree.close();
+            }
+        }
+    }
+
+    private static String key(int i) {
+        return String.format("key%08d", i);
+    }
+
+    private static String value(String text, Random random, int size) {
+        int offset = random.nextInt(text.length() - size);
+        return text.substring(offset, offset + size);
+    }
+}
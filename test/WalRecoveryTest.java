@@ -0,0 +1,78 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reopens an LSM Tree without closing it, as after a crash, and checks that the WAL brings
+ * back keys and values holding spaces, newlines and leading or trailing whitespace, and that a final
+ * record cut short is dropped without losing the records before it. Also reads logs written
+ * unframed by earlier versions.
+ */
+public class WalRecoveryTest {
+    public static void main(String[] args) throws IOException {
+        Path dir = Files.createTempDirectory("lsm_recovery");
+        String walPath = dir + "/wal.log";
+        String sstableDir = dir + "/sstables";
+
+        LSMTree tree = new LSMTree(1_000, walPath, sstableDir);
+        tree.write(new WriteBatch().put("a", "1").put("b", "two ").put("c", "line1\nline2"));
+        tree.put("d", " padded\t");
+        tree.put("e", "");
+        tree.put("tenant a/k", "v1\r\n");
+        tree.put("12:x", "5:y");
+        tree.delete("tenant b/k");
+        tree.delete("a");
+
+        // Crash: the tree is not closed, and a record is cut short
+        Files.write(Path.of(walPath), "42:PUT 99 1:f".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        LSMTree recovered = new LSMTree(1_000, walPath, sstableDir);
+        check(recovered.search("a"), null);
+        check(recovered.search("b"), "two ");
+        check(recovered.search("c"), "line1\nline2");
+        check(recovered.search("d"), " padded\t");
+        check(recovered.search("e"), "");
+        check(recovered.search("tenant a/k"), "v1\r\n");
+        check(recovered.search("tenant"), null);
+        check(recovered.search("12:x"), "5:y");
+        check(recovered.search("f"), null);
+
+        // The torn record is gone, so writes after recovery survive the next one
+        recovered.put("g", "after\n");
+        LSMTree again = new LSMTree(1_000, walPath, sstableDir);
+        check(again.search("b"), "two ");
+        check(again.search("g"), "after\n");
+        again.close();
+
+        // Logs written before records were framed: one record per line, no sequence numbers
+        String legacyWal = dir + "/legacy_lsm.log";
+        Files.write(Path.of(legacyWal), "PUT x 1\nPUT y two words\nDELETE x\n".getBytes(StandardCharsets.UTF_8));
+        LSMTree upgraded = new LSMTree(1_000, legacyWal, dir + "/legacy_sstables");
+        upgraded.put("z", "3");
+        LSMTree reopened = new LSMTree(1_000, legacyWal, dir + "/legacy_sstables");
+        check(reopened.search("x"), null);
+        check(reopened.search("y"), "two words");
+        check(reopened.search("z"), "3");
+        reopened.close();
+
+        String btreeWal = dir + "/legacy_btree.log";
+        Files.write(Path.of(btreeWal), "INSERT 5\nINSERT 7\nDELETE 5\nINSERT 9".getBytes(StandardCharsets.UTF_8));
+        BTree btree = new BTree(3, btreeWal);
+        if (btree.search(5) != null || btree.search(7) == null || btree.search(9) != null) {
+            throw new AssertionError("Legacy BTree log not replayed: expected 7 only, the torn 9 dropped");
+        }
+
+        System.out.println("WAL recovery: ok");
+    }
+
+    private static void check(String actual, String expected) {
+        if (expected == null ? actual != null : !expected.equals(actual)) {
+            throw new AssertionError("Expected " + quote(expected) + " but got " + quote(actual));
+        }
+    }
+
+    private static String quote(String s) {
+        return s == null ? "null" : '"' + s.replace("\n", "\\n").replace("\r", "\\r").replace("\t", "\\t") + '"';
+    }
+}
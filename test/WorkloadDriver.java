@@ -0,0 +1,144 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a YCSB-style mixed workload against the LSM Tree or the B-Tree through the common
+ * KeyValueEngine interface: loads the records, then runs a fixed number of client threads for a
+ * fixed duration. Every report interval prints the throughput and latency percentiles of that
+ * interval; at the end prints the percentiles of each operation over the whole run.
+ *
+ * Usage: WorkloadDriver [lsmtree|btree] [A-F] [threads] [seconds] [records] [uniform|zipfian|latest]
+ */
+public class WorkloadDriver {
+
+    private static final int REPORT_INTERVAL_MS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        final String ENGINE = args.length > 0 ? args[0] : "lsmtree";
+        final String WORKLOAD = args.length > 1 ? args[1] : "A";
+        final int THREADS = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        final int SECONDS = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        final int RECORDS = args.length > 4 ? Integer.parseInt(args[4]) : 100_000;
+
+        YCSBWorkload workload = YCSBWorkload.preset(WORKLOAD, RECORDS);
+        if (args.length > 5) {
+            workload = workload.withDistribution(args[5]);
+        }
+
+        Path dir = Files.createTempDirectory("ycsb");
+        KeyValueEngine engine = ENGINE.equals("btree")
+                ? new BTreeEngine(new BTree(32, dir.resolve("btree_wal.log").toString(), true))
+                : new LSMTreeEngine(new LSMTree(10_000, dir.resolve("lsm_wal.log").toString(), dir.resolve("sstables").toString()));
+
+        System.out.println("\n=== YCSB Workload Driver ===");
+        System.out.println("Engine: " + engine.name() + ", " + workload + ", threads: " + THREADS
+                + ", duration: " + SECONDS + " s, records: " + RECORDS + "\n");
+
+        String value = "v".repeat(100);
+        long loadStart = System.nanoTime();
+        for (int i = 0; i < RECORDS; i++) {
+            engine.put(String.valueOf(i), value);
+        }
+        System.out.printf("Loaded %d records in %.0f ms%n%n", RECORDS, (System.nanoTime() - loadStart) / 1e6);
+
+        Map<YCSBWorkload.Operation, LatencyHistogram> totals = new EnumMap<>(YCSBWorkload.Operation.class);
+        for (YCSBWorkload.Operation op : YCSBWorkload.Operation.values()) {
+            totals.put(op, new LatencyHistogram());
+        }
+        Interval interval = new Interval();
+        AtomicLong errors = new AtomicLong();
+        long deadline = System.nanoTime() + SECONDS * 1_000_000_000L;
+
+        final YCSBWorkload mix = workload;
+        List<Thread> clients = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            SplittableRandom random = new SplittableRandom(t);
+            clients.add(new Thread(() -> {
+                while (System.nanoTime() < deadline) {
+                    YCSBWorkload.Operation op = mix.nextOperation(random);
+                    long start = System.nanoTime();
+                    try {
+                        execute(engine, mix, op, random, value);
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                    }
+                    long latency = System.nanoTime() - start;
+                    totals.get(op).record(latency);
+                    interval.current.record(latency);
+                }
+            }, "ycsb-client-" + t));
+        }
+
+        long begin = System.nanoTime();
+        clients.forEach(Thread::start);
+        System.out.println("  time      ops/s  latency of the interval");
+        while (clients.get(0).isAlive()) {
+            Thread.sleep(REPORT_INTERVAL_MS);
+            LatencyHistogram last = interval.swap();
+            System.out.printf("%5.0f s %10.0f  %s%n", (System.nanoTime() - begin) / 1e9,
+                    last.count() * 1000.0 / REPORT_INTERVAL_MS, last.summary());
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+        double elapsed = (System.nanoTime() - begin) / 1e9;
+
+        System.out.println();
+        long operations = 0;
+        for (Map.Entry<YCSBWorkload.Operation, LatencyHistogram> entry : totals.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            if (histogram.count() > 0) {
+                operations += histogram.count();
+                System.out.printf("%-18s %10d ops  %s%n", entry.getKey(), histogram.count(), histogram.summary());
+            }
+        }
+        System.out.printf("%nThroughput: %.0f ops/s, errors: %d%n", operations / elapsed, errors.get());
+        engine.close();
+
+        System.out.println("\n=== Workload Completed ===");
+    }
+
+    private static void execute(KeyValueEngine engine, YCSBWorkload workload, YCSBWorkload.Operation op,
+                                SplittableRandom random, String value) throws Exception {
+        switch (op) {
+            case READ:
+                engine.get(workload.nextKey(random));
+                break;
+            case UPDATE:
+                engine.put(workload.nextKey(random), value);
+                break;
+            case INSERT:
+                engine.put(workload.nextInsertKey(), value);
+                break;
+            case SCAN:
+                engine.scan(workload.nextKey(random), null, workload.nextScanLength(random));
+                break;
+            default: {
+                String key = workload.nextKey(random);
+                String old = engine.get(key);
+                engine.put(key, old == null ? value : value.substring(1) + old.charAt(0));
+                break;
+            }
+        }
+    }
+
+    /**
+     * The histogram of the current report interval, swapped for an empty one at each report.
+     * A client still holding the old one may add a sample to the finished interval.
+     */
+    private static final class Interval {
+        volatile LatencyHistogram current = new LatencyHistogram();
+
+        LatencyHistogram swap() {
+            LatencyHistogram last = current;
+            current = new LatencyHistogram();
+            return last;
+        }
+    }
+}
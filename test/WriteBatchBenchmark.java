@@ -0,0 +1,48 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Compares LSMTree ingest throughput of individual puts against WriteBatch at several batch sizes.
+ */
+public class WriteBatchBenchmark {
+    public static void main(String[] args) throws IOException {
+        final int NUM_OPERATIONS = 200_000;
+        final int MEMTABLE_SIZE = 10_000;
+        final String VALUE = "value-0123456789";
+
+        System.out.println("\n=== LSM Tree WriteBatch Benchmark ===");
+        System.out.println("Number of Operations: " + NUM_OPERATIONS + "\n");
+
+        for (int batchSize : new int[]{1, 10, 100, 1000}) {
+            Path dir = Files.createTempDirectory("lsm_batch");
+            LSMTree lsmTree = new LSMTree(MEMTABLE_SIZE, dir.resolve("lsm_wal.log").toString(),
+                    dir.resolve("sstables").toString());
+
+            long start = System.nanoTime();
+            if (batchSize == 1) {
+                for (int i = 0; i < NUM_OPERATIONS; i++) {
+                    lsmTree.put("key" + i, VALUE);
+                }
+            } else {
+                WriteBatch batch = new WriteBatch();
+                for (int i = 0; i < NUM_OPERATIONS; i++) {
+                    batch.put("key" + i, VALUE);
+                    if (batch.size() == batchSize) {
+                        lsmTree.write(batch);
+                        batch.clear();
+                    }
+                }
+                lsmTree.write(batch);
+            }
+            long elapsed = System.nanoTime() - start;
+
+            System.out.printf("%-16s %,12.0f ops/s%n",
+                    batchSize == 1 ? "put()" : "batch of " + batchSize,
+                    NUM_OPERATIONS / (elapsed / 1_000_000_000.0));
+            lsmTree.close();
+        }
+
+        System.out.println("\n=== Benchmark Completed ===");
+    }
+}
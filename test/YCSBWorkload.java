@@ -0,0 +1,190 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * YCSB core workload presets A-F: the operation mix, the key distribution and the scan length.
+ * Keys are decimal record numbers, so they work with both the LSM Tree and the B-Tree engine.
+ *
+ * <pre>
+ * A  update heavy     50% read, 50% update                zipfian
+ * B  read mostly      95% read,  5% update                zipfian
+ * C  read only       100% read                            zipfian
+ * D  read latest      95% read,  5% insert                latest
+ * E  short ranges     95% scan,  5% insert                zipfian, 1-100 keys per scan
+ * F  read-modify-write 50% read, 50% read-modify-write    zipfian
+ * </pre>
+ */
+public class YCSBWorkload {
+
+    public enum Operation { READ, UPDATE, INSERT, SCAN, READ_MODIFY_WRITE }
+
+    public static final String UNIFORM = "uniform";
+    public static final String ZIPFIAN = "zipfian";
+    public static final String LATEST = "latest";
+
+    private static final int MAX_SCAN_LENGTH = 100;
+    private static final double THETA = 0.99;
+
+    private final String name;
+    // Cumulative percentages of READ, UPDATE, INSERT, SCAN; READ_MODIFY_WRITE takes the rest
+    private final int readUpTo, updateUpTo, insertUpTo, scanUpTo;
+    private final String distribution;
+    private final AtomicInteger recordCount;
+
+    // Zipfian constants over the initial record count (Gray et al.)
+    private final int zipfItems;
+    private final double zetan, alpha, eta;
+
+    /**
+     * @param name         The preset name.
+     * @param read         Percentage of reads.
+     * @param update       Percentage of updates.
+     * @param insert       Percentage of inserts.
+     * @param scan         Percentage of scans; the rest are read-modify-writes.
+     * @param distribution {@link #UNIFORM}, {@link #ZIPFIAN} or {@link #LATEST}.
+     * @param records      The number of records loaded before the run.
+     */
+    public YCSBWorkload(String name, int read, int update, int insert, int scan, String distribution, int records) {
+        if (read + update + insert + scan > 100) {
+            throw new IllegalArgumentException("Proportions exceed 100%");
+        }
+        if (!UNIFORM.equals(distribution) && !ZIPFIAN.equals(distribution) && !LATEST.equals(distribution)) {
+            throw new IllegalArgumentException("Unknown distribution: " + distribution);
+        }
+        this.name = name;
+        this.readUpTo = read;
+        this.updateUpTo = read + update;
+        this.insertUpTo = read + update + insert;
+        this.scanUpTo = read + update + insert + scan;
+        this.distribution = distribution;
+        this.recordCount = new AtomicInteger(records);
+
+        this.zipfItems = records;
+        double zeta2 = 0;
+        double sum = 0;
+        for (int i = 1; i <= records; i++) {
+            sum += 1 / Math.pow(i, THETA);
+            if (i == 2) {
+                zeta2 = sum;
+            }
+        }
+        this.zetan = sum;
+        this.alpha = 1 / (1 - THETA);
+        this.eta = (1 - Math.pow(2.0 / records, 1 - THETA)) / (1 - zeta2 / zetan);
+    }
+
+    /**
+     * Returns a core workload preset.
+     *
+     * @param letter  A to F.
+     * @param records The number of records loaded before the run.
+     * @return The workload.
+     */
+    public static YCSBWorkload preset(String letter, int records) {
+        switch (letter.toUpperCase()) {
+            case "A": return new YCSBWorkload("A", 50, 50, 0, 0, ZIPFIAN, records);
+            case "B": return new YCSBWorkload("B", 95, 5, 0, 0, ZIPFIAN, records);
+            case "C": return new YCSBWorkload("C", 100, 0, 0, 0, ZIPFIAN, records);
+            case "D": return new YCSBWorkload("D", 95, 0, 5, 0, LATEST, records);
+            case "E": return new YCSBWorkload("E", 0, 0, 5, 95, ZIPFIAN, records);
+            case "F": return new YCSBWorkload("F", 50, 0, 0, 0, ZIPFIAN, records);
+            default: throw new IllegalArgumentException("Unknown workload: " + letter);
+        }
+    }
+
+    /**
+     * Returns the same mix with another key distribution.
+     *
+     * @param distribution {@link #UNIFORM}, {@link #ZIPFIAN} or {@link #LATEST}.
+     * @return The workload.
+     */
+    public YCSBWorkload withDistribution(String distribution) {
+        return new YCSBWorkload(name, readUpTo, updateUpTo - readUpTo, insertUpTo - updateUpTo,
+                scanUpTo - insertUpTo, distribution, recordCount.get());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDistribution() {
+        return distribution;
+    }
+
+    /**
+     * @return The next operation.
+     */
+    public Operation nextOperation(SplittableRandom random) {
+        int p = random.nextInt(100);
+        if (p < readUpTo) {
+            return Operation.READ;
+        } else if (p < updateUpTo) {
+            return Operation.UPDATE;
+        } else if (p < insertUpTo) {
+            return Operation.INSERT;
+        } else if (p < scanUpTo) {
+            return Operation.SCAN;
+        }
+        return Operation.READ_MODIFY_WRITE;
+    }
+
+    /**
+     * @return The key of an existing record, drawn from the workload's distribution.
+     */
+    public String nextKey(SplittableRandom random) {
+        int records = recordCount.get();
+        switch (distribution) {
+            case UNIFORM:
+                return String.valueOf(random.nextInt(records));
+            case LATEST:
+                // Most recent inserts are the most popular
+                return String.valueOf(Math.max(0, records - 1 - (int) (zipfianRank(random) % records)));
+            default:
+                // Scatter the popular ranks over the key space, as YCSB's scrambled zipfian does
+                return String.valueOf(Long.remainderUnsigned(fnv(zipfianRank(random)), zipfItems));
+        }
+    }
+
+    /**
+     * @return The key of a new record.
+     */
+    public String nextInsertKey() {
+        return String.valueOf(recordCount.getAndIncrement());
+    }
+
+    /**
+     * @return The number of keys of the next scan, 1 to 100.
+     */
+    public int nextScanLength(SplittableRandom random) {
+        return 1 + random.nextInt(MAX_SCAN_LENGTH);
+    }
+
+    private long zipfianRank(SplittableRandom random) {
+        double u = random.nextDouble();
+        double uz = u * zetan;
+        if (uz < 1) {
+            return 0;
+        }
+        if (uz < 1 + Math.pow(0.5, THETA)) {
+            return 1;
+        }
+        return Math.min(zipfItems - 1, (long) (zipfItems * Math.pow(eta * u - eta + 1, alpha)));
+    }
+
+    // FNV-1a over the 8 bytes of a long
+    private static long fnv(long value) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < 8; i++) {
+            hash ^= (value >>> (i * 8)) & 0xFF;
+            hash *= 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("workload %s: read %d%%, update %d%%, insert %d%%, scan %d%%, rmw %d%%, %s",
+                name, readUpTo, updateUpTo - readUpTo, insertUpTo - updateUpTo, scanUpTo - insertUpTo,
+                100 - scanUpTo, distribution);
+    }
+}
@@ -1,16 +1,38 @@
 // Write Ahead Log class for persistence
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Implements a Write-Ahead Log (WAL) for the B-Tree.
+ * <p>
+ * Each record is framed by its UTF-8 byte length, {@code <length>:<record>\n}, so keys and
+ * values may hold spaces, newlines or trailing whitespace. On recovery a final frame cut short
+ * by a crash is dropped and truncated away; any other malformed frame is an error. Logs
+ * written by earlier versions hold one unframed record per line; such lines, which start with
+ * a letter where a frame starts with a digit, are still read at the head of the log.
+ * <p>
+ * The log written so far can be frozen as a numbered segment next to it ({@link #rotate()}),
+ * so its parts can be released separately once their records are stored elsewhere.
  */
 public class WriteAheadLog implements Serializable, Closeable{
-    private BufferedWriter writer;
+    private OutputStream out;
     private String logPath;
+    // Serializes appends; a lock rather than a monitor so virtual threads blocked on I/O do not pin their carrier
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Metrics.Counter records;
+    private final Metrics.Counter bytes;
+    private final Metrics.Counter flushes;
+    private int legacyRecords; // Unframed records at the head of the log, as of the last read
+    private long lastSegment;  // Number of the newest segment frozen by rotate(), guarded by lock
 
 
     /**
@@ -20,11 +42,27 @@ public class WriteAheadLog implements Serializable, Closeable{
      * @throws IOException If an I/O error arises
      */
     public WriteAheadLog(String path) throws IOException {
+        this(path, new Metrics());
+    }
+
+    /**
+     * Initializes WAL with the specified log file path, counting appends in a registry.
+     *
+     * @param path    The path to the log file
+     * @param metrics The registry receiving {@code wal.records}, {@code wal.bytes} and {@code wal.flushes}
+     * @throws IOException If an I/O error arises
+     */
+    public WriteAheadLog(String path, Metrics metrics) throws IOException {
         this.logPath = path;
+        this.records = metrics.counter("wal.records");
+        this.bytes = metrics.counter("wal.bytes");
+        this.flushes = metrics.counter("wal.flushes");
         File logFile = new File(logPath);
 
         logFile.getParentFile().mkdirs();
-        this.writer = new BufferedWriter(new FileWriter(logFile, true)); //Append only
+        this.out = new BufferedOutputStream(new FileOutputStream(logFile, true)); //Append only
+        List<Path> segments = segments();
+        this.lastSegment = segments.isEmpty() ? 0 : segmentNumber(segments.get(segments.size() - 1));
     }
 
     /**
@@ -33,11 +71,8 @@ public class WriteAheadLog implements Serializable, Closeable{
      * @param key The key to insert.
      * @throws IOException If an I/O error occurs.
      */
-    public synchronized void logInsert(String key) throws IOException {
-        // Use synchronized for thread safety
-        writer.write("INSERT " + key);
-        writer.newLine();
-        writer.flush();
+    public void logInsert(String key) throws IOException {
+        append("INSERT " + key);
     }
 
     /**
@@ -46,55 +81,256 @@ public class WriteAheadLog implements Serializable, Closeable{
      * @param key The key to delete.
      * @throws IOException If an I/O error occurs.
      */
-    public synchronized void logDelete(String key) throws IOException {
-        // Use synchronized for thread safety
-        writer.write("DELETE " + key);
-        writer.newLine();
-        writer.flush();
+    public void logDelete(String key) throws IOException {
+        append("DELETE " + key);
     }
 
 
+    /**
+     * Logs a sequenced delete operation (LSM Tree).
+     *
+     * @param sequence The sequence number of the write.
+     * @param key      The key to delete.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void logDelete(long sequence, String key) throws IOException {
+        append(deleteRecord(sequence, key));
+    }
 
+    /**
+     * Formats a sequenced delete record (LSM Tree), "DELETE seq key": the key runs to the end
+     * of the record.
+     *
+     * @param sequence The sequence number of the write.
+     * @param key      The key to delete.
+     * @return The record.
+     */
+    public static String deleteRecord(long sequence, String key) {
+        return "DELETE " + sequence + " " + key;
+    }
 
+    /**
+     * Logs a write batch as a single record, flushed once.
+     *
+     * @param baseSequence The sequence number of the first operation.
+     * @param operations   The encoded operations.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void logBatch(long baseSequence, String operations) throws IOException {
+        append("BATCH " + baseSequence + " " + operations);
+    }
+
+    /**
+     * Logs a bulk load, a single record standing in for every key of the snapshot.
+     *
+     * @param fillFactor   The fill factor used to build the tree.
+     * @param snapshotPath The path of the file holding the loaded keys.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void logBulkLoad(double fillFactor, String snapshotPath) throws IOException {
+        append("BULKLOAD " + fillFactor + " " + snapshotPath);
+    }
 
     /**
      * Logs a put operation.
      *
-     * @param key   The key to insert/update.
-     * @param value The value associated with the key.
+     * @param sequence The sequence number of the write.
+     * @param key      The key to insert/update.
+     * @param value    The value associated with the key.
      * @throws IOException If an I/O error occurs.
      */
-    public synchronized void logPut(String key, String value) throws IOException {
-        writer.write("PUT " + key + " " + value);
-        writer.newLine();
-        writer.flush();
+    public void logPut(long sequence, String key, String value) throws IOException {
+        append(putRecord(sequence, key, value));
+    }
+
+    /**
+     * Formats a put record, "PUT seq length:keyvalue": the key is prefixed with its length, so
+     * it may contain spaces, and the value runs to the end of the record.
+     *
+     * @param sequence The sequence number of the write.
+     * @param key      The key to insert/update.
+     * @param value    The value associated with the key.
+     * @return The record.
+     */
+    public static String putRecord(long sequence, String key, String value) {
+        return "PUT " + sequence + " " + key.length() + ":" + key + value;
     }
 
 
     /**
-     * Reads all log entries from the WAL.
+     * Logs a record already formatted by another log, e.g. one shipped from a replication primary.
      *
-     * @return A list of log entries.
+     * @param record The record.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void logRecord(String record) throws IOException {
+        append(record);
+    }
+
+    /**
+     * Appends a framed record and flushes it, charging the time to the operation's trace if any.
+     *
+     * @param record The record.
      * @throws IOException If an I/O error occurs.
      */
+    private void append(String record) throws IOException {
+        OperationTrace trace = OperationTrace.current();
+        long start = trace == null ? 0 : System.nanoTime();
+        byte[] payload = record.getBytes(StandardCharsets.UTF_8);
+        byte[] header = (payload.length + ":").getBytes(StandardCharsets.US_ASCII);
+        lock.lock();
+        try {
+            out.write(header);
+            out.write(payload);
+            out.write('\n');
+            out.flush();
+            records.increment();
+            bytes.add(header.length + payload.length + 1);
+            flushes.increment();
+        } finally {
+            lock.unlock();
+            if (trace != null) {
+                trace.addWal(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Reads all log entries from the WAL. A final record cut short by a crash is dropped and
+     * truncated from the file, so later appends do not follow a torn frame.
+     *
+     * @return A list of log entries.
+     * @throws IOException If an I/O error occurs, or a record other than the last is malformed.
+     */
     public List<String> readLogs() throws IOException {
+        return readLogs(Paths.get(logPath));
+    }
+
+    /**
+     * Reads all log entries from a segment frozen by {@link #rotate()}, like {@link #readLogs()}.
+     *
+     * @param path The segment.
+     * @return A list of log entries.
+     * @throws IOException If an I/O error occurs, or a record other than the last is malformed.
+     */
+    public List<String> readLogs(Path path) throws IOException {
         List<String> logs = new ArrayList<>();
-        Path path = Paths.get(logPath);
 
-        if(!Files.exists(path)){
-            return logs;
-        }
+        lock.lock();
+        try {
+            if(!Files.exists(path)){
+                return logs;
+            }
 
-        try(BufferedReader reader = new BufferedReader(new FileReader(logPath))) {
-            String line;
-            while((line = reader.readLine()) != null) {
-                logs.add(line.trim());
+            byte[] data = Files.readAllBytes(path);
+            int pos = 0;
+            legacyRecords = 0;
+            while (pos < data.length) {
+                if (data[pos] < '0' || data[pos] > '9') {
+                    // An unframed line from an earlier version, read as it was then
+                    if (logs.size() > legacyRecords) {
+                        throw new IOException("Corrupted WAL record at offset " + pos + " of " + path);
+                    }
+                    int newline = pos;
+                    while (newline < data.length && data[newline] != '\n') {
+                        newline++;
+                    }
+                    if (newline == data.length) {
+                        break; // Torn line
+                    }
+                    logs.add(new String(data, pos, newline - pos, StandardCharsets.UTF_8).trim());
+                    legacyRecords++;
+                    pos = newline + 1;
+                    continue;
+                }
+                int colon = pos;
+                long length = 0;
+                while (colon < data.length && data[colon] >= '0' && data[colon] <= '9' && length <= Integer.MAX_VALUE) {
+                    length = length * 10 + (data[colon++] - '0');
+                }
+                if (colon == data.length) {
+                    break; // Torn header
+                }
+                if (colon == pos || data[colon] != ':' || length > Integer.MAX_VALUE) {
+                    throw new IOException("Corrupted WAL record at offset " + pos + " of " + path);
+                }
+                long end = colon + 1 + length; // Offset of the record's newline
+                if (end >= data.length) {
+                    break; // Torn payload
+                }
+                if (data[(int) end] != '\n') {
+                    throw new IOException("Corrupted WAL record at offset " + pos + " of " + path);
+                }
+                logs.add(new String(data, colon + 1, (int) length, StandardCharsets.UTF_8));
+                pos = (int) end + 1;
             }
+            if (pos < data.length) {
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    channel.truncate(pos);
+                }
+            }
+        } finally {
+            lock.unlock();
         }
 
         return logs;
     }
 
+    /**
+     * @return The number of records at the head of the log last read by {@link #readLogs()}
+     * that were written unframed, one per line, by an earlier version.
+     */
+    public int getLegacyRecords() {
+        return legacyRecords;
+    }
+
+    /**
+     * Freezes the log written so far as a segment, {@code <path>.<n>} with n increasing, and
+     * continues in a new file at the log's path. The caller deletes the segment once its
+     * records are no longer needed.
+     *
+     * @return The segment.
+     * @throws IOException If an I/O error occurs.
+     */
+    public Path rotate() throws IOException {
+        lock.lock();
+        try {
+            out.close();
+            Path segment = Paths.get(logPath + "." + (lastSegment + 1));
+            Files.move(Paths.get(logPath), segment, StandardCopyOption.ATOMIC_MOVE);
+            lastSegment++;
+            this.out = new BufferedOutputStream(new FileOutputStream(logPath, true));
+            return segment;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The segments frozen by {@link #rotate()} still on disk, oldest first.
+     * @throws IOException If the directory cannot be listed.
+     */
+    public List<Path> segments() throws IOException {
+        Path log = Paths.get(logPath);
+        String prefix = log.getFileName() + ".";
+        Path directory = log.toAbsolutePath().getParent();
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> {
+                        String name = file.getFileName().toString();
+                        return name.startsWith(prefix) && name.length() > prefix.length()
+                                && name.substring(prefix.length()).chars().allMatch(Character::isDigit);
+                    })
+                    .map(file -> log.resolveSibling(file.getFileName()))
+                    .sorted(Comparator.comparingLong(WriteAheadLog::segmentNumber))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static long segmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(name.lastIndexOf('.') + 1));
+    }
+
     /**
      * Closes the WAL writer.
      *
@@ -102,8 +338,8 @@ public class WriteAheadLog implements Serializable, Closeable{
      */
     @Override
     public void close() throws IOException {
-        if (writer != null) {
-            writer.close();
+        if (out != null) {
+            out.close();
         }
     }
 
@@ -113,10 +349,15 @@ public class WriteAheadLog implements Serializable, Closeable{
      * @throws IOException If an I/O error occurs.
      */
     public void clear() throws IOException {
-        close();
-        Files.deleteIfExists(Paths.get(logPath));
+        lock.lock();
+        try {
+            close();
+            Files.deleteIfExists(Paths.get(logPath));
 
-        //Reopen writer
-        this.writer = new BufferedWriter(new FileWriter(logPath, true));
+            //Reopen writer
+            this.out = new BufferedOutputStream(new FileOutputStream(logPath, true));
+        } finally {
+            lock.unlock();
+        }
     }
 }